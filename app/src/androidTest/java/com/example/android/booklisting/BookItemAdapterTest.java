@@ -0,0 +1,176 @@
+package com.example.android.booklisting;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Counts the rows the {@link BookItemAdapter} binds when the list is refreshed, appended to or
+ * changed: only the visible rows whose volume was added or changed are bound again. The list is
+ * shown without item animations, so that every update is bound in a single layout.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookItemAdapterTest {
+
+    /** More rows than fit on the screen */
+    private static final int ROW_COUNT = 20;
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Instrumentation mInstrumentation;
+    private Activity mActivity;
+    private RecyclerView mList;
+    private BookItemAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        Intent intent = new Intent(InstrumentationRegistry.getTargetContext(), MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        mActivity = mInstrumentation.startActivitySync(intent);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter = new BookItemAdapter(null);
+                mList = new RecyclerView(mActivity);
+                mList.setLayoutManager(new LinearLayoutManager(mActivity));
+                mList.setItemAnimator(null);
+                mList.setAdapter(mAdapter);
+                mActivity.setContentView(mList);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mActivity.finish();
+        mInstrumentation.waitForIdleSync();
+    }
+
+    @Test
+    public void refreshWithTheSameVolumesBindsNoRow() {
+        show(books(0, ROW_COUNT, "Title"));
+        assertEquals(0, show(books(0, ROW_COUNT, "Title")));
+
+        // Rebinding the whole list, as clearing and adding the results did, binds every visible row
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.resetBindCount();
+                mAdapter.notifyDataSetChanged();
+            }
+        });
+        awaitLaidOut();
+        assertTrue(getBindCount() > 0);
+    }
+
+    @Test
+    public void appendedPageBindsNoVisibleRow() {
+        ArrayList<BookItem> bookItems = books(0, ROW_COUNT, "Title");
+        show(bookItems);
+        // The appended rows are below the screen, they are bound once scrolled to
+        ArrayList<BookItem> appended = new ArrayList<BookItem>(bookItems);
+        appended.addAll(books(ROW_COUNT, ROW_COUNT, "Title"));
+        assertEquals(0, show(appended));
+    }
+
+    @Test
+    public void changedVolumeOnlyRebindsItsRow() {
+        show(books(0, ROW_COUNT, "Title"));
+        ArrayList<BookItem> refreshed = books(0, ROW_COUNT, "Title");
+        refreshed.set(0, books(0, 1, "Revised title").get(0));
+        assertEquals(1, show(refreshed));
+    }
+
+    /**
+     * Returns count new books with the ids from the given index on, the same ids and contents
+     * for the same arguments.
+     */
+    private static ArrayList<BookItem> books(int fromIndex, int count, String title) {
+        ArrayList<BookItem> bookItems = new ArrayList<BookItem>(count);
+        for (int i = fromIndex; i < fromIndex + count; i++) {
+            bookItems.add(new BookItem("volume" + i, null, null, title + " " + i, "Author " + i,
+                    100 + i, "en", null));
+        }
+        return bookItems;
+    }
+
+    /**
+     * Submit the list, wait until its rows are laid out and return the number of rows bound.
+     */
+    private int show(final List<BookItem> bookItems) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.resetBindCount();
+                mAdapter.submitList(bookItems);
+            }
+        });
+        // The diff is applied once it has been computed in the background
+        final boolean[] submitted = new boolean[1];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (!submitted[0]) {
+            if (SystemClock.elapsedRealtime() > deadline) {
+                fail("The list wasn't submitted");
+            }
+            SystemClock.sleep(10);
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    submitted[0] = mAdapter.getItemCount() == bookItems.size()
+                            && mAdapter.getItem(0) == bookItems.get(0);
+                }
+            });
+        }
+        awaitLaidOut();
+        return getBindCount();
+    }
+
+    /**
+     * Wait until the list has laid out the updates of the adapter.
+     */
+    private void awaitLaidOut() {
+        final boolean[] laidOut = new boolean[1];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        while (!laidOut[0]) {
+            if (SystemClock.elapsedRealtime() > deadline) {
+                fail("The list wasn't laid out");
+            }
+            mInstrumentation.waitForIdleSync();
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    laidOut[0] = !mList.hasPendingAdapterUpdates() && !mList.isLayoutRequested();
+                }
+            });
+        }
+    }
+
+    private int getBindCount() {
+        final int[] bindCount = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                bindCount[0] = mAdapter.getBindCount();
+            }
+        });
+        return bindCount[0];
+    }
+}
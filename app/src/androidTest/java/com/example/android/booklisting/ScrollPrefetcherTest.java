@@ -0,0 +1,152 @@
+package com.example.android.booklisting;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Scrolls the results of a search at a steady pace, without and with the
+ * {@link ScrollPrefetcher}, and compares the fraction of rows bound while their thumbnail still
+ * showed the placeholder. Searches go to the local stand-in server of the tools, at the
+ * booksApiBaseUrl instrumentation argument or the emulator's address of the host, e.g.
+ * gradlew :tools:stubServer -PtoolArgs="--port 8080" next to the emulator. It needs a connection
+ * which isn't metered.
+ *
+ * <p>A first run, which isn't measured, fills the response and disk caches, so that every
+ * measured run finds them in the same state. Every run starts with an empty memory cache, and
+ * the runs without and with prefetching alternate, off, on, on, off, so that neither is favoured
+ * by running later.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScrollPrefetcherTest {
+
+    private static final String LOG_TAG = ScrollPrefetcherTest.class.getSimpleName();
+
+    /** The stand-in server on the host, as the emulator reaches it */
+    private static final String ARG_BASE_URL = "booksApiBaseUrl";
+    private static final String DEFAULT_BASE_URL = "http://10.0.2.2:8080/books/v1/volumes";
+
+    /** Rows loaded before scrolling starts */
+    private static final int MIN_ROWS = 40;
+    private static final long LOAD_TIMEOUT_MILLIS = 30000;
+
+    /** A brisk scroll, one step per frame */
+    private static final int SCROLL_STEP_COUNT = 150;
+    private static final int SCROLL_STEP_DP = 24;
+    private static final long FRAME_MILLIS = 16;
+
+    private Context mContext;
+    private String mPreviousBaseUrl;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        ConnectivityManager connMgr = (ConnectivityManager)
+                mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        // Nothing is prefetched on a metered network
+        assumeFalse(connMgr.isActiveNetworkMetered());
+
+        mPreviousBaseUrl = QueryUtils.getBaseUrl();
+        String baseUrl = InstrumentationRegistry.getArguments().getString(ARG_BASE_URL);
+        QueryUtils.setBaseUrl(baseUrl != null ? baseUrl : DEFAULT_BASE_URL);
+
+        // The search BookListActivity runs, as MainActivity would leave it
+        MainActivity.mContext = mContext.getApplicationContext();
+        MainActivity.userSearchInputTitle = "history";
+        MainActivity.userSearchInputAuthor = "";
+        MainActivity.resultNumber = "40";
+    }
+
+    @After
+    public void tearDown() {
+        ScrollPrefetcher.setPrefetchEnabled(true);
+        if (mPreviousBaseUrl != null) {
+            QueryUtils.setBaseUrl(mPreviousBaseUrl);
+        }
+    }
+
+    @Test
+    public void prefetchingLowersThePlaceholderRatio() throws Exception {
+        // Warm the caches every measured run reads through
+        measurePlaceholderRatio(false);
+
+        float withoutPrefetch = measurePlaceholderRatio(false);
+        float withPrefetch = measurePlaceholderRatio(true);
+        withPrefetch = (withPrefetch + measurePlaceholderRatio(true)) / 2;
+        withoutPrefetch = (withoutPrefetch + measurePlaceholderRatio(false)) / 2;
+
+        Log.i(LOG_TAG, "Placeholder visible: " + (int) (100 * withoutPrefetch)
+                + "% without prefetching, " + (int) (100 * withPrefetch) + "% with it");
+        assertTrue(withPrefetch < withoutPrefetch);
+    }
+
+    /**
+     * Open the results, wait for them and scroll through them with prefetching on or off, and
+     * return the fraction of the rows bound while scrolling that showed the placeholder.
+     */
+    private float measurePlaceholderRatio(boolean prefetch) {
+        ScrollPrefetcher.setPrefetchEnabled(prefetch);
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Intent intent = new Intent(mContext, BookListActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        BookListActivity activity = (BookListActivity) instrumentation.startActivitySync(intent);
+        try {
+            final RecyclerView list = (RecyclerView) activity.findViewById(R.id.list);
+            awaitRows(instrumentation, list);
+            ThumbnailLoader.resetStats(activity);
+
+            final int stepPixels = (int) (SCROLL_STEP_DP
+                    * activity.getResources().getDisplayMetrics().density);
+            for (int i = 0; i < SCROLL_STEP_COUNT; i++) {
+                instrumentation.runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        list.scrollBy(0, stepPixels);
+                    }
+                });
+                SystemClock.sleep(FRAME_MILLIS);
+            }
+            return ThumbnailLoader.getPlaceholderRatio();
+        } finally {
+            activity.finish();
+            instrumentation.waitForIdleSync();
+        }
+    }
+
+    /**
+     * Wait until the list holds enough rows to scroll through.
+     */
+    private static void awaitRows(Instrumentation instrumentation, final RecyclerView list) {
+        final int[] rowCount = new int[1];
+        long deadline = SystemClock.elapsedRealtime() + LOAD_TIMEOUT_MILLIS;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    rowCount[0] = list.getAdapter().getItemCount();
+                }
+            });
+            if (rowCount[0] >= MIN_ROWS) {
+                instrumentation.waitForIdleSync();
+                return;
+            }
+            SystemClock.sleep(100);
+        }
+        fail("The search didn't load " + MIN_ROWS + " rows from " + QueryUtils.getBaseUrl());
+    }
+}
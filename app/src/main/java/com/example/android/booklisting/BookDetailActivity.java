@@ -0,0 +1,135 @@
+package com.example.android.booklisting;
+
+import android.app.LoaderManager.LoaderCallbacks;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+/**
+ * The {@link BookDetailActivity} is opened by a row of the results list. The fields of the row
+ * are shown at once from the intent and the description, which the list doesn't fetch, is loaded
+ * by a {@link BookDetailLoader}. It is usually in memory already, prefetched while the row was
+ * on screen.
+ */
+
+public class BookDetailActivity extends AppCompatActivity implements LoaderCallbacks<BookItem> {
+
+    /** Intent extras holding the fields of the row */
+    private static final String EXTRA_VOLUME_ID = "volumeId";
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_AUTHOR = "author";
+    private static final String EXTRA_PAGE_COUNT = "pageCount";
+    private static final String EXTRA_LANGUAGE = "language";
+    private static final String EXTRA_THUMBNAIL_URL = "thumbnailUrl";
+    private static final String EXTRA_PREVIEW_URL = "previewUrl";
+
+    /** Loader ID of the volume */
+    private static final int DETAIL_LOADER_ID = 1;
+
+    /** Detail loads are recorded in {@link PipelineMetrics} as pages of a single volume */
+    private static final int DETAIL_PAGE_SIZE = 1;
+
+    private ProgressBar mProgressBar;
+    private TextView mDescriptionTextView;
+
+    /** When the screen was created, to measure how long the description took */
+    private long mStartTime;
+
+    /**
+     * Returns the intent opening the details of the given row.
+     */
+    public static Intent newIntent(Context context, BookItem bookItem) {
+        return new Intent(context, BookDetailActivity.class)
+                .putExtra(EXTRA_VOLUME_ID, bookItem.getmId())
+                .putExtra(EXTRA_TITLE, bookItem.getmTitle())
+                .putExtra(EXTRA_AUTHOR, bookItem.getmAuthor())
+                .putExtra(EXTRA_PAGE_COUNT, bookItem.getmPageCount())
+                .putExtra(EXTRA_LANGUAGE, bookItem.getmLanguage())
+                .putExtra(EXTRA_THUMBNAIL_URL, bookItem.getmSmallThumbnailURL())
+                .putExtra(EXTRA_PREVIEW_URL, bookItem.getmPreviewURL());
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mStartTime = System.nanoTime();
+        setContentView(R.layout.activity_book_detail);
+        Intent intent = getIntent();
+
+        // Show the row's fields right away
+        ImageView thumbnailImageView = (ImageView) findViewById(R.id.book_detail_thumbnail);
+        String thumbnailUrl = intent.getStringExtra(EXTRA_THUMBNAIL_URL);
+        if (thumbnailUrl != null) {
+            ThumbnailLoader.load(thumbnailImageView, thumbnailUrl);
+        }
+        ((TextView) findViewById(R.id.book_detail_title)).setText(
+                intent.getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.book_detail_author)).setText(
+                intent.getStringExtra(EXTRA_AUTHOR));
+        ((TextView) findViewById(R.id.book_detail_pages_language)).setText(getString(
+                R.string.pages_language, intent.getStringExtra(EXTRA_PAGE_COUNT),
+                intent.getStringExtra(EXTRA_LANGUAGE)));
+
+        // Open the book's preview in the browser
+        final String previewUrl = intent.getStringExtra(EXTRA_PREVIEW_URL);
+        Button previewButton = (Button) findViewById(R.id.book_detail_preview);
+        if (previewUrl != null) {
+            previewButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(previewUrl)));
+                }
+            });
+        } else {
+            previewButton.setVisibility(View.GONE);
+        }
+
+        mProgressBar = (ProgressBar) findViewById(R.id.book_detail_progress_bar);
+        mDescriptionTextView = (TextView) findViewById(R.id.book_detail_description);
+
+        // The description, from memory if it was prefetched
+        if (intent.getStringExtra(EXTRA_VOLUME_ID) != null) {
+            getLoaderManager().initLoader(DETAIL_LOADER_ID, null, this);
+        } else {
+            showDescription(null);
+        }
+    }
+
+    @Override
+    public Loader<BookItem> onCreateLoader(int id, Bundle args) {
+        return new BookDetailLoader(this, getIntent().getStringExtra(EXTRA_VOLUME_ID));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<BookItem> loader, BookItem volume) {
+        if (mStartTime != 0) {
+            PipelineMetrics.recordSince(PipelineMetrics.Stage.DETAIL, DETAIL_PAGE_SIZE,
+                    mStartTime);
+            mStartTime = 0;
+        }
+        showDescription(volume);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<BookItem> loader) {
+    }
+
+    private void showDescription(BookItem volume) {
+        mProgressBar.setVisibility(View.GONE);
+        if (volume == null) {
+            mDescriptionTextView.setText(R.string.description_error);
+        } else if (volume.getmDescription() == null) {
+            mDescriptionTextView.setText(R.string.no_description);
+        } else {
+            mDescriptionTextView.setText(volume.getmDescription());
+        }
+    }
+}
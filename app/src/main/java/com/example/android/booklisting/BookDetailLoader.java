@@ -0,0 +1,83 @@
+package com.example.android.booklisting;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+/**
+ * Loads the full volume of a {@link BookDetailActivity} through {@link BookDetails}, which serves
+ * it from memory if it was prefetched and otherwise fetches it from the volumes/{id} endpoint.
+ */
+
+public class BookDetailLoader extends AsyncTaskLoader<BookItem> {
+
+    /** Volume to load */
+    private final String mVolumeId;
+
+    /** Signal of the load in progress, cancelled to abort it */
+    private CancellationSignal mCancellationSignal;
+
+    /**
+     * Constructs a new {@link BookDetailLoader}.
+     *
+     * @param context of the activity
+     * @param volumeId of the volume to load
+     */
+    public BookDetailLoader(Context context, String volumeId) {
+        super(context);
+        mVolumeId = volumeId;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        // A prefetched volume is delivered right away
+        BookItem volume = BookDetails.getCached(mVolumeId);
+        if (volume != null) {
+            deliverResult(volume);
+            return;
+        }
+        forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public BookItem loadInBackground() {
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            mCancellationSignal = new CancellationSignal();
+        }
+        try {
+            return BookDetails.load(mVolumeId, mCancellationSignal);
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link BookDetails} loads the full volumes shown by {@link BookDetailActivity} and keeps the
+ * most recent ones in memory. The list only fetches what its rows show, so the description of a
+ * volume comes from the volumes/{id} endpoint: on demand when its row is opened, or ahead of that
+ * for the rows the user is most likely to open, the ones visible while the list is at rest.
+ * Prefetches are queued on a lowest priority thread, which starts them one at a time, the most
+ * recently requested first. The fetch itself runs at normal priority like every other fetch, so
+ * that an open of a row whose prefetch is still running can join that fetch rather than starting
+ * another one without waiting behind the rest of the app.
+ */
+
+public final class BookDetails {
+
+    /** Number of volumes kept in memory */
+    private static final int CACHE_SIZE = 64;
+
+    /** Older prefetch requests are dropped beyond this many */
+    private static final int MAX_PENDING_PREFETCHES = 16;
+
+    private static final LruCache<String, BookItem> sCache = new LruCache<String, BookItem>(
+            CACHE_SIZE);
+
+    /** Volume ids waiting to be prefetched, the most recent last. Also used as their lock. */
+    private static final ArrayList<String> sPendingPrefetches = new ArrayList<String>();
+
+    /** Single thread starting the prefetches in turn, below every other thread of the app */
+    private static final ExecutorService sPrefetchExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                            runnable.run();
+                        }
+                    }, "BookDetails-prefetch");
+                }
+            });
+
+    /** Fetcher used by the {@link RequestCoalescer}, the volume as a list of one */
+    private static final RequestCoalescer.Fetcher sFetcher = new RequestCoalescer.Fetcher() {
+        @Override
+        public ArrayList<BookItem> fetch(String url, CancellationSignal cancellationSignal) {
+            BookItem volume = QueryUtils.fetchVolume(url, cancellationSignal);
+            if (volume == null) {
+                return null;
+            }
+            ArrayList<BookItem> volumes = new ArrayList<BookItem>(1);
+            volumes.add(volume);
+            return volumes;
+        }
+    };
+
+    /** Counters for the logs */
+    private static final AtomicInteger sPrefetchCount = new AtomicInteger();
+    private static final AtomicInteger sHitCount = new AtomicInteger();
+    private static final AtomicInteger sMissCount = new AtomicInteger();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookDetails}
+     * object.
+     */
+    private BookDetails() {
+    }
+
+    /**
+     * Returns the volume if it is in memory, or null.
+     */
+    public static BookItem getCached(String volumeId) {
+        return sCache.get(volumeId);
+    }
+
+    /**
+     * Returns the volume, from memory if it is there, otherwise from the network. This blocks,
+     * so it must not be called on the main thread. Returns null if it couldn't be loaded.
+     *
+     * @throws OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public static BookItem load(String volumeId, CancellationSignal cancellationSignal) {
+        BookItem volume = sCache.get(volumeId);
+        if (volume != null) {
+            sHitCount.incrementAndGet();
+            return volume;
+        }
+        sMissCount.incrementAndGet();
+        return fetch(volumeId, cancellationSignal);
+    }
+
+    private static BookItem fetch(String volumeId, CancellationSignal cancellationSignal) {
+        ArrayList<BookItem> volumes = RequestCoalescer.fetch(QueryUtils.volumeUrl(volumeId),
+                cancellationSignal, sFetcher);
+        if (volumes == null || volumes.isEmpty()) {
+            return null;
+        }
+        BookItem volume = volumes.get(0);
+        sCache.put(volumeId, volume);
+        return volume;
+    }
+
+    /**
+     * Fetch the volume in the background unless it is in memory already. Requests beyond the
+     * most recent few are dropped.
+     */
+    public static void prefetch(String volumeId) {
+        if (volumeId == null || sCache.get(volumeId) != null) {
+            return;
+        }
+        synchronized (sPendingPrefetches) {
+            // Move a repeated request to the front of the line
+            sPendingPrefetches.remove(volumeId);
+            sPendingPrefetches.add(volumeId);
+            if (sPendingPrefetches.size() > MAX_PENDING_PREFETCHES) {
+                sPendingPrefetches.remove(0);
+            }
+        }
+        sPrefetchExecutor.execute(sPrefetchNext);
+    }
+
+    /**
+     * Forget a prefetch that hasn't started yet, e.g. because its row left the screen.
+     */
+    public static void cancelPrefetch(String volumeId) {
+        synchronized (sPendingPrefetches) {
+            sPendingPrefetches.remove(volumeId);
+        }
+    }
+
+    /** Runs the most recently requested prefetch, if any is left */
+    private static final Runnable sPrefetchNext = new Runnable() {
+        @Override
+        public void run() {
+            String volumeId;
+            synchronized (sPendingPrefetches) {
+                if (sPendingPrefetches.isEmpty()) {
+                    return;
+                }
+                volumeId = sPendingPrefetches.remove(sPendingPrefetches.size() - 1);
+            }
+            if (sCache.get(volumeId) == null) {
+                sPrefetchCount.incrementAndGet();
+                fetch(volumeId, null);
+            }
+        }
+    };
+
+    /**
+     * Returns the counters of the detail loads, for the logs.
+     */
+    public static String getStats() {
+        return "Details: " + sPrefetchCount.get() + " prefetched, " + sHitCount.get()
+                + " opened from memory, " + sMissCount.get() + " fetched on open";
+    }
+}
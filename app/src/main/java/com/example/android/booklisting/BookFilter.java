@@ -0,0 +1,179 @@
+package com.example.android.booklisting;
+
+import java.util.Locale;
+
+/**
+ * {@link BookFilter} is an immutable filter and sort order over loaded results: books in a
+ * language, within a page count range and with a title or author containing some text.
+ * This class has no Android dependencies so that it can be used and measured on a plain JVM.
+ */
+
+public final class BookFilter {
+
+    /** Order of the filtered books */
+    public enum SortOrder {
+        /** Order the API returned them in */
+        RELEVANCE,
+        /** Alphabetical by title */
+        TITLE,
+        /** Fewest pages first */
+        PAGE_COUNT
+    }
+
+    /** Filter letting every book through in API order */
+    public static final BookFilter NONE = new Builder().build();
+
+    /** Page count range of the short books, the ones without a page count excluded */
+    public static final int SHORT_BOOK_MIN_PAGE_COUNT = 1;
+    public static final int SHORT_BOOK_MAX_PAGE_COUNT = 300;
+
+    /** Language code to keep, null for all */
+    private final String mLanguage;
+
+    /** Page count range to keep, both inclusive */
+    private final int mMinPageCount;
+    private final int mMaxPageCount;
+
+    /** Lower case text the title or the author must contain, empty for all */
+    private final String mText;
+
+    private final SortOrder mSortOrder;
+
+    private BookFilter(Builder builder) {
+        mLanguage = builder.mLanguage;
+        mMinPageCount = builder.mMinPageCount;
+        mMaxPageCount = builder.mMaxPageCount;
+        mText = builder.mText;
+        mSortOrder = builder.mSortOrder;
+    }
+
+    public String getLanguage() {
+        return mLanguage;
+    }
+
+    public int getMinPageCount() {
+        return mMinPageCount;
+    }
+
+    public int getMaxPageCount() {
+        return mMaxPageCount;
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    public SortOrder getSortOrder() {
+        return mSortOrder;
+    }
+
+    /** Returns true if every book passes the filter. */
+    public boolean matchesAll() {
+        return mLanguage == null && mMinPageCount <= 0 && mMaxPageCount == Integer.MAX_VALUE
+                && mText.isEmpty();
+    }
+
+    /**
+     * Returns true if every book passing this filter also passes the previous one, so that only
+     * the books which passed the previous filter need to be checked again.
+     */
+    public boolean isRefinementOf(BookFilter previous) {
+        return (previous.mLanguage == null || previous.mLanguage.equals(mLanguage))
+                && mMinPageCount >= previous.mMinPageCount
+                && mMaxPageCount <= previous.mMaxPageCount
+                && mText.contains(previous.mText);
+    }
+
+    /**
+     * Returns true if the book passes the filter.
+     *
+     * @param lowerTitle is the book's title in lower case, or null
+     * @param lowerAuthor is the book's author in lower case, or null
+     */
+    public boolean matches(BookItem bookItem, String lowerTitle, String lowerAuthor) {
+        if (mLanguage != null && !mLanguage.equals(bookItem.getmLanguage())) {
+            return false;
+        }
+        int pageCount = bookItem.getPageCountValue();
+        if (pageCount < mMinPageCount || pageCount > mMaxPageCount) {
+            return false;
+        }
+        return mText.isEmpty()
+                || (lowerTitle != null && lowerTitle.contains(mText))
+                || (lowerAuthor != null && lowerAuthor.contains(mText));
+    }
+
+    /**
+     * Returns a builder initialized with this filter.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    @Override
+    public String toString() {
+        return "BookFilter{language=" + mLanguage + ", pages=" + mMinPageCount + ".."
+                + mMaxPageCount + ", text=" + mText + ", sort=" + mSortOrder + "}";
+    }
+
+    /**
+     * Builder for {@link BookFilter} objects.
+     */
+    public static final class Builder {
+        private String mLanguage;
+        private int mMinPageCount;
+        private int mMaxPageCount = Integer.MAX_VALUE;
+        private String mText = "";
+        private SortOrder mSortOrder = SortOrder.RELEVANCE;
+
+        public Builder() {
+        }
+
+        private Builder(BookFilter filter) {
+            mLanguage = filter.mLanguage;
+            mMinPageCount = filter.mMinPageCount;
+            mMaxPageCount = filter.mMaxPageCount;
+            mText = filter.mText;
+            mSortOrder = filter.mSortOrder;
+        }
+
+        /**
+         * Set the language code to keep, or null to keep all languages.
+         */
+        public Builder setLanguage(String language) {
+            mLanguage = language;
+            return this;
+        }
+
+        /**
+         * Set the page count range to keep, both inclusive. A book without a page count counts
+         * as 0 pages.
+         */
+        public Builder setPageCountRange(int minPageCount, int maxPageCount) {
+            if (minPageCount > maxPageCount) {
+                throw new IllegalArgumentException("Empty page count range: " + minPageCount
+                        + ".." + maxPageCount);
+            }
+            mMinPageCount = minPageCount;
+            mMaxPageCount = maxPageCount;
+            return this;
+        }
+
+        /**
+         * Set the text the title or the author must contain, ignoring case.
+         */
+        public Builder setText(String text) {
+            mText = text != null ? text.trim().toLowerCase(Locale.ROOT) : "";
+            return this;
+        }
+
+        public Builder setSortOrder(SortOrder sortOrder) {
+            mSortOrder = sortOrder;
+            return this;
+        }
+
+        public BookFilter build() {
+            return new BookFilter(this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.booklisting;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link BookFilterEngine} applies a {@link BookFilter} to the loaded results on a background
+ * thread and hands the filtered and sorted list to the main thread. The
+ * {@link IncrementalBookFilter} it runs them through refines incrementally, so that narrowing
+ * the filter only checks the books that passed the previous one.
+ */
+
+public class BookFilterEngine {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookFilterEngine.class.getSimpleName();
+
+    /**
+     * Callback invoked on the main thread with the books passing the filter.
+     */
+    public interface OnFilteredListener {
+        void onFiltered(ArrayList<BookItem> bookItems);
+    }
+
+    /** Thread running the filters, one at a time */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final OnFilteredListener mListener;
+
+    /** Incremented for every submitted filter, so that an outdated result is never published */
+    private volatile int mGeneration;
+
+    /** Only used on the filter thread */
+    private final IncrementalBookFilter mFilter = new IncrementalBookFilter();
+
+    public BookFilterEngine(OnFilteredListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Filter the given books on the background thread and publish the result to the listener.
+     * The list is copied, so the caller may keep appending to it.
+     */
+    public void submit(List<BookItem> bookItems, final BookFilter filter) {
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        final ArrayList<BookItem> source = new ArrayList<BookItem>(bookItems);
+        final int generation = ++mGeneration;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Skip filters that were replaced while they waited
+                if (generation != mGeneration) {
+                    return;
+                }
+                long startTime = System.nanoTime();
+                final ArrayList<BookItem> filtered = mFilter.filter(source, filter);
+                Log.v(LOG_TAG, "Filtered " + source.size() + " books to " + filtered.size()
+                        + " in " + (System.nanoTime() - startTime) / 1000 + " us");
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mListener.onFiltered(filtered);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop publishing results, e.g. when the list goes away.
+     */
+    public void cancel() {
+        mGeneration++;
+        mExecutor.shutdownNow();
+    }
+}
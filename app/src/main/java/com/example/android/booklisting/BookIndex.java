@@ -0,0 +1,214 @@
+package com.example.android.booklisting;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link BookIndex} is a local full-text index of every volume the app has fetched, stored in a
+ * SQLite FTS4 table. It answers intitle/inauthor queries without the network, so that local hits
+ * can be shown while a search is still in flight and results can be served when there is no
+ * connection at all. Volumes are ingested on a background thread as soon as they are fetched;
+ * the oldest ones are dropped once the index holds {@link BookIndexContract#MAX_VOLUMES} volumes.
+ */
+
+public class BookIndex extends SQLiteOpenHelper {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookIndex.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "book_index.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static BookIndex sInstance;
+
+    /** Thread writing to the index, one batch at a time */
+    private final ExecutorService mIngestExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Number of volumes in the index, counted once and then kept up to date by the ingest
+     * thread, or -1 until it was counted. Only used on the ingest thread.
+     */
+    private long mVolumeCount = -1;
+
+    private BookIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Searches read while the ingest thread writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Returns the process-wide index.
+     */
+    public static synchronized BookIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BookIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(BookIndexContract.SQL_CREATE_VOLUMES);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The index only holds copies of fetched volumes, so it can simply be rebuilt
+        db.execSQL("DROP TABLE IF EXISTS " + BookIndexContract.TABLE_VOLUMES);
+        onCreate(db);
+    }
+
+    /**
+     * Add the given volumes to the index on the ingest thread. The list must not be modified
+     * afterwards.
+     */
+    public void addAllAsync(final List<BookItem> bookItems) {
+        if (bookItems == null || bookItems.isEmpty()) {
+            return;
+        }
+        mIngestExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                addAll(bookItems);
+            }
+        });
+    }
+
+    /**
+     * Add the given volumes to the index, replacing the ones that are already in it. Runs on the
+     * ingest thread.
+     */
+    private void addAll(List<BookItem> bookItems) {
+        long startTime = SystemClock.elapsedRealtime();
+        SQLiteDatabase db;
+        try {
+            db = getWritableDatabase();
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Error opening the book index", e);
+            return;
+        }
+        SQLiteStatement deleteStatement = db.compileStatement(BookIndexContract.SQL_DELETE_VOLUME);
+        SQLiteStatement insertStatement = db.compileStatement(BookIndexContract.SQL_INSERT_VOLUME);
+        long fetchedAt = System.currentTimeMillis();
+        int count = 0;
+        // Every edition is indexed on its own, collapsed editions included
+        ArrayList<BookItem> editions = new ArrayList<BookItem>(bookItems.size());
+        for (BookItem bookItem : bookItems) {
+            editions.add(bookItem);
+            editions.addAll(bookItem.getmAlternates());
+        }
+        db.beginTransactionNonExclusive();
+        try {
+            long volumeCount = mVolumeCount >= 0 ? mVolumeCount
+                    : DatabaseUtils.queryNumEntries(db, BookIndexContract.TABLE_VOLUMES);
+            for (BookItem bookItem : editions) {
+                // Volumes without an id can't be told apart, so they aren't indexed
+                if (bookItem.getmId() == null) {
+                    continue;
+                }
+                long docId = BookIndexContract.docIdFor(bookItem.getmId());
+                deleteStatement.bindLong(1, docId);
+                volumeCount -= deleteStatement.executeUpdateDelete();
+
+                insertStatement.clearBindings();
+                insertStatement.bindLong(1, docId);
+                insertStatement.bindString(2, bookItem.getmId());
+                bindStringOrNull(insertStatement, 3, bookItem.getmTitle());
+                bindStringOrNull(insertStatement, 4, bookItem.getmAuthor());
+                bindStringOrNull(insertStatement, 5, bookItem.getmSmallThumbnailURL());
+                bindStringOrNull(insertStatement, 6, bookItem.getmPreviewURL());
+                insertStatement.bindLong(7, bookItem.getPageCountValue());
+                bindStringOrNull(insertStatement, 8, bookItem.getmLanguage());
+                bindStringOrNull(insertStatement, 9, bookItem.getmDescription());
+                insertStatement.bindLong(10, fetchedAt);
+                insertStatement.executeInsert();
+                volumeCount++;
+                count++;
+            }
+            volumeCount = trimToSize(db, volumeCount);
+            db.setTransactionSuccessful();
+            mVolumeCount = volumeCount;
+        } catch (SQLiteException e) {
+            // The transaction is rolled back, so count the volumes again next time
+            mVolumeCount = -1;
+            Log.e(LOG_TAG, "Error adding volumes to the book index", e);
+        } finally {
+            db.endTransaction();
+            deleteStatement.close();
+            insertStatement.close();
+        }
+        Log.v(LOG_TAG, "Indexed " + count + " volumes in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Drop the least recently fetched volumes beyond MAX_VOLUMES, and return the number of
+     * volumes left of the given volumeCount.
+     */
+    private static long trimToSize(SQLiteDatabase db, long volumeCount) {
+        long excess = volumeCount - BookIndexContract.MAX_VOLUMES;
+        if (excess <= 0) {
+            return volumeCount;
+        }
+        db.execSQL(BookIndexContract.SQL_TRIM, new Object[] {excess});
+        return BookIndexContract.MAX_VOLUMES;
+    }
+
+    /**
+     * Returns the indexed volumes matching the terms of the given query, most recently fetched
+     * first, for the page of the query. Terms of at least MIN_PREFIX_LENGTH characters match as
+     * a prefix, so partially typed words find their volumes as well.
+     *
+     * @throws android.os.OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public ArrayList<BookItem> search(BookQuery query, CancellationSignal cancellationSignal) {
+        ArrayList<BookItem> bookItems = new ArrayList<BookItem>();
+        String matchExpression = BookIndexContract.matchExpression(query);
+        if (matchExpression.isEmpty()) {
+            return bookItems;
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().rawQuery(BookIndexContract.SQL_SEARCH,
+                    new String[] {matchExpression, String.valueOf(query.getPageSize()),
+                            String.valueOf(query.getStartIndex())}, cancellationSignal);
+            while (cursor.moveToNext()) {
+                bookItems.add(new BookItem(cursor.getString(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getString(3), cursor.getString(4),
+                        cursor.getInt(5), cursor.getString(6), cursor.getString(7)));
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Error searching the book index", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        Log.v(LOG_TAG, "Found " + bookItems.size() + " local volumes in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return bookItems;
+    }
+}
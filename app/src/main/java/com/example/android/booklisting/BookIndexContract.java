@@ -0,0 +1,117 @@
+package com.example.android.booklisting;
+
+/**
+ * {@link BookIndexContract} defines the table of the {@link BookIndex} and the statements run on
+ * it. This class has no Android dependencies so that the benchmarks can run the same statements
+ * against SQLite on a plain JVM.
+ */
+
+public final class BookIndexContract {
+
+    /** Name of the FTS table and its columns */
+    public static final String TABLE_VOLUMES = "volumes";
+    public static final String COLUMN_VOLUME_ID = "volume_id";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_AUTHOR = "author";
+    public static final String COLUMN_THUMBNAIL = "thumbnail";
+    public static final String COLUMN_PREVIEW = "preview";
+    public static final String COLUMN_PAGE_COUNT = "page_count";
+    public static final String COLUMN_LANGUAGE = "language";
+    public static final String COLUMN_DESCRIPTION = "description";
+    public static final String COLUMN_FETCHED_AT = "fetched_at";
+
+    /** Only the title and the author are tokenized, the other columns are just stored */
+    public static final String SQL_CREATE_VOLUMES = "CREATE VIRTUAL TABLE " + TABLE_VOLUMES
+            + " USING fts4(" + COLUMN_VOLUME_ID + ", " + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", "
+            + COLUMN_THUMBNAIL + ", " + COLUMN_PREVIEW + ", " + COLUMN_PAGE_COUNT + ", "
+            + COLUMN_LANGUAGE + ", " + COLUMN_DESCRIPTION + ", " + COLUMN_FETCHED_AT + ", "
+            + "notindexed=" + COLUMN_VOLUME_ID + ", notindexed=" + COLUMN_THUMBNAIL + ", "
+            + "notindexed=" + COLUMN_PREVIEW + ", notindexed=" + COLUMN_PAGE_COUNT + ", "
+            + "notindexed=" + COLUMN_LANGUAGE + ", notindexed=" + COLUMN_DESCRIPTION + ", "
+            + "notindexed=" + COLUMN_FETCHED_AT + ")";
+
+    /** The docid of a volume is derived from its id, so that fetching it again replaces it */
+    public static final String SQL_DELETE_VOLUME = "DELETE FROM " + TABLE_VOLUMES
+            + " WHERE docid = ?";
+    public static final String SQL_INSERT_VOLUME = "INSERT INTO " + TABLE_VOLUMES + " (docid, "
+            + COLUMN_VOLUME_ID + ", " + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", "
+            + COLUMN_THUMBNAIL + ", " + COLUMN_PREVIEW + ", " + COLUMN_PAGE_COUNT + ", "
+            + COLUMN_LANGUAGE + ", " + COLUMN_DESCRIPTION + ", " + COLUMN_FETCHED_AT
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public static final String SQL_SEARCH = "SELECT " + COLUMN_VOLUME_ID + ", "
+            + COLUMN_THUMBNAIL + ", " + COLUMN_PREVIEW + ", " + COLUMN_TITLE + ", "
+            + COLUMN_AUTHOR + ", " + COLUMN_PAGE_COUNT + ", " + COLUMN_LANGUAGE + ", "
+            + COLUMN_DESCRIPTION + " FROM " + TABLE_VOLUMES + " WHERE " + TABLE_VOLUMES
+            + " MATCH ? ORDER BY " + COLUMN_FETCHED_AT + " DESC LIMIT ? OFFSET ?";
+
+    /** Drops the given number of the least recently fetched volumes */
+    public static final String SQL_TRIM = "DELETE FROM " + TABLE_VOLUMES + " WHERE docid IN "
+            + "(SELECT docid FROM " + TABLE_VOLUMES + " ORDER BY " + COLUMN_FETCHED_AT
+            + " LIMIT ?)";
+
+    /** Shorter terms only match whole words, a prefix that short would match most volumes */
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    /** Maximum number of volumes kept in the index */
+    public static final int MAX_VOLUMES = 100000;
+
+    /** FNV-1a 64 bit constants used for the docids */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookIndexContract}
+     * object.
+     */
+    private BookIndexContract() {
+    }
+
+    /**
+     * Returns the FTS expression for the terms of the query, e.g. "title:lord* author:tolkien*",
+     * or an empty String if the query holds no searchable term.
+     */
+    public static String matchExpression(BookQuery query) {
+        StringBuilder expression = new StringBuilder();
+        appendTerms(COLUMN_TITLE, query.getTitle(), expression);
+        appendTerms(COLUMN_AUTHOR, query.getAuthor(), expression);
+        return expression.toString();
+    }
+
+    /**
+     * Append a column filter for every word of the input. Only letters and digits are kept, so
+     * the input can never form FTS operators.
+     */
+    private static void appendTerms(String column, String input, StringBuilder expression) {
+        int i = 0;
+        while (i < input.length()) {
+            while (i < input.length() && !Character.isLetterOrDigit(input.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < input.length() && Character.isLetterOrDigit(input.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                expression.append(column).append(':').append(input, start, i);
+                if (i - start >= MIN_PREFIX_LENGTH) {
+                    expression.append('*');
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the docid of the volume with the given id.
+     */
+    public static long docIdFor(String volumeId) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < volumeId.length(); i++) {
+            hash = (hash ^ volumeId.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
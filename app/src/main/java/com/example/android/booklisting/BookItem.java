@@ -1,12 +1,20 @@
 package com.example.android.booklisting;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * {@link BookItem} represents a book which will be shown in the book_list layout.
  * It contains an image, a title, the author's name, the book's page count, a book description as
- * well as a link to the book's preview. */
+ * well as a link to the book's preview. A book can stand for several editions of the same work,
+ * the other editions are kept as its alternates. */
 
 public class BookItem {
 
+    /** Google Books volume id */
+    private String mId;
+
     /** Url for the book's thumbnail */
     private String mSmallThumbnailURL;
 
@@ -22,14 +30,21 @@ public class BookItem {
     /** Book Page Count */
     private int mPageCount;
 
+    /** Book Page Count as shown, formatted on first use */
+    private String mPageCountText;
+
     /** Book Language */
     private String mLanguage;
 
     /** Book Description */
     private String mDescription;
 
+    /** Other editions of the same work, never modified once set */
+    private List<BookItem> mAlternates = Collections.emptyList();
+
     /**
     * Create a new TourItem object for Sightseeing, Shopping
+     * @param id is the Google Books volume id
      * @param smallThumbnailURL is the thumbnail which will be shown as the book's image
      * @param previewURL is the link to the book's previewURL page
      * @param title is the book's title
@@ -38,8 +53,9 @@ public class BookItem {
      * @param language is the book's language
      * @param description is a short descrption of the book
     */
-    public BookItem(String smallThumbnailURL, String previewURL, String title, String author, int
-            pageCount, String language, String description) {
+    public BookItem(String id, String smallThumbnailURL, String previewURL, String title, String
+            author, int pageCount, String language, String description) {
+        mId = id;
         mSmallThumbnailURL = smallThumbnailURL;
         mPreviewURL = previewURL;
         mTitle = title;
@@ -49,6 +65,10 @@ public class BookItem {
         mDescription = description;
     }
 
+    public String getmId() {
+        return mId;
+    }
+
     public String getmSmallThumbnailURL() {
         return mSmallThumbnailURL;
     }
@@ -66,7 +86,14 @@ public class BookItem {
     }
 
     public String getmPageCount() {
-        return String.valueOf(mPageCount);
+        if (mPageCountText == null) {
+            mPageCountText = String.valueOf(mPageCount);
+        }
+        return mPageCountText;
+    }
+
+    public int getPageCountValue() {
+        return mPageCount;
     }
 
     public String getmLanguage() {
@@ -76,4 +103,23 @@ public class BookItem {
     public String getmDescription() {
         return mDescription;
     }
+
+    public List<BookItem> getmAlternates() {
+        return mAlternates;
+    }
+
+    /**
+     * Returns a copy of this book whose alternates are a copy of the given editions, which must
+     * not have alternates of their own. The book itself is left unchanged, so lists holding it
+     * don't change under their readers.
+     */
+    BookItem withAlternates(List<BookItem> alternates) {
+        BookItem bookItem = new BookItem(mId, mSmallThumbnailURL, mPreviewURL, mTitle, mAuthor,
+                mPageCount, mLanguage, mDescription);
+        if (!alternates.isEmpty()) {
+            bookItem.mAlternates = Collections.unmodifiableList(
+                    new ArrayList<BookItem>(alternates));
+        }
+        return bookItem;
+    }
 }
\ No newline at end of file
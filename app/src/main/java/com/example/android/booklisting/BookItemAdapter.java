@@ -1,79 +1,262 @@
 package com.example.android.booklisting;
 
-import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * {@link BookItemAdapter} is an {@link ArrayAdapter} that can provide the layout for each list item
- * based on a data source, which is a list of {@link BookItem} objects.
+ * {@link BookItemAdapter} is a {@link RecyclerView.Adapter} that can provide the layout for each
+ * list item based on a data source, which is a list of {@link BookItem} objects.
+ * Every row keeps its views in a {@link ViewHolder}, rows have stable ids based on the volume id
+ * and a new list is diffed against the current one off the main thread, so that a refreshed or
+ * appended result set only rebinds the rows that changed.
  */
 
-public class BookItemAdapter extends ArrayAdapter<BookItem> {
-    Context mContext;
+public class BookItemAdapter extends RecyclerView.Adapter<BookItemAdapter.ViewHolder> {
+
+    /**
+     * Callback invoked when a row is clicked.
+     */
+    public interface OnBookItemClickListener {
+        void onBookItemClick(BookItem bookItem);
+    }
+
+    /** FNV-1a 64 bit constants used for the stable ids */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Thread computing the diffs, one at a time */
+    private static final ExecutorService sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final OnBookItemClickListener mOnBookItemClickListener;
+
+    /** List currently shown, never modified in place */
+    private List<BookItem> mBookItems = Collections.emptyList();
+
+    /** Incremented for every submitted list, so that an outdated diff is never applied */
+    private int mGeneration;
+
+    /** Number of rows bound, to measure how much a refresh rebinds */
+    private int mBindCount;
+
+    /** Page size of the search, only used to tag the bind times in {@link PipelineMetrics} */
+    private int mPageSize;
+
     /**
      * Create a new {@link BookItemAdapter} object.
      *
-     * @param context is the current context (i.e. Activity) that the adapter is being created in.
-     * @param bookItems is the list of {@link BookItem}s to be displayed.
+     * @param onBookItemClickListener is called when a row is clicked.
      */
-    public BookItemAdapter(Context context, ArrayList<BookItem> bookItems) {
-        super(context, 0, bookItems);
+    public BookItemAdapter(OnBookItemClickListener onBookItemClickListener) {
+        mOnBookItemClickListener = onBookItemClickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the given list. The differences to the current list are computed on a background
+     * thread and only the rows that changed are rebound.
+     */
+    public void submitList(List<BookItem> bookItems) {
+        final List<BookItem> oldBookItems = mBookItems;
+        final List<BookItem> newBookItems = new ArrayList<BookItem>(bookItems);
+        final int generation = ++mGeneration;
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                        new BookItemDiffCallback(oldBookItems, newBookItems));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer list was submitted in the meantime
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mBookItems = newBookItems;
+                        diffResult.dispatchUpdatesTo(BookItemAdapter.this);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Remove all rows.
+     */
+    public void clear() {
+        mGeneration++;
+        mBookItems = Collections.emptyList();
+        notifyDataSetChanged();
+    }
+
+    public BookItem getItem(int position) {
+        return mBookItems.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mBookItems.size();
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        // Check if an existing view is being reused, otherwise inflate the view
-        View bookItemView = convertView;
-        if (bookItemView == null) {
-            bookItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.book_list_item, parent, false);
+    public long getItemId(int position) {
+        String id = mBookItems.get(position).getmId();
+        if (id == null) {
+            return System.identityHashCode(mBookItems.get(position));
         }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** Returns the number of rows bound since the adapter was created or the count was reset. */
+    public int getBindCount() {
+        return mBindCount;
+    }
+
+    public void resetBindCount() {
+        mBindCount = 0;
+    }
+
+    public void setPageSize(int pageSize) {
+        mPageSize = pageSize;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View bookItemView = LayoutInflater.from(parent.getContext()).inflate(
+                R.layout.book_list_item, parent, false);
+        return new ViewHolder(bookItemView);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        mBindCount++;
+        long startTime = System.nanoTime();
         // Get the {@link BookItem} object located at this position in the list
-        BookItem currentBookItem = getItem(position);
+        BookItem currentBookItem = mBookItems.get(position);
 
-        // Find the ImageView in the book_list_item.xml layout with the ID title.
-        ImageView thumbnailImageView = (ImageView) bookItemView.findViewById(R.id.book_thumbnail);
         // Check if there is a link to an image, otherwise use placehoder image.
         if (currentBookItem.getmSmallThumbnailURL() != null) {
-            Picasso.with(getContext()).load(currentBookItem.getmSmallThumbnailURL()).into(thumbnailImageView);
+            ThumbnailLoader.load(holder.thumbnailImageView,
+                    currentBookItem.getmSmallThumbnailURL());
         } else {
-            thumbnailImageView.setImageResource(R.drawable.no_thumbnail);
+            // Make sure the request of the row this view was recycled from doesn't finish later
+            ThumbnailLoader.cancel(holder.thumbnailImageView);
+            holder.thumbnailImageView.setImageResource(R.drawable.no_thumbnail);
         }
-        // Find the TextView in the book_list_item.xml layout with the ID book_title.
-        TextView titleTextView = (TextView) bookItemView.findViewById(R.id.book_title);
         // Get the Title from the currentBookItem object and set this text on the TextView.
-        titleTextView.setText(currentBookItem.getmTitle());
-
-        // Find the TextView in the book_list_item.xml layout with the ID book_author.
-        TextView authorTextView = (TextView) bookItemView.findViewById(R.id.book_author);
+        holder.titleTextView.setText(currentBookItem.getmTitle());
         // Get the Author from the currentBookItem object and set this text on the TextView.
-        authorTextView.setText(currentBookItem.getmAuthor());
-
-        // Find the TextView in the book_list_item.xml layout with the ID book_page_count.
-        TextView pageCountTextView = (TextView) bookItemView.findViewById(R.id.book_page_count);
+        holder.authorTextView.setText(currentBookItem.getmAuthor());
         // Get the Page Count from the currentBookItem object and set this text on the TextView.
-        pageCountTextView.setText(currentBookItem.getmPageCount());
-        
-        // Find the TextView in the book_list_item.xml layout with the ID book_language.
-        TextView languageTextView = (TextView) bookItemView.findViewById(R.id.book_language);
+        holder.pageCountTextView.setText(currentBookItem.getmPageCount());
         // Get the Language from the currentBookItem object and set this text on the TextView.
-        languageTextView.setText(currentBookItem.getmLanguage());
-        
-        // Find the TextView in the book_list_item.xml layout with the ID book_description.
-        TextView descriptionTextView = (TextView) bookItemView.findViewById(R.id.book_description);
-        // Get the Description from the currentBookItem object and set this text on the TextView.
-        descriptionTextView.setText(currentBookItem.getmDescription());
-
-        return bookItemView;
+        holder.languageTextView.setText(currentBookItem.getmLanguage());
+        // Show how many other editions of the work the row stands for
+        int alternateCount = currentBookItem.getmAlternates().size();
+        if (alternateCount > 0) {
+            holder.editionsTextView.setText(holder.itemView.getResources().getQuantityString(
+                    R.plurals.other_editions, alternateCount, alternateCount));
+            holder.editionsTextView.setVisibility(View.VISIBLE);
+        } else {
+            holder.editionsTextView.setVisibility(View.GONE);
+        }
+        PipelineMetrics.recordSince(PipelineMetrics.Stage.BIND, mPageSize, startTime);
+    }
+
+    /**
+     * Holds the views of a row, so they are only looked up when the row is created.
+     */
+    public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final ImageView thumbnailImageView;
+        final TextView titleTextView;
+        final TextView authorTextView;
+        final TextView pageCountTextView;
+        final TextView languageTextView;
+        final TextView editionsTextView;
+
+        ViewHolder(View bookItemView) {
+            super(bookItemView);
+            thumbnailImageView = (ImageView) bookItemView.findViewById(R.id.book_thumbnail);
+            titleTextView = (TextView) bookItemView.findViewById(R.id.book_title);
+            authorTextView = (TextView) bookItemView.findViewById(R.id.book_author);
+            pageCountTextView = (TextView) bookItemView.findViewById(R.id.book_page_count);
+            languageTextView = (TextView) bookItemView.findViewById(R.id.book_language);
+            editionsTextView = (TextView) bookItemView.findViewById(R.id.book_editions);
+            bookItemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && mOnBookItemClickListener != null) {
+                mOnBookItemClickListener.onBookItemClick(mBookItems.get(position));
+            }
+        }
     }
 
+    /**
+     * Compares two lists of {@link BookItem}s: rows are the same volume if their ids match and
+     * need to be rebound if any of the shown fields changed.
+     */
+    private static class BookItemDiffCallback extends DiffUtil.Callback {
+        private final List<BookItem> mOldBookItems;
+        private final List<BookItem> mNewBookItems;
+
+        BookItemDiffCallback(List<BookItem> oldBookItems, List<BookItem> newBookItems) {
+            mOldBookItems = oldBookItems;
+            mNewBookItems = newBookItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldBookItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewBookItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            BookItem oldBookItem = mOldBookItems.get(oldItemPosition);
+            BookItem newBookItem = mNewBookItems.get(newItemPosition);
+            if (oldBookItem.getmId() == null || newBookItem.getmId() == null) {
+                return oldBookItem == newBookItem;
+            }
+            return oldBookItem.getmId().equals(newBookItem.getmId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            BookItem oldBookItem = mOldBookItems.get(oldItemPosition);
+            BookItem newBookItem = mNewBookItems.get(newItemPosition);
+            return TextUtils.equals(oldBookItem.getmSmallThumbnailURL(),
+                    newBookItem.getmSmallThumbnailURL())
+                    && TextUtils.equals(oldBookItem.getmTitle(), newBookItem.getmTitle())
+                    && TextUtils.equals(oldBookItem.getmAuthor(), newBookItem.getmAuthor())
+                    && TextUtils.equals(oldBookItem.getmPageCount(), newBookItem.getmPageCount())
+                    && TextUtils.equals(oldBookItem.getmLanguage(), newBookItem.getmLanguage())
+                    && oldBookItem.getmAlternates().size() == newBookItem.getmAlternates().size();
+        }
+    }
 }
@@ -2,8 +2,13 @@ package com.example.android.booklisting;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
 
 import java.util.ArrayList;
+import java.util.concurrent.Future;
 
 
 /**
@@ -15,35 +20,224 @@ public class BookItemLoader extends AsyncTaskLoader<ArrayList<BookItem>> {
     /** Tag for log messages */
     private static final String LOG_TAG = BookItemLoader.class.getName();
 
-    /** Query URL */
-    private String mUrl;
+    /** Query to load */
+    private BookQuery mQuery;
+
+    /** Signal of the load in progress, cancelled to abort it */
+    private CancellationSignal mCancellationSignal;
+
+    /**
+     * Whether the first load may show the result stored by the background refresh, null if it
+     * may not. The answer comes from the saved searches, which are read on another thread.
+     */
+    private Future<SavedSearches.SearchState> mServeStored;
+
+    /** Whether the result being delivered came from the store and has to be refreshed */
+    private boolean mRefreshAfterDelivery;
+
+    /** Whether the result being delivered only holds the pages of the query loaded so far */
+    private boolean mDeliveringPartialResult;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     /**
      * Constructs a new {@link BookItemLoader}.
      *
      * @param context of the activity
-     * @param url to load data from
+     * @param query to load data for
      */
-    public BookItemLoader(Context context, String url) {
+    public BookItemLoader(Context context, BookQuery query) {
+        this(context, query, null);
+    }
+
+    /**
+     * Constructs a new {@link BookItemLoader} which shows the result of a saved search from the
+     * local store first, if it has one, and then fetches the current one.
+     *
+     * @param context of the activity
+     * @param query to load data for
+     * @param serveStored whether the query is one of the {@link SavedSearches}, as returned by
+     *        {@link SavedSearches#recordSearch}, or null
+     */
+    public BookItemLoader(Context context, BookQuery query,
+                          Future<SavedSearches.SearchState> serveStored) {
         super(context);
-        mUrl = url;
+        mQuery = query;
+        mServeStored = SavedSearches.isStoredResultsEnabled() ? serveStored : null;
     }
 
     @Override
     protected void onStartLoading() {
+        // Deliver a cached result right away and only go to the network if it is stale
+        BookResultCache.Entry cacheEntry = mQuery != null ? BookResultCache.get(mQuery) : null;
+        if (cacheEntry != null) {
+            deliverResult(cacheEntry.getBookItems());
+            if (cacheEntry.isFresh()) {
+                return;
+            }
+        }
         forceLoad();
     }
 
+    @Override
+    public void deliverResult(ArrayList<BookItem> bookItems) {
+        super.deliverResult(bookItems);
+        // The stored result is on screen, now load the current one
+        if (mRefreshAfterDelivery) {
+            mRefreshAfterDelivery = false;
+            onContentChanged();
+        }
+    }
+
+    /**
+     * Returns true while a partial result is delivered: the pages of a fanned out query loaded so
+     * far, which the whole result replaces once every page has been loaded.
+     */
+    public boolean isDeliveringPartialResult() {
+        return mDeliveringPartialResult;
+    }
+
+    /**
+     * Deliver the rows of the pages loaded so far, on the main thread, unless the load they
+     * belong to was cancelled or nobody shows its results any more.
+     */
+    private void deliverPartialResult(ArrayList<BookItem> bookItems,
+                                      CancellationSignal cancellationSignal) {
+        if (cancellationSignal.isCanceled() || !isStarted() || isAbandoned() || isReset()) {
+            return;
+        }
+        mDeliveringPartialResult = true;
+        try {
+            deliverResult(bookItems);
+        } finally {
+            mDeliveringPartialResult = false;
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onAbandon() {
+        // Nobody will look at the result of an abandoned loader
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
     /**
      * This is on a background thread.
      */
     @Override
     public ArrayList<BookItem> loadInBackground() {
-        if (mUrl == null) {
+        if (mQuery == null) {
             return null;
         }
+        // A saved search refreshed in the background is shown from the disk without waiting for
+        // the network, unless the memory cache had a result to show already
+        if (mServeStored != null) {
+            boolean savedSearch = SavedSearches.getState(mServeStored).isSaved();
+            mServeStored = null;
+            ArrayList<BookItem> storedBookItems = savedSearch && BookResultCache.get(mQuery) == null
+                    ? QueryUtils.fetchStoredBookData(mQuery, SavedSearches.MAX_STORED_AGE_MILLIS)
+                    : null;
+            if (storedBookItems != null) {
+                mRefreshAfterDelivery = true;
+                return storedBookItems;
+            }
+        }
+
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            mCancellationSignal = new CancellationSignal();
+        }
+
         // Perform the network request, parse the response, and extract a list of earthquakes.
-        ArrayList<BookItem> bookItems = QueryUtils.fetchBookData(mUrl);
+        // Requests for more results than the API returns at once are fanned out over pages, which
+        // are shown as they arrive. A cancellation aborts the request with an
+        // OperationCanceledException, which makes the loader drop the result instead of
+        // delivering it.
+        ArrayList<BookItem> bookItems;
+        long startTime = System.nanoTime();
+        try {
+            bookItems = QueryUtils.fetchQuery(mQuery,
+                    new PartialResultListener(mQuery, mCancellationSignal), mCancellationSignal);
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+        PipelineMetrics.recordSince(PipelineMetrics.Stage.LOAD, mQuery.getPageSize(), startTime);
+
+        // Keep the result so the next start of a loader for the same query is instant
+        if (bookItems != null) {
+            BookResultCache.put(mQuery, bookItems);
+        }
         return bookItems;
     }
+
+    /**
+     * Hands the pages of a fanned out query to the UI as they arrive. Pages complete in any
+     * order, so a partial result holds the pages loaded without a gap before them, in API order,
+     * and the rows shown are only appended to while the other pages load. The last page comes
+     * with the whole result instead.
+     */
+    private final class PartialResultListener implements QueryUtils.OnPageLoadedListener {
+        private final int mStartIndex;
+        private final CancellationSignal mCancellationSignal;
+        private final ArrayList<BookItem>[] mPages;
+        private int mDeliveredPageCount;
+
+        @SuppressWarnings("unchecked")
+        PartialResultListener(BookQuery query, CancellationSignal cancellationSignal) {
+            mStartIndex = query.getStartIndex();
+            mCancellationSignal = cancellationSignal;
+            mPages = new ArrayList[(query.getPageSize() + QueryUtils.MAX_RESULTS_PER_REQUEST - 1)
+                    / QueryUtils.MAX_RESULTS_PER_REQUEST];
+        }
+
+        @Override
+        public synchronized void onPageLoaded(int startIndex, ArrayList<BookItem> bookItems) {
+            mPages[(startIndex - mStartIndex) / QueryUtils.MAX_RESULTS_PER_REQUEST] = bookItems;
+            int loadedPageCount = mDeliveredPageCount;
+            while (loadedPageCount < mPages.length && mPages[loadedPageCount] != null) {
+                loadedPageCount++;
+            }
+            if (loadedPageCount == mDeliveredPageCount || loadedPageCount == mPages.length) {
+                return;
+            }
+            mDeliveredPageCount = loadedPageCount;
+
+            // Merged like the whole result, so that rows don't change when it replaces them
+            EditionDeduplicator editions = new EditionDeduplicator();
+            for (int i = 0; i < loadedPageCount; i++) {
+                editions.addAll(mPages[i]);
+            }
+            final ArrayList<BookItem> bookItemsSoFar = editions.getRows();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliverPartialResult(bookItemsSoFar, mCancellationSignal);
+                }
+            });
+        }
+    }
 }
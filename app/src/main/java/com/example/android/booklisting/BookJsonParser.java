@@ -0,0 +1,266 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * {@link BookJsonParser} reads Google Books volume search responses with a pull parser. Each
+ * {@link BookItem} is created as soon as its "volumeInfo" object closes, and every subtree the
+ * app never reads (saleInfo, accessInfo, searchInfo, industryIdentifiers, ...) is skipped without
+ * being materialized. Apart from the framework's JsonReader it only uses plain Java classes, so
+ * that the benchmarks module can run it on a JVM.
+ */
+
+public final class BookJsonParser {
+
+    /** Keys of the response around the volumes */
+    private static final String KEY_ITEMS = "items";
+    private static final String KEY_ID = "id";
+    private static final String KEY_VOLUMEINFO = "volumeInfo";
+
+    /**
+     * The keys of a "volumeInfo" the parser reads. The parser dispatches on this table and the
+     * projections below are built from it, so a key can't be read without being asked for.
+     */
+    private enum VolumeField {
+        TITLE("title", true),
+        AUTHORS("authors", true),
+        // By far the largest of the keys, only shown once a row is opened
+        DESCRIPTION("description", false),
+        PAGE_COUNT("pageCount", true),
+        IMAGE_LINKS("imageLinks/smallThumbnail", true),
+        LANGUAGE("language", true),
+        PREVIEW_LINK("previewLink", true);
+
+        private static final HashMap<String, VolumeField> BY_KEY =
+                new HashMap<String, VolumeField>();
+
+        static {
+            for (VolumeField field : values()) {
+                BY_KEY.put(field.mKey, field);
+            }
+        }
+
+        /**
+         * Key inside "volumeInfo", the only key read inside its object if any, and the projection
+         * of both, e.g. "imageLinks/smallThumbnail"
+         */
+        private final String mKey;
+        private final String mSubKey;
+        private final String mProjection;
+
+        /** Whether the rows of the list show the field */
+        private final boolean mListed;
+
+        VolumeField(String projection, boolean listed) {
+            int slash = projection.indexOf('/');
+            mKey = slash < 0 ? projection : projection.substring(0, slash);
+            mSubKey = slash < 0 ? null : projection.substring(slash + 1);
+            mProjection = projection;
+            mListed = listed;
+        }
+
+        /** Returns the field of the given key, or null if the parser doesn't read it. */
+        static VolumeField forKey(String key) {
+            return BY_KEY.get(key);
+        }
+
+        /**
+         * Returns the projection of a volume holding every field, or only the listed ones.
+         */
+        static String volumeProjection(boolean listedOnly) {
+            StringBuilder projection = new StringBuilder(KEY_ID).append(',')
+                    .append(KEY_VOLUMEINFO).append('(');
+            boolean first = true;
+            for (VolumeField field : values()) {
+                if (listedOnly && !field.mListed) {
+                    continue;
+                }
+                if (!first) {
+                    projection.append(',');
+                }
+                first = false;
+                projection.append(field.mProjection);
+            }
+            return projection.append(')').toString();
+        }
+    }
+
+    /** Partial-response projection of a volume opened in the detail screen, every field */
+    public static final String VOLUME_FIELDS_PROJECTION = VolumeField.volumeProjection(false);
+
+    /** Partial-response projection of the search results shown in the list */
+    public static final String FIELDS_PROJECTION = KEY_ITEMS + "("
+            + VolumeField.volumeProjection(true) + ")";
+
+    /**
+     * Partial-response projection of search results with every field of a volume, description
+     * included.
+     */
+    public static final String FULL_FIELDS_PROJECTION = KEY_ITEMS + "("
+            + VOLUME_FIELDS_PROJECTION + ")";
+
+    /**
+     * Callback invoked by the streaming parser as soon as each {@link BookItem} has been read,
+     * before the rest of the response has arrived.
+     */
+    public interface OnBookItemParsedListener {
+        void onBookItemParsed(BookItem bookItem);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookJsonParser}
+     * object.
+     */
+    private BookJsonParser() {
+    }
+
+    /**
+     * Parse the response and add every book to editions. The listener, if any, is handed each
+     * book which became a new row as soon as it has been read. A cancelled cancellationSignal
+     * stops the parser at the next item.
+     *
+     * @throws android.util.MalformedJsonException or IllegalStateException if the response is
+     *         not well-formed, the books parsed until then stay in editions
+     * @throws android.os.OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public static void parse(InputStream inputStream, EditionDeduplicator editions,
+                             OnBookItemParsedListener listener,
+                             CancellationSignal cancellationSignal) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset
+                .forName("UTF-8")));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(KEY_ITEMS)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (cancellationSignal != null) {
+                        cancellationSignal.throwIfCanceled();
+                    }
+                    BookItem bookItem = readBook(reader);
+                    if (bookItem == null) {
+                        continue;
+                    }
+                    // Add the BookItem and hand it out right away if it is a new work
+                    if (editions.add(bookItem) && listener != null) {
+                        listener.onBookItemParsed(bookItem);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Parse a single volume resource, the response of the volumes/{id} endpoint, and return its
+     * {@link BookItem}, or null if it has no "volumeInfo".
+     *
+     * @throws android.util.MalformedJsonException or IllegalStateException if the response is
+     *         not well-formed
+     */
+    public static BookItem parseVolume(InputStream inputStream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset
+                .forName("UTF-8")));
+        return readBook(reader);
+    }
+
+    /**
+     * Read a single volume, e.g. an element of the "items" array and return its
+     * {@link BookItem}, or null if it has no "volumeInfo".
+     */
+    private static BookItem readBook(JsonReader reader) throws IOException {
+        String id = null;
+        BookItem bookItem = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(KEY_ID)) {
+                id = reader.nextString();
+            } else if (name.equals(KEY_VOLUMEINFO)) {
+                // The id comes before volumeInfo in the Google Books responses
+                bookItem = readVolumeInfo(reader, id);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return bookItem;
+    }
+
+    private static BookItem readVolumeInfo(JsonReader reader, String id) throws IOException {
+        // Variables for JSON parsing. Keys that don't exist keep their default value.
+        String title = null;
+        String author = null;
+        String description = null;
+        int pageCount = 0;
+        String smallThumbnail = null;
+        String language = null;
+        String previewLink = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            VolumeField field = VolumeField.forKey(reader.nextName());
+            if (field == null || reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case TITLE:
+                    title = reader.nextString();
+                    break;
+                case AUTHORS:
+                    // Only the first author is shown
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        author = reader.nextString();
+                    }
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    break;
+                case DESCRIPTION:
+                    description = reader.nextString();
+                    break;
+                case PAGE_COUNT:
+                    pageCount = reader.nextInt();
+                    break;
+                case IMAGE_LINKS:
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals(field.mSubKey)) {
+                            smallThumbnail = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case LANGUAGE:
+                    // Only a handful of language codes exist, share one String per code
+                    language = reader.nextString().intern();
+                    break;
+                case PREVIEW_LINK:
+                    previewLink = reader.nextString();
+                    break;
+                default:
+                    throw new AssertionError("No reader for " + field);
+            }
+        }
+        reader.endObject();
+
+        // Create the BookItem object
+        return new BookItem(id, smallThumbnail, previewLink, title, author, pageCount, language,
+                description);
+    }
+}
@@ -7,19 +7,28 @@ import android.content.Intent;
 import android.content.Loader;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.text.TextUtils;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.util.SparseArray;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Future;
 
 /**
  * The {@link BookListActivity} is called by the search button to show the list of books the
@@ -35,10 +44,30 @@ public class BookListActivity extends AppCompatActivity implements
     /** Adapter for the List */
     private BookItemAdapter bookAdapter;
 
+    /** Filters and sorts the loaded books for the list */
+    private BookFilterEngine mFilterEngine;
+
+    /** Filter and sort order chosen by the user */
+    private BookFilter mBookFilter = BookFilter.NONE;
+
+    /** Warms the rows ahead of the scroll position */
+    private ScrollPrefetcher mScrollPrefetcher;
+
     /**
-     * Constant value for the book loader ID.
+     * Constant values for the book loader IDs. The first page and the following pages use
+     * separate loaders so that loading a page never replaces the ones already shown.
      */
     private static final int BOOK_LOADER_ID = 1;
+    private static final int NEXT_PAGE_LOADER_ID = 2;
+
+    /** Loader ID for the local index search shown while the first page is loading */
+    private static final int LOCAL_LOADER_ID = 3;
+
+    /** Bundle key for the start index of the page to load */
+    private static final String ARG_START_INDEX = "startIndex";
+
+    /** The first page is kept small so that it is shown as soon as possible */
+    private static final int FIRST_PAGE_SIZE = 10;
 
     /** TextView that is displayed when the list is empty */
     private TextView mEmptyStateTextView;
@@ -53,12 +82,51 @@ public class BookListActivity extends AppCompatActivity implements
     /** String used to store number of results as per user's preference */
     private String maxResults;
 
-    /** Final Query */
-    private String finalQuery;
+    /** Query of the first page */
+    private BookQuery mFirstPageQuery;
+
+    /** Number of results of the first page and of every following page */
+    private int mFirstPageSize;
+    private int mPageSize;
+
+    /** Start index of the next page to load and of the page loading */
+    private int mNextStartIndex;
+    private int mLoadingStartIndex;
+
+    /** Whether the first page has been shown, a next page is loading, more pages exist */
+    private boolean mFirstPageLoaded;
+    private boolean mIsLoadingPage;
+    private boolean mHasMorePages = true;
 
-    /** Initial Query which will be combined with the user's input*/
-    private static final String API_INITIAL_QUERY = "https://www.googleapis" +
-            ".com/books/v1/volumes?q=";
+    /** Whether the list shows local hits the first page hasn't replaced yet */
+    private boolean mShowingLocalResults;
+
+    /** Whether there is no connection and every page is served from the local index */
+    private boolean mOffline;
+
+    /** Whether the search is a saved one, whose results the background refresh stores */
+    private Future<SavedSearches.SearchState> mSavedSearch;
+
+    /**
+     * Whether the search is pinned, null until the saved searches have been read or the user
+     * pinned or unpinned it
+     */
+    private Boolean mPinned;
+
+    /** When the search started, until its first row is shown */
+    private long mSearchStartTime;
+
+    /**
+     * Pages loaded so far, keyed by their start index. A page delivered again, e.g. the first
+     * page refreshed after a stale or stored one, replaces itself instead of being appended.
+     */
+    private SparseArray<ArrayList<BookItem>> mPages = new SparseArray<ArrayList<BookItem>>();
+
+    /**
+     * Books of the pages, one row per work, in order. Volumes returned again by a later page are
+     * dropped and other editions of a work already listed are added to its row.
+     */
+    private final EditionDeduplicator mEditions = new EditionDeduplicator();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,36 +139,131 @@ public class BookListActivity extends AppCompatActivity implements
         // Get the number of results as per user's preference
         maxResults = MainActivity.resultNumber;
 
-        // Call method to combine the user's input with the API's initial Query
-        finalQuery = returnFinalQuery(userTitleQuery, userAuthorQuery, maxResults);
+        // Results are loaded page by page, starting with a small first page
+        mPageSize = Integer.parseInt(maxResults);
+        mFirstPageSize = firstPageSize(mPageSize);
+
+        // Combine the user's input with the API's query parameters
+        mSearchStartTime = System.nanoTime();
+        mFirstPageQuery = firstPageQuery(userTitleQuery, userAuthorQuery, mPageSize);
+        Log.v(LOG_TAG, "Query: " + mFirstPageQuery.getUrl());
+        // A configuration change recreates the activity, it doesn't start another search
+        if (savedInstanceState == null) {
+            SpeculativeSearch.onSearchStarted(mFirstPageQuery);
+        }
 
-        // Find the {@link ListView} object in the layout
-        ListView listView = (ListView) findViewById(R.id.list);
+        // A search run before may have been refreshed in the background, this one will be. A
+        // configuration change recreates the activity for the same search, which is kept instead
+        // of being recorded again.
+        RetainedState retainedState = (RetainedState) getLastCustomNonConfigurationInstance();
+        if (savedInstanceState == null) {
+            mSavedSearch = SavedSearches.recordSearch(this, userTitleQuery, userAuthorQuery,
+                    mPageSize);
+        } else if (retainedState != null) {
+            mSavedSearch = retainedState.mSavedSearch;
+        }
+
+        // Find the {@link RecyclerView} object in the layout
+        RecyclerView recyclerView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setHasFixedSize(true);
 
         // Find the {@link EmptyView} object in the layout
         mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
 
-        // Create a new bookAdapter that takes the list of books as input
-        bookAdapter = new BookItemAdapter(this, new ArrayList<BookItem>());
+        // Create a new bookAdapter which opens the book that was clicked on
+        bookAdapter = new BookItemAdapter(new BookItemAdapter.OnBookItemClickListener() {
+            @Override
+            public void onBookItemClick(BookItem currentBookItem) {
+                // Show the book's details, which hold its description and a link to its preview
+                startActivity(BookDetailActivity.newIntent(BookListActivity.this,
+                        currentBookItem));
+            }
+        });
+        bookAdapter.setPageSize(mPageSize);
+
+        // Show the loaded books that pass the user's filter, filtered off the main thread
+        mFilterEngine = new BookFilterEngine(new BookFilterEngine.OnFilteredListener() {
+            @Override
+            public void onFiltered(ArrayList<BookItem> bookItems) {
+                bookAdapter.submitList(bookItems);
+                if (!bookItems.isEmpty()) {
+                    onFirstRowShown();
+                }
+                if (bookItems.isEmpty() && !mEditions.getRows().isEmpty()) {
+                    mEmptyStateTextView.setText(R.string.no_matches);
+                } else if (!bookItems.isEmpty()) {
+                    mEmptyStateTextView.setText("");
+                }
+            }
+        });
+
+        // Narrow the list down as the user types into the filter
+        EditText filterEditText = (EditText) findViewById(R.id.filter_EditText);
+        filterEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
 
-        // Make the {@link ListView} use the {@link BookItemAdapter} we created above, so that the
-        // {@link ListView} will display list items for each {@link BookItem} in the list.
-        listView.setAdapter(bookAdapter);
+            }
 
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                // Find the current book that was clicked on
-                BookItem currentBookItem = bookAdapter.getItem(position);
+            public void afterTextChanged(Editable s) {
+                mBookFilter = mBookFilter.toBuilder().setText(s.toString()).build();
+                applyFilter();
+            }
+        });
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri bookURL = Uri.parse(currentBookItem.getmPreviewURL());
+        // Make the {@link RecyclerView} use the {@link BookItemAdapter} we created above, so that
+        // the {@link RecyclerView} will display list items for each {@link BookItem} in the list.
+        recyclerView.setAdapter(bookAdapter);
+        mScrollPrefetcher = new ScrollPrefetcher(this, bookAdapter);
 
-                // Create new intent to view the book's URL
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, bookURL);
+        // Pages loaded before a configuration change are kept, the next page loader only holds
+        // the last one
+        if (retainedState != null) {
+            retainedState.restore(this);
+            rebuildRows();
+        }
+
+        // Prefetch the next page once the user scrolls to within a page of the end of the list.
+        // Thumbnails are only requested while the list isn't flinging.
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+                    ThumbnailLoader.pause(BookListActivity.this);
+                } else {
+                    ThumbnailLoader.resume(BookListActivity.this);
+                }
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    onListSettled(layoutManager);
+                }
+            }
 
-                // Start the intent
-                startActivity(websiteIntent);
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int firstVisibleItem = layoutManager.findFirstVisibleItemPosition();
+                if (firstVisibleItem == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                int visibleItemCount =
+                        layoutManager.findLastVisibleItemPosition() - firstVisibleItem + 1;
+                int totalItemCount = bookAdapter.getItemCount();
+                mScrollPrefetcher.onScroll(firstVisibleItem, visibleItemCount, totalItemCount);
+                // A layout without scrolling, e.g. after rows were added, leaves the list at rest
+                if (recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE) {
+                    onListSettled(layoutManager);
+                }
+                if (mFirstPageLoaded && totalItemCount > 0
+                        && firstVisibleItem + visibleItemCount >= totalItemCount - mPageSize) {
+                    loadNextPage();
+                }
             }
         });
 
@@ -120,98 +283,395 @@ public class BookListActivity extends AppCompatActivity implements
             // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
             // because this activity implements the LoaderCallbacks interface).
             loaderManager.initLoader(BOOK_LOADER_ID, null, this);
+
+            // Search the volumes fetched before, to show them until the first page arrives
+            loaderManager.initLoader(LOCAL_LOADER_ID, null, this);
         } else {
-            // Disable progressBar
-            View progressBar = findViewById(R.id.progress_bar);
-            progressBar.setVisibility(View.GONE);
+            // Without a connection, serve every page from the volumes fetched before
+            mOffline = true;
+            getLoaderManager().initLoader(BOOK_LOADER_ID, null, this);
+        }
 
-            // Display error
-            mEmptyStateTextView.setText(R.string.no_internet);
+        // Reconnect to the page which was loading when the configuration changed
+        if (mIsLoadingPage) {
+            Bundle args = new Bundle();
+            args.putInt(ARG_START_INDEX, mLoadingStartIndex);
+            getLoaderManager().initLoader(NEXT_PAGE_LOADER_ID, args, this);
         }
     }
 
-    public String returnFinalQuery(String titleInput, String authorInput, String maxResults) {
-        // Split title input to words since spaces are not allowed in the Query
-        String[] wordsTitle = titleInput.split("\\s+");
-        String wordsToTitleQuery = null;
-        for (int i = 0; i < wordsTitle.length; i++) {
-            if (i == 0) {
-                wordsToTitleQuery = wordsTitle[i];
-            } else {
-                wordsToTitleQuery = wordsToTitleQuery + "+" + wordsTitle[i];
-            }
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return new RetainedState(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        Log.v(LOG_TAG, ThumbnailLoader.getStats(this));
+        Log.v(LOG_TAG, "Editions collapsed: " + mEditions.getRowsSaved() + " rows, "
+                + mEditions.getThumbnailRequestsSaved() + " thumbnails");
+        Log.v(LOG_TAG, QueryUtils.getHttpStats());
+        Log.v(LOG_TAG, BookResponseCache.getInstance(this).getStats());
+        Log.v(LOG_TAG, BookDetails.getStats());
+        Log.v(LOG_TAG, SpeculativeSearch.getStats());
+        Log.v(LOG_TAG, PipelineMetrics.dump());
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        PipelineMetrics.dump(writer);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.book_list, menu);
+        // The metrics are a debugging aid, they aren't offered in release builds
+        menu.findItem(R.id.show_metrics).setVisible(BuildConfig.DEBUG);
+        menu.findItem(R.id.stored_results).setVisible(BuildConfig.DEBUG)
+                .setChecked(SavedSearches.isStoredResultsEnabled());
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // The saved searches have been read by the time the user opens the menu
+        menu.findItem(R.id.pin_search).setChecked(isPinned());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.show_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
+        if (item.getItemId() == R.id.pin_search) {
+            // Pinned searches are kept refreshed in the background
+            item.setChecked(!item.isChecked());
+            mPinned = item.isChecked();
+            SavedSearches.setPinned(this, userTitleQuery, userAuthorQuery, mPageSize, mPinned);
+            return true;
+        }
+        if (item.getItemId() == R.id.stored_results) {
+            // Off, the pinned searches wait for the network, the time to the first row to compare
+            // the stored results against
+            item.setChecked(!item.isChecked());
+            SavedSearches.setStoredResultsEnabled(item.isChecked());
+            return true;
         }
-        Log.v("BookListActivity", "Title: " + wordsToTitleQuery);
 
-        // If the author is not empty, add parameters as per API
-        if (TextUtils.isEmpty(wordsToTitleQuery)) {
-            wordsToTitleQuery = "";
-        } else {
-            wordsToTitleQuery = "intitle:" + wordsToTitleQuery;
+        BookFilter.Builder builder = mBookFilter.toBuilder();
+        switch (item.getItemId()) {
+            case R.id.sort_relevance:
+                builder.setSortOrder(BookFilter.SortOrder.RELEVANCE);
+                item.setChecked(true);
+                break;
+            case R.id.sort_title:
+                builder.setSortOrder(BookFilter.SortOrder.TITLE);
+                item.setChecked(true);
+                break;
+            case R.id.sort_page_count:
+                builder.setSortOrder(BookFilter.SortOrder.PAGE_COUNT);
+                item.setChecked(true);
+                break;
+            case R.id.filter_language:
+                // Toggle between the device's language and all languages
+                item.setChecked(!item.isChecked());
+                builder.setLanguage(item.isChecked() ? Locale.getDefault().getLanguage() : null);
+                break;
+            case R.id.filter_short_books:
+                item.setChecked(!item.isChecked());
+                if (item.isChecked()) {
+                    builder.setPageCountRange(BookFilter.SHORT_BOOK_MIN_PAGE_COUNT,
+                            BookFilter.SHORT_BOOK_MAX_PAGE_COUNT);
+                } else {
+                    builder.setPageCountRange(0, Integer.MAX_VALUE);
+                }
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
         }
+        mBookFilter = builder.build();
+        applyFilter();
+        return true;
+    }
+
+    /**
+     * Filter the loaded books with the user's filter and show the result once it is ready.
+     */
+    private void applyFilter() {
+        mFilterEngine.submit(mEditions.getRows(), mBookFilter);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mFilterEngine.cancel();
+        mScrollPrefetcher.cancel();
+    }
 
-        // Split author input to words since spaces are not allowed in the Query
-        String[] wordsAuthor = authorInput.split("\\s+");
-        String wordsToAuthorQuery = null;
-        for (int i = 0; i < wordsAuthor.length; i++) {
-            if (i == 0) {
-                wordsToAuthorQuery = wordsAuthor[i];
-            } else {
-                wordsToAuthorQuery = wordsToAuthorQuery + "+" + wordsAuthor[i];
+    /**
+     * Record how long the search took to show its first row, the pinned searches apart since
+     * the background refresh is meant to make those instant.
+     */
+    private void onFirstRowShown() {
+        if (mSearchStartTime == 0) {
+            return;
+        }
+        final long firstRowMicros = (System.nanoTime() - mSearchStartTime) / 1000;
+        final int pageSize = mFirstPageSize;
+        mSearchStartTime = 0;
+        PipelineMetrics.record(PipelineMetrics.Stage.FIRST_ROW, pageSize, firstRowMicros);
+        if (mPinned != null || mSavedSearch == null || mSavedSearch.isDone()) {
+            if (isPinned()) {
+                PipelineMetrics.record(PipelineMetrics.Stage.PINNED_FIRST_ROW, pageSize,
+                        firstRowMicros);
             }
+            return;
         }
-        // If the author is not empty, add parameters as per API
-        if (TextUtils.isEmpty(wordsToAuthorQuery)) {
-            wordsToAuthorQuery = "";
-        } else if (TextUtils.isEmpty(wordsToTitleQuery)) {
-            wordsToAuthorQuery = "inauthor:" + wordsToAuthorQuery;
-        } else {
-            wordsToAuthorQuery = "&inauthor:" + wordsToAuthorQuery;
+        // A row from memory may come before the saved searches have been read, wait for them
+        // off the main thread
+        final Future<SavedSearches.SearchState> savedSearch = mSavedSearch;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (SavedSearches.getState(savedSearch).isPinned()) {
+                    PipelineMetrics.record(PipelineMetrics.Stage.PINNED_FIRST_ROW, pageSize,
+                            firstRowMicros);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns true if the search is pinned, false as long as the saved searches haven't been read.
+     */
+    private boolean isPinned() {
+        if (mPinned == null && mSavedSearch != null && mSavedSearch.isDone()) {
+            mPinned = SavedSearches.getState(mSavedSearch).isPinned();
         }
-        Log.v("BookListActivity", "Author: " + wordsToAuthorQuery);
+        return mPinned != null && mPinned;
+    }
+
+    /**
+     * Prefetch the details of the rows visible now that the list is at rest.
+     */
+    private void onListSettled(LinearLayoutManager layoutManager) {
+        int firstVisibleItem = layoutManager.findFirstVisibleItemPosition();
+        if (firstVisibleItem != RecyclerView.NO_POSITION) {
+            mScrollPrefetcher.onSettled(firstVisibleItem,
+                    layoutManager.findLastVisibleItemPosition());
+        }
+    }
+
+    /**
+     * Start loading the page after the last one requested, unless one is already loading.
+     */
+    private void loadNextPage() {
+        if (mIsLoadingPage || !mHasMorePages) {
+            return;
+        }
+        mIsLoadingPage = true;
+        mLoadingStartIndex = mNextStartIndex;
+        Bundle args = new Bundle();
+        args.putInt(ARG_START_INDEX, mLoadingStartIndex);
+        getLoaderManager().restartLoader(NEXT_PAGE_LOADER_ID, args, this);
+    }
+
+    /**
+     * Returns the size of the first page when pages hold pageSize results.
+     */
+    public static int firstPageSize(int pageSize) {
+        return Math.min(FIRST_PAGE_SIZE, pageSize);
+    }
+
+    /**
+     * Returns the query for the first page of the user's input.
+     */
+    public static BookQuery firstPageQuery(String titleInput, String authorInput, int pageSize) {
+        return new BookQuery.Builder()
+                .setBaseUrl(QueryUtils.getBaseUrl())
+                .setTitle(titleInput)
+                .setAuthor(authorInput)
+                .setPageSize(firstPageSize(pageSize))
+                .setFields(QueryUtils.getFieldsProjection())
+                .build();
+    }
 
-        finalQuery = API_INITIAL_QUERY + wordsToTitleQuery + wordsToAuthorQuery + "&maxResults=" + maxResults;
-        Log.v("BookListActivity", "Query: " + finalQuery);
-        return finalQuery;
+    /**
+     * Returns the query for the page of pageSize results starting at the given index.
+     */
+    public static BookQuery nextPageQuery(BookQuery firstPageQuery, int pageSize,
+                                          int startIndex) {
+        return firstPageQuery.toBuilder()
+                .setPageSize(pageSize)
+                .setStartIndex(startIndex)
+                .build();
     }
 
     @Override
     public Loader<ArrayList<BookItem>> onCreateLoader(int id, Bundle args) {
-        // Create new loader for the given URL
-        return new BookItemLoader(this, finalQuery);
+        if (id == NEXT_PAGE_LOADER_ID) {
+            // Create new loader for the page starting at the given index
+            BookQuery pageQuery = nextPageQuery(mFirstPageQuery, mPageSize,
+                    args.getInt(ARG_START_INDEX));
+            return mOffline ? new LocalBookItemLoader(this, pageQuery)
+                    : new BookItemLoader(this, pageQuery, mSavedSearch);
+        }
+        if (id == LOCAL_LOADER_ID || mOffline) {
+            // Create new loader searching the local index for the given query
+            return new LocalBookItemLoader(this, mFirstPageQuery);
+        }
+        // Create new loader for the given query, from the local store first if it is saved
+        return new BookItemLoader(this, mFirstPageQuery, mSavedSearch);
     }
 
     @Override
     public void onLoadFinished(Loader<ArrayList<BookItem>> loader, ArrayList<BookItem> bookItems) {
-        // Clear the adapter of previous earthquake data
-        bookAdapter.clear();
         if (QueryUtils.errorMessage != null) {
             Toast.makeText(MainActivity.mContext, QueryUtils.errorMessage, Toast.LENGTH_SHORT).show();
             QueryUtils.errorMessage = null;
         }
 
-        // If there is a valid list of {@link BookItem}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if (bookItems != null && !bookItems.isEmpty()) {
-            bookAdapter.addAll(bookItems);
+        // Local hits are only shown until the first page arrives
+        if (loader.getId() == LOCAL_LOADER_ID) {
+            if (!mFirstPageLoaded && bookItems != null && !bookItems.isEmpty()) {
+                mShowingLocalResults = true;
+                appendBookItems(bookItems);
+                progressBar = (ProgressBar) findViewById(R.id.progress_bar);
+                progressBar.setVisibility(View.GONE);
+            }
+            return;
+        }
+
+        // The first page replaces the local hits, also when it is loaded again after it failed.
+        // If it failed, they stay as the best there is.
+        int startIndex = loader.getId() == NEXT_PAGE_LOADER_ID ? mLoadingStartIndex : 0;
+        if (startIndex == 0 && mShowingLocalResults && bookItems != null) {
+            mShowingLocalResults = false;
+            mEditions.clear();
+            applyFilter();
+        }
+
+        // Work out where the next page starts. A loader can deliver the same page again, e.g.
+        // when the activity is restarted, so only the first delivery moves the index forward.
+        // Only an empty page ends the results, a page which failed to load (null) is requested
+        // again on the next scroll. A partial result of a fanned out page only shows the rows
+        // loaded so far, the page is still loading.
+        boolean partial = loader instanceof BookItemLoader
+                && ((BookItemLoader) loader).isDeliveringPartialResult();
+        if (loader.getId() == NEXT_PAGE_LOADER_ID) {
+            if (mIsLoadingPage && !partial) {
+                mIsLoadingPage = false;
+                if (bookItems != null) {
+                    mNextStartIndex = startIndex + mPageSize;
+                    mHasMorePages = !bookItems.isEmpty();
+                }
+            }
+        } else if (!mFirstPageLoaded && !partial) {
+            mFirstPageLoaded = true;
+            mNextStartIndex = bookItems != null ? mFirstPageSize : 0;
+            mHasMorePages = bookItems == null || !bookItems.isEmpty();
+        }
 
-            // Hide loading indicator because the data has been loaded
-            progressBar = (ProgressBar) findViewById(R.id.progress_bar);
-            progressBar.setVisibility(View.GONE);
+        // If there is a valid list of {@link BookItem}s, then show it as the page it belongs to
+        if (bookItems != null) {
+            putPage(startIndex, bookItems);
+        }
 
+        // Hide loading indicator because the data has been loaded
+        progressBar = (ProgressBar) findViewById(R.id.progress_bar);
+        progressBar.setVisibility(View.GONE);
+
+        if (mEditions.getRows().isEmpty()) {
+            // Set empty state text to display "No internet connection" or "No books found!"
+            mEmptyStateTextView.setText(mOffline ? R.string.no_internet : R.string.no_books);
+        }
+    }
+
+    /**
+     * Store the page under its start index and show it. A page after all the others is only
+     * appended, any other page replaces its earlier delivery and the rows are built again.
+     */
+    private void putPage(int startIndex, ArrayList<BookItem> bookItems) {
+        boolean isLastPage = mPages.size() == 0
+                || startIndex > mPages.keyAt(mPages.size() - 1);
+        mPages.put(startIndex, bookItems);
+        if (isLastPage) {
+            appendBookItems(bookItems);
         } else {
-            // Hide loading indicator because the data has been loaded
-            progressBar = (ProgressBar) findViewById(R.id.progress_bar);
-            progressBar.setVisibility(View.GONE);
+            rebuildRows();
+        }
+    }
 
-            // Set empty state text to display "No books found!"
-            mEmptyStateTextView.setText(R.string.no_books);
+    /**
+     * Build the rows again from the pages, in the order of their start index.
+     */
+    private void rebuildRows() {
+        mEditions.clear();
+        for (int i = 0; i < mPages.size(); i++) {
+            mEditions.addAll(mPages.valueAt(i));
+        }
+        applyFilter();
+    }
+
+    /**
+     * Add the books not shown yet to the list and hand it to the adapter, which only binds the
+     * rows that were added or gained an edition.
+     */
+    private void appendBookItems(ArrayList<BookItem> bookItems) {
+        if (mEditions.addAll(bookItems)) {
+            applyFilter();
         }
     }
 
     @Override
     public void onLoaderReset(Loader<ArrayList<BookItem>> loader) {
-        // Loader reset, so we can clear out our existing data.
-        bookAdapter.clear();
+        // Loader reset, so we can clear out our existing data. A page loader is reset every time
+        // the next page is requested, while its results stay in the list.
+        if (loader.getId() == BOOK_LOADER_ID) {
+            bookAdapter.clear();
+            mPages.clear();
+            mEditions.clear();
+            applyFilter();
+        }
+    }
+
+    /**
+     * The pages, where paging stands and whether the search is a saved one, kept across a
+     * configuration change.
+     */
+    private static final class RetainedState {
+        private final Future<SavedSearches.SearchState> mSavedSearch;
+        private final Boolean mPinned;
+        private final SparseArray<ArrayList<BookItem>> mPages;
+        private final int mNextStartIndex;
+        private final int mLoadingStartIndex;
+        private final boolean mFirstPageLoaded;
+        private final boolean mIsLoadingPage;
+        private final boolean mHasMorePages;
+
+        RetainedState(BookListActivity activity) {
+            mSavedSearch = activity.mSavedSearch;
+            mPinned = activity.mPinned;
+            mPages = activity.mPages;
+            mNextStartIndex = activity.mNextStartIndex;
+            mLoadingStartIndex = activity.mLoadingStartIndex;
+            mFirstPageLoaded = activity.mFirstPageLoaded;
+            mIsLoadingPage = activity.mIsLoadingPage;
+            mHasMorePages = activity.mHasMorePages;
+        }
+
+        void restore(BookListActivity activity) {
+            activity.mPinned = mPinned;
+            activity.mPages = mPages;
+            activity.mNextStartIndex = mNextStartIndex;
+            activity.mLoadingStartIndex = mLoadingStartIndex;
+            activity.mFirstPageLoaded = mFirstPageLoaded;
+            activity.mIsLoadingPage = mIsLoadingPage;
+            activity.mHasMorePages = mHasMorePages;
+        }
     }
 }
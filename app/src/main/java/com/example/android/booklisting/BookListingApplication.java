@@ -0,0 +1,22 @@
+package com.example.android.booklisting;
+
+import android.app.Application;
+
+/**
+ * {@link BookListingApplication} sets up what the whole process shares before any activity or
+ * service runs, e.g. when the {@link SearchRefreshJobService} starts the process on its own.
+ */
+
+public class BookListingApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // The keep-alive pool reads its settings once, before the first request of the process
+        UrlConnectionTransport.configureKeepAlive(
+                UrlConnectionTransport.DEFAULT_MAX_IDLE_CONNECTIONS);
+        // Set up here rather than by QueryUtils itself, so that it runs on a plain JVM as well
+        QueryUtils.setBaseUrl(BuildConfig.BOOKS_API_BASE_URL);
+        QueryUtils.setContext(this);
+    }
+}
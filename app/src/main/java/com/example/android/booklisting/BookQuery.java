@@ -0,0 +1,273 @@
+package com.example.android.booklisting;
+
+/**
+ * {@link BookQuery} is an immutable Google Books search: title and author terms plus the page to
+ * load. Terms are canonicalized (lower case, single spaces, no leading or trailing whitespace) so
+ * that queries which mean the same thing produce the same URL and the same key, whatever the case
+ * or spacing of the user's input. The URL is percent-encoded and built together with the
+ * canonical terms in a single pass over the input.
+ * This class has no Android dependencies so that it can be used and measured on a plain JVM.
+ */
+
+public final class BookQuery {
+
+    /** Google Books volumes endpoint */
+    public static final String DEFAULT_BASE_URL = "https://www.googleapis.com/books/v1/volumes";
+
+    /** Default number of results per page */
+    public static final int DEFAULT_PAGE_SIZE = 10;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** FNV-1a 64 bit constants used for the key */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Canonical title and author terms, empty if not searched for */
+    private final String mTitle;
+    private final String mAuthor;
+
+    /** Page to load */
+    private final int mPageSize;
+    private final int mStartIndex;
+
+    /** Endpoint and optional partial-response projection */
+    private final String mBaseUrl;
+    private final String mFields;
+
+    /** Encoded URL and its 64 bit hash */
+    private final String mUrl;
+    private final long mHash;
+
+    private BookQuery(Builder builder) {
+        mPageSize = builder.mPageSize;
+        mStartIndex = builder.mStartIndex;
+        mBaseUrl = builder.mBaseUrl;
+        mFields = builder.mFields;
+
+        StringBuilder url = new StringBuilder(mBaseUrl.length() + 64
+                + builder.mTitle.length() + builder.mAuthor.length()
+                + (mFields != null ? mFields.length() * 2 : 0));
+        url.append(mBaseUrl).append("?q=");
+
+        // Canonicalize the terms and encode them into the URL at the same time
+        StringBuilder canonical = new StringBuilder(builder.mTitle.length()
+                + builder.mAuthor.length());
+        appendTerms("intitle:", builder.mTitle, canonical, url);
+        int titleLength = canonical.length();
+        appendTerms("inauthor:", builder.mAuthor, canonical, url);
+        mTitle = canonical.substring(0, titleLength);
+        mAuthor = canonical.substring(titleLength);
+
+        url.append("&maxResults=").append(mPageSize).append("&startIndex=").append(mStartIndex);
+        if (mFields != null) {
+            url.append("&fields=");
+            appendEncoded(mFields, url);
+        }
+        mUrl = url.toString();
+
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < url.length(); i++) {
+            hash = (hash ^ url.charAt(i)) * FNV_PRIME;
+        }
+        mHash = hash;
+    }
+
+    /**
+     * Append the canonical form of input to canonical and its encoded form, preceded by the
+     * prefix, to url. Nothing is appended if input only holds whitespace.
+     */
+    private static void appendTerms(String prefix, String input, StringBuilder canonical,
+                                    StringBuilder url) {
+        int start = canonical.length();
+        boolean pendingSpace = false;
+        for (int i = 0; i < input.length(); ) {
+            int codePoint = input.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint)) {
+                pendingSpace = canonical.length() > start;
+                continue;
+            }
+            if (canonical.length() == start) {
+                // First character of the terms, separate them from the previous ones
+                if (url.charAt(url.length() - 1) != '=') {
+                    url.append('+');
+                }
+                url.append(prefix);
+            } else if (pendingSpace) {
+                canonical.append(' ');
+                url.append('+');
+            }
+            pendingSpace = false;
+            codePoint = Character.toLowerCase(codePoint);
+            canonical.appendCodePoint(codePoint);
+            appendEncoded(codePoint, url);
+        }
+    }
+
+    private static void appendEncoded(String value, StringBuilder url) {
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            appendEncoded(codePoint, url);
+        }
+    }
+
+    /**
+     * Append a code point to the URL, percent-encoding its UTF-8 bytes unless it is unreserved.
+     */
+    private static void appendEncoded(int codePoint, StringBuilder url) {
+        if ((codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z')
+                || (codePoint >= '0' && codePoint <= '9') || codePoint == '-' || codePoint == '_'
+                || codePoint == '.' || codePoint == '~') {
+            url.append((char) codePoint);
+        } else if (codePoint < 0x80) {
+            appendPercent(codePoint, url);
+        } else if (codePoint < 0x800) {
+            appendPercent(0xc0 | (codePoint >> 6), url);
+            appendPercent(0x80 | (codePoint & 0x3f), url);
+        } else if (codePoint < 0x10000) {
+            appendPercent(0xe0 | (codePoint >> 12), url);
+            appendPercent(0x80 | ((codePoint >> 6) & 0x3f), url);
+            appendPercent(0x80 | (codePoint & 0x3f), url);
+        } else {
+            appendPercent(0xf0 | (codePoint >> 18), url);
+            appendPercent(0x80 | ((codePoint >> 12) & 0x3f), url);
+            appendPercent(0x80 | ((codePoint >> 6) & 0x3f), url);
+            appendPercent(0x80 | (codePoint & 0x3f), url);
+        }
+    }
+
+    private static void appendPercent(int b, StringBuilder url) {
+        url.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getAuthor() {
+        return mAuthor;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getStartIndex() {
+        return mStartIndex;
+    }
+
+    public String getFields() {
+        return mFields;
+    }
+
+    /** Returns true if neither a title nor an author is searched for. */
+    public boolean isEmpty() {
+        return mTitle.isEmpty() && mAuthor.isEmpty();
+    }
+
+    /** Returns the encoded request URL. */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * Returns a short key identifying the query, equal for all queries with the same canonical
+     * terms, page and projection.
+     */
+    public String getKey() {
+        return Long.toHexString(mHash);
+    }
+
+    /**
+     * Returns a builder initialized with this query, e.g. to request another page.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof BookQuery && mHash == ((BookQuery) other).mHash
+                && mUrl.equals(((BookQuery) other).mUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mHash ^ (mHash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return mUrl;
+    }
+
+    /**
+     * Builder for {@link BookQuery} objects.
+     */
+    public static final class Builder {
+        private String mTitle = "";
+        private String mAuthor = "";
+        private int mPageSize = DEFAULT_PAGE_SIZE;
+        private int mStartIndex;
+        private String mBaseUrl = DEFAULT_BASE_URL;
+        private String mFields;
+
+        public Builder() {
+        }
+
+        private Builder(BookQuery query) {
+            mTitle = query.mTitle;
+            mAuthor = query.mAuthor;
+            mPageSize = query.mPageSize;
+            mStartIndex = query.mStartIndex;
+            mBaseUrl = query.mBaseUrl;
+            mFields = query.mFields;
+        }
+
+        public Builder setTitle(String title) {
+            mTitle = title != null ? title : "";
+            return this;
+        }
+
+        public Builder setAuthor(String author) {
+            mAuthor = author != null ? author : "";
+            return this;
+        }
+
+        public Builder setPageSize(int pageSize) {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+            }
+            mPageSize = pageSize;
+            return this;
+        }
+
+        public Builder setStartIndex(int startIndex) {
+            if (startIndex < 0) {
+                throw new IllegalArgumentException("Start index must not be negative: "
+                        + startIndex);
+            }
+            mStartIndex = startIndex;
+            return this;
+        }
+
+        public Builder setBaseUrl(String baseUrl) {
+            mBaseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * Set the partial-response projection, or null to download the full resources.
+         */
+        public Builder setFields(String fields) {
+            mFields = fields;
+            return this;
+        }
+
+        public BookQuery build() {
+            return new BookQuery(this);
+        }
+    }
+}
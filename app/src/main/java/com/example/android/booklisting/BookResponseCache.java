@@ -0,0 +1,419 @@
+package com.example.android.booklisting;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link BookResponseCache} is an on-disk cache of Google Books responses, keyed by the normalized
+ * request URL. Entries younger than the time to live are served without touching the network,
+ * older ones are revalidated with If-None-Match / If-Modified-Since so that a 304 reuses the
+ * stored body. The cache is kept under a byte-size cap by evicting the least recently used entries.
+ */
+
+public class BookResponseCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = BookResponseCache.class.getSimpleName();
+
+    /** Name of the cache directory inside the app's cache dir */
+    private static final String CACHE_DIRECTORY = "book_responses";
+
+    /** File extensions of the response body and its metadata */
+    private static final String BODY_EXTENSION = ".body";
+    private static final String META_EXTENSION = ".meta";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /** Keys of the metadata file */
+    private static final String META_ETAG = "ETag";
+    private static final String META_LAST_MODIFIED = "Last-Modified";
+    private static final String META_STORED_AT = "storedAt";
+
+    /** Default time to live of an entry: 10 minutes */
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    /** Default maximum size of the cache: 4 MB */
+    public static final long DEFAULT_MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private static BookResponseCache sInstance;
+
+    /** Directory holding the cached responses */
+    private final File mDirectory;
+
+    /** Time to live of an entry before it has to be revalidated */
+    private volatile long mTtlMillis = DEFAULT_TTL_MILLIS;
+
+    /** Maximum number of bytes kept on disk */
+    private volatile long mMaxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+
+    /** Counters used to tune the cache */
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private final AtomicInteger mRevalidateCount = new AtomicInteger();
+
+    private BookResponseCache(File directory) {
+        mDirectory = directory;
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Error creating cache directory " + mDirectory);
+        }
+    }
+
+    /**
+     * Returns the process-wide cache, stored in the cache directory of the given context.
+     */
+    public static synchronized BookResponseCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BookResponseCache(new File(context.getCacheDir(), CACHE_DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    public void setTimeToLive(long ttlMillis) {
+        mTtlMillis = ttlMillis;
+    }
+
+    public void setMaxSize(long maxSizeBytes) {
+        mMaxSizeBytes = maxSizeBytes;
+        trimToSize();
+    }
+
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    public int getRevalidateCount() {
+        return mRevalidateCount.get();
+    }
+
+    /**
+     * Returns the number of responses served fresh from the cache, fetched from the network and
+     * revalidated with a 304, and the share of requests which didn't download a body.
+     */
+    public String getStats() {
+        int hits = getHitCount();
+        int misses = getMissCount();
+        int revalidates = getRevalidateCount();
+        int requests = hits + misses + revalidates;
+        return "Response cache hits: " + hits + ", misses: " + misses + ", revalidated: "
+                + revalidates + ", served without a body download: "
+                + (requests == 0 ? 0 : 100 * (hits + revalidates) / requests) + "%";
+    }
+
+    void recordHit() {
+        mHitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        mMissCount.incrementAndGet();
+    }
+
+    void recordRevalidate() {
+        mRevalidateCount.incrementAndGet();
+    }
+
+    /**
+     * Normalize the URL so that requests which only differ in the case of the scheme and host or
+     * in the order of the query parameters share the same entry.
+     */
+    public static String normalizeUrl(String url) {
+        int queryStart = url.indexOf('?');
+        String base = queryStart < 0 ? url : url.substring(0, queryStart);
+        int hostEnd = base.indexOf('/', base.indexOf("://") + 3);
+        if (hostEnd < 0) {
+            base = base.toLowerCase();
+        } else {
+            base = base.substring(0, hostEnd).toLowerCase() + base.substring(hostEnd);
+        }
+        if (queryStart < 0) {
+            return base;
+        }
+        String[] parameters = url.substring(queryStart + 1).split("&");
+        Arrays.sort(parameters);
+        StringBuilder normalized = new StringBuilder(url.length());
+        normalized.append(base);
+        for (int i = 0; i < parameters.length; i++) {
+            normalized.append(i == 0 ? '?' : '&').append(parameters[i]);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Returns the stored entry for the given URL, or null if there is none.
+     */
+    public synchronized Entry get(String url) {
+        String key = keyFor(url);
+        File body = new File(mDirectory, key + BODY_EXTENSION);
+        File meta = new File(mDirectory, key + META_EXTENSION);
+        if (!body.exists() || !meta.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream metaStream = null;
+        try {
+            metaStream = new FileInputStream(meta);
+            properties.load(metaStream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading cache metadata", e);
+            return null;
+        } finally {
+            closeQuietly(metaStream);
+        }
+        // Mark the entry as recently used
+        body.setLastModified(System.currentTimeMillis());
+
+        long storedAt;
+        try {
+            storedAt = Long.parseLong(properties.getProperty(META_STORED_AT, "0"));
+        } catch (NumberFormatException e) {
+            // A damaged entry can't be revalidated or aged, drop it and fetch the response again
+            Log.e(LOG_TAG, "Error reading cache metadata", e);
+            body.delete();
+            meta.delete();
+            return null;
+        }
+        return new Entry(key, body, properties.getProperty(META_ETAG),
+                properties.getProperty(META_LAST_MODIFIED), storedAt);
+    }
+
+    /**
+     * Returns a stream which reads the given response body and copies it into the cache.
+     * The entry is only stored once {@link CachingInputStream#commit()} has been called.
+     */
+    public CachingInputStream put(String url, InputStream body, String eTag, String lastModified)
+            throws IOException {
+        return new CachingInputStream(keyFor(url), body, eTag, lastModified);
+    }
+
+    /**
+     * Reset the age of an entry after the server confirmed with a 304 that it is still valid.
+     * The validators sent with the 304 replace the stored ones, a missing one keeps its value.
+     */
+    public synchronized void markRevalidated(Entry entry, String eTag, String lastModified) {
+        if (eTag != null) {
+            entry.mETag = eTag;
+        }
+        if (lastModified != null) {
+            entry.mLastModified = lastModified;
+        }
+        writeMeta(entry.mKey, entry.mETag, entry.mLastModified);
+        entry.mStoredAt = System.currentTimeMillis();
+    }
+
+    private synchronized void commit(String key, File temp, String eTag, String lastModified) {
+        File body = new File(mDirectory, key + BODY_EXTENSION);
+        if (!temp.renameTo(body)) {
+            Log.e(LOG_TAG, "Error storing cache entry " + key);
+            temp.delete();
+            return;
+        }
+        writeMeta(key, eTag, lastModified);
+        trimToSize();
+    }
+
+    private void writeMeta(String key, String eTag, String lastModified) {
+        Properties properties = new Properties();
+        if (eTag != null) {
+            properties.setProperty(META_ETAG, eTag);
+        }
+        if (lastModified != null) {
+            properties.setProperty(META_LAST_MODIFIED, lastModified);
+        }
+        properties.setProperty(META_STORED_AT, String.valueOf(System.currentTimeMillis()));
+        OutputStream metaStream = null;
+        try {
+            metaStream = new FileOutputStream(new File(mDirectory, key + META_EXTENSION));
+            properties.store(metaStream, null);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing cache metadata", e);
+        } finally {
+            closeQuietly(metaStream);
+        }
+    }
+
+    /**
+     * Evict the least recently used entries until the bodies fit in the maximum size.
+     */
+    private synchronized void trimToSize() {
+        File[] bodies = mDirectory.listFiles();
+        if (bodies == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : bodies) {
+            if (file.getName().endsWith(BODY_EXTENSION)) {
+                size += file.length();
+            }
+        }
+        if (size <= mMaxSizeBytes) {
+            return;
+        }
+        Arrays.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long difference = first.lastModified() - second.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < bodies.length && size > mMaxSizeBytes; i++) {
+            String name = bodies[i].getName();
+            if (!name.endsWith(BODY_EXTENSION)) {
+                continue;
+            }
+            size -= bodies[i].length();
+            String key = name.substring(0, name.length() - BODY_EXTENSION.length());
+            bodies[i].delete();
+            new File(mDirectory, key + META_EXTENSION).delete();
+        }
+    }
+
+    private static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(normalizeUrl(url).getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing cache file", e);
+            }
+        }
+    }
+
+    /**
+     * A cached response: its body on disk and the validators sent by the server.
+     */
+    public class Entry {
+        private final String mKey;
+        private final File mBody;
+        private String mETag;
+        private String mLastModified;
+        private long mStoredAt;
+
+        private Entry(String key, File body, String eTag, String lastModified, long storedAt) {
+            mKey = key;
+            mBody = body;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mStoredAt = storedAt;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /** Returns how long ago the entry was stored or last revalidated. */
+        public long getAgeMillis() {
+            return System.currentTimeMillis() - mStoredAt;
+        }
+
+        /** Returns true if the entry can be served without asking the server. */
+        public boolean isFresh() {
+            return System.currentTimeMillis() - mStoredAt < mTtlMillis;
+        }
+
+        public InputStream openBody() throws IOException {
+            return new FileInputStream(mBody);
+        }
+    }
+
+    /**
+     * Stream which copies everything read from the network into a temporary file, which becomes
+     * the cache entry once the whole body has been read.
+     */
+    public class CachingInputStream extends FilterInputStream {
+        private final String mKey;
+        private final String mETag;
+        private final String mLastModified;
+        private final File mTemp;
+        private OutputStream mOutput;
+        private boolean mCommitted;
+
+        private CachingInputStream(String key, InputStream in, String eTag, String lastModified)
+                throws IOException {
+            super(in);
+            mKey = key;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mTemp = new File(mDirectory, key + TEMP_EXTENSION + Thread.currentThread().getId());
+            mOutput = new FileOutputStream(mTemp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && mOutput != null) {
+                mOutput.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0 && mOutput != null) {
+                mOutput.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        /**
+         * Read whatever the parser left unread and store the body in the cache.
+         */
+        public void commit() throws IOException {
+            byte[] buffer = new byte[1024];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Drain the trailing bytes so that the stored body is complete
+            }
+            mOutput.close();
+            mOutput = null;
+            BookResponseCache.this.commit(mKey, mTemp, mETag, mLastModified);
+            mCommitted = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            // Anything not committed is an incomplete body and is thrown away
+            if (!mCommitted) {
+                closeQuietly(mOutput);
+                mOutput = null;
+                mTemp.delete();
+            }
+        }
+    }
+}
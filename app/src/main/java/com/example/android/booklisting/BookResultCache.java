@@ -0,0 +1,106 @@
+package com.example.android.booklisting;
+
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BookResultCache} is a process-wide, in-memory cache of parsed search results, keyed by
+ * the {@link BookQuery} key. It lets {@link BookItemLoader} show the last result of a query
+ * instantly, e.g. after a rotation, while a stale result is refreshed in the background.
+ * The cache is bounded by the approximate number of bytes retained by the cached lists.
+ */
+
+public final class BookResultCache {
+
+    /** Results younger than this are shown without being refreshed */
+    public static final long FRESHNESS_WINDOW_MILLIS = 60 * 1000;
+
+    /** Use 1/16th of the available heap for cached results */
+    private static final int MAX_SIZE_BYTES = (int) (Runtime.getRuntime().maxMemory() / 16);
+
+    /** Approximate overhead of an object header plus a reference to it */
+    private static final int OBJECT_OVERHEAD_BYTES = 16;
+
+    private static final LruCache<String, Entry> sCache = new LruCache<String, Entry>(
+            MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Entry entry) {
+            return entry.mSizeBytes;
+        }
+    };
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BookResultCache}
+     * object.
+     */
+    private BookResultCache() {
+    }
+
+    /**
+     * Returns the cached result of the given query, or null if there is none.
+     */
+    public static Entry get(BookQuery query) {
+        return sCache.get(query.getKey());
+    }
+
+    /**
+     * Cache the result of the given query.
+     */
+    public static void put(BookQuery query, ArrayList<BookItem> bookItems) {
+        sCache.put(query.getKey(), new Entry(bookItems));
+    }
+
+    /**
+     * Estimate how many bytes the list and its {@link BookItem}s keep alive, the editions each
+     * of them stands for included.
+     */
+    static int estimateSize(List<BookItem> bookItems) {
+        int size = OBJECT_OVERHEAD_BYTES * (1 + bookItems.size());
+        for (BookItem bookItem : bookItems) {
+            size += OBJECT_OVERHEAD_BYTES * 8;
+            size += sizeOf(bookItem.getmId());
+            size += sizeOf(bookItem.getmSmallThumbnailURL());
+            size += sizeOf(bookItem.getmPreviewURL());
+            size += sizeOf(bookItem.getmTitle());
+            size += sizeOf(bookItem.getmAuthor());
+            size += sizeOf(bookItem.getmLanguage());
+            size += sizeOf(bookItem.getmDescription());
+            if (!bookItem.getmAlternates().isEmpty()) {
+                size += estimateSize(bookItem.getmAlternates());
+            }
+        }
+        return size;
+    }
+
+    private static int sizeOf(String string) {
+        // String object, its char array and two bytes per char
+        return string == null ? 0 : 2 * OBJECT_OVERHEAD_BYTES + 2 * string.length();
+    }
+
+    /**
+     * A cached result and the time it was loaded.
+     */
+    public static class Entry {
+        private final ArrayList<BookItem> mBookItems;
+        private final long mLoadedAt;
+        private final int mSizeBytes;
+
+        private Entry(ArrayList<BookItem> bookItems) {
+            mBookItems = bookItems;
+            mLoadedAt = SystemClock.elapsedRealtime();
+            mSizeBytes = estimateSize(bookItems);
+        }
+
+        public ArrayList<BookItem> getBookItems() {
+            return mBookItems;
+        }
+
+        /** Returns true if the result doesn't need to be refreshed. */
+        public boolean isFresh() {
+            return SystemClock.elapsedRealtime() - mLoadedAt < FRESHNESS_WINDOW_MILLIS;
+        }
+    }
+}
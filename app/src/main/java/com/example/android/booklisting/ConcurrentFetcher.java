@@ -0,0 +1,151 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ConcurrentFetcher} fetches the pages of a result set at the same time, on a thread pool
+ * shared by every caller. A caller asking for less parallelism only gets that many threads of
+ * the pool, and callers beyond the size of the pool queue instead of starting their own threads.
+ * Its only framework class is CancellationSignal, so that it can be used and measured on a plain
+ * JVM with android-all.
+ */
+
+public final class ConcurrentFetcher {
+
+    /** Number of threads of the shared pool, the most pages fetched at the same time */
+    public static final int MAX_PARALLELISM = 4;
+
+    /** Idle threads of the pools are let go after this long */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /** Runs the fetches of every caller */
+    private static final ExecutorService sExecutor = newBoundedExecutor("page-fetch",
+            MAX_PARALLELISM);
+
+    /**
+     * Fetches a single page.
+     */
+    public interface PageFetcher {
+        /**
+         * Returns the books of the index-th page, or null if it couldn't be fetched.
+         *
+         * @throws android.os.OperationCanceledException if the cancellationSignal is cancelled
+         */
+        ArrayList<BookItem> fetchPage(int index, CancellationSignal cancellationSignal);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link ConcurrentFetcher} object.
+     */
+    private ConcurrentFetcher() {
+    }
+
+    /**
+     * Returns a pool of at most threadCount threads, which queues the tasks beyond that and lets
+     * its threads go when they are idle. Its threads are daemons so that they never keep a JVM
+     * tool from exiting.
+     */
+    static ExecutorService newBoundedExecutor(final String name, int threadCount) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mThreadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                name + "-" + mThreadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Fetch pageCount pages, at most parallelism at the same time, and return them in order. A
+     * page which couldn't be fetched is null. Cancelling the cancellationSignal cancels the
+     * pages in flight and the ones not started yet.
+     *
+     * @throws ExecutionException if fetching a page failed, the other pages are cancelled
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public static List<ArrayList<BookItem>> fetch(int pageCount, int parallelism,
+                                                  final PageFetcher fetcher,
+                                                  CancellationSignal cancellationSignal)
+            throws ExecutionException, InterruptedException {
+        // A CancellationSignal only has one listener, so every page gets its own signal which is
+        // cancelled together with the caller's one
+        final ArrayList<CancellationSignal> pageCancellationSignals =
+                new ArrayList<CancellationSignal>(pageCount);
+        final ArrayList<FutureTask<ArrayList<BookItem>>> pages =
+                new ArrayList<FutureTask<ArrayList<BookItem>>>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            final int index = i;
+            final CancellationSignal pageCancellationSignal = new CancellationSignal();
+            pageCancellationSignals.add(pageCancellationSignal);
+            pages.add(new FutureTask<ArrayList<BookItem>>(new Callable<ArrayList<BookItem>>() {
+                @Override
+                public ArrayList<BookItem> call() {
+                    return fetcher.fetchPage(index, pageCancellationSignal);
+                }
+            }));
+        }
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    for (CancellationSignal pageCancellationSignal : pageCancellationSignals) {
+                        pageCancellationSignal.cancel();
+                    }
+                }
+            });
+        }
+
+        // Rather than one task per page, a few workers take the pages in order, which bounds
+        // this caller's share of the pool to its parallelism
+        final AtomicInteger nextPage = new AtomicInteger();
+        int workerCount = Math.min(Math.min(parallelism, MAX_PARALLELISM), pageCount);
+        for (int i = 0; i < workerCount; i++) {
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int index;
+                    while ((index = nextPage.getAndIncrement()) < pages.size()) {
+                        pages.get(index).run();
+                    }
+                }
+            });
+        }
+
+        try {
+            List<ArrayList<BookItem>> results = new ArrayList<ArrayList<BookItem>>(pageCount);
+            for (FutureTask<ArrayList<BookItem>> page : pages) {
+                results.add(page.get());
+            }
+            return results;
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+            // Stop the pages still running or waiting after a failure
+            for (FutureTask<ArrayList<BookItem>> page : pages) {
+                page.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.android.booklisting;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link CountingInputStream} counts the bytes read through it, e.g. the bytes received on the
+ * wire before a response body is decoded, and the time spent blocked waiting for them.
+ */
+
+public class CountingInputStream extends FilterInputStream {
+
+    /** Number of bytes read so far */
+    private volatile long mCount;
+
+    /** Time spent inside the reads so far */
+    private volatile long mReadNanos;
+
+    public CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getReadNanos() {
+        return mReadNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long startTime = System.nanoTime();
+        int b = super.read();
+        mReadNanos += System.nanoTime() - startTime;
+        if (b != -1) {
+            mCount++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        long startTime = System.nanoTime();
+        int read = super.read(buffer, offset, count);
+        mReadNanos += System.nanoTime() - startTime;
+        if (read > 0) {
+            mCount += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = super.skip(count);
+        mCount += skipped;
+        return skipped;
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.android.booklisting;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link EditionDeduplicator} collapses the editions of a work into a single row as books stream
+ * in. Books are grouped by a fingerprint of their normalized title and primary author; the first
+ * book of a group becomes the row and the following ones are added to its alternates. Volumes
+ * already seen, as a row or as an alternate, are dropped. Every book costs one fingerprint and a
+ * couple of hash lookups, however many books came before it. The alternates of a row are
+ * collected in a list of its own and only copied into the row when the rows are read, so a work
+ * with k editions costs O(k) rather than a copy of its alternates per edition.
+ */
+
+public final class EditionDeduplicator {
+
+    /** Title words which don't tell editions apart */
+    private static final String[] LEADING_ARTICLES = {"the ", "a ", "an "};
+
+    /**
+     * Words of a subtitle or of a part in brackets which only name an edition, besides years and
+     * ordinals. A part with any other word, e.g. "Book 2" or "Volume 1", tells works apart.
+     */
+    private static final HashSet<String> EDITION_WORDS = new HashSet<String>(Arrays.asList(
+            "edition", "ed", "revised", "anniversary", "updated", "expanded", "abridged",
+            "unabridged", "illustrated", "annotated", "reprint", "new", "novel", "a", "an", "and",
+            "the", "first", "second", "third", "fourth", "fifth", "sixth", "seventh", "eighth",
+            "ninth", "tenth"));
+
+    /** Rows in the order their first book was added */
+    private final ArrayList<BookItem> mRows = new ArrayList<BookItem>();
+
+    /**
+     * Alternates of each row which got any, all of them, as the row will show them once they
+     * are copied into it. Null for the rows without any.
+     */
+    private final ArrayList<ArrayList<BookItem>> mAlternates = new ArrayList<ArrayList<BookItem>>();
+
+    /** Rows whose alternates changed since the rows were last read */
+    private final BitSet mChangedRows = new BitSet();
+
+    /** Row of each fingerprint and of each volume id added */
+    private final HashMap<String, Integer> mRowByFingerprint = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> mRowByVolumeId = new HashMap<String, Integer>();
+
+    /**
+     * Add a book. Returns true if it became a new row, false if it was an edition of a row or a
+     * volume added before.
+     */
+    public boolean add(BookItem bookItem) {
+        String volumeId = bookItem.getmId();
+        if (volumeId != null && mRowByVolumeId.containsKey(volumeId)) {
+            return false;
+        }
+        String fingerprint = fingerprint(bookItem);
+        Integer row = fingerprint != null ? mRowByFingerprint.get(fingerprint) : null;
+        if (row == null) {
+            row = mRows.size();
+            mRows.add(bookItem);
+            mAlternates.add(null);
+            if (fingerprint != null) {
+                mRowByFingerprint.put(fingerprint, row);
+            }
+            putVolumeIds(bookItem, row);
+            return true;
+        }
+
+        // Another edition of a row, which keeps its place and links to this one and to the
+        // editions this one stands for
+        ArrayList<BookItem> alternates = mAlternates.get(row);
+        if (alternates == null) {
+            alternates = new ArrayList<BookItem>(mRows.get(row).getmAlternates());
+            mAlternates.set(row, alternates);
+        }
+        mChangedRows.set(row);
+        alternates.add(bookItem.getmAlternates().isEmpty() ? bookItem
+                : bookItem.withAlternates(Collections.<BookItem>emptyList()));
+        alternates.addAll(bookItem.getmAlternates());
+        putVolumeIds(bookItem, row);
+        return false;
+    }
+
+    private void putVolumeIds(BookItem bookItem, Integer row) {
+        if (bookItem.getmId() != null) {
+            mRowByVolumeId.put(bookItem.getmId(), row);
+        }
+        for (BookItem alternate : bookItem.getmAlternates()) {
+            if (alternate.getmId() != null) {
+                mRowByVolumeId.put(alternate.getmId(), row);
+            }
+        }
+    }
+
+    /**
+     * Add all the given books. Returns true if any row was added or changed.
+     */
+    public boolean addAll(List<BookItem> bookItems) {
+        boolean changed = false;
+        for (BookItem bookItem : bookItems) {
+            // A volume seen before changes nothing, any other book adds or extends a row
+            String volumeId = bookItem.getmId();
+            if (volumeId != null && mRowByVolumeId.containsKey(volumeId)) {
+                continue;
+            }
+            add(bookItem);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the rows, one per work. The list is updated as books are added; a row which got
+     * alternates since the last call is replaced by a copy holding them.
+     */
+    public ArrayList<BookItem> getRows() {
+        for (int row = mChangedRows.nextSetBit(0); row >= 0;
+                row = mChangedRows.nextSetBit(row + 1)) {
+            mRows.set(row, mRows.get(row).withAlternates(mAlternates.get(row)));
+        }
+        mChangedRows.clear();
+        return mRows;
+    }
+
+    /**
+     * Remove all rows.
+     */
+    public void clear() {
+        mRows.clear();
+        mAlternates.clear();
+        mChangedRows.clear();
+        mRowByFingerprint.clear();
+        mRowByVolumeId.clear();
+    }
+
+    /**
+     * Returns the number of books collapsed into the rows, whether here or by the deduplicator
+     * of the page they came from, rather than shown as rows of their own.
+     */
+    public int getRowsSaved() {
+        int rowsSaved = 0;
+        for (BookItem row : getRows()) {
+            rowsSaved += row.getmAlternates().size();
+        }
+        return rowsSaved;
+    }
+
+    /** Returns the number of thumbnails of collapsed books which no row will request. */
+    public int getThumbnailRequestsSaved() {
+        int thumbnailRequestsSaved = 0;
+        for (BookItem row : getRows()) {
+            for (BookItem alternate : row.getmAlternates()) {
+                if (alternate.getmSmallThumbnailURL() != null) {
+                    thumbnailRequestsSaved++;
+                }
+            }
+        }
+        return thumbnailRequestsSaved;
+    }
+
+    /**
+     * Returns the fingerprint shared by the editions of the book's work, or null if the book has
+     * no title to group it by. The title loses the subtitle and the parts in brackets which only
+     * name an edition, e.g. ": A Novel" or "(2nd ed., 1999)", its accents, punctuation and leading
+     * article, while series and volume numbers stay; the author is reduced to their first initial
+     * and last name, so that "J. K. Rowling" and "Joanne K. Rowling" are the same person.
+     */
+    static String fingerprint(BookItem bookItem) {
+        String title = bookItem.getmTitle();
+        if (title == null) {
+            return null;
+        }
+        StringBuilder fingerprint = new StringBuilder(title.length() + 16);
+        appendWords(mainTitle(title), fingerprint);
+        if (fingerprint.length() == 0) {
+            return null;
+        }
+        for (String article : LEADING_ARTICLES) {
+            if (fingerprint.length() > article.length()
+                    && fingerprint.indexOf(article) == 0) {
+                fingerprint.delete(0, article.length());
+                break;
+            }
+        }
+
+        fingerprint.append('|');
+        String author = bookItem.getmAuthor();
+        if (author != null) {
+            int start = fingerprint.length();
+            appendWords(author, fingerprint);
+            int lastSpace = fingerprint.lastIndexOf(" ");
+            if (lastSpace > start) {
+                // Keep the first initial and the last name
+                fingerprint.delete(start + 1, lastSpace);
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Returns the title without a subtitle and without parts in brackets which only name an
+     * edition.
+     */
+    private static String mainTitle(String title) {
+        int end = title.length();
+        int colon = title.indexOf(':');
+        if (colon > 0 && isEditionNote(title.substring(colon + 1))) {
+            end = colon;
+        }
+        StringBuilder mainTitle = new StringBuilder(end);
+        int i = 0;
+        while (i < end) {
+            char c = title.charAt(i);
+            if (c != '(' && c != '[') {
+                mainTitle.append(c);
+                i++;
+                continue;
+            }
+            int close = closingBracket(title, i, end);
+            String note = title.substring(i + 1, close);
+            if (!isEditionNote(note)) {
+                mainTitle.append(' ').append(note).append(' ');
+            }
+            i = close + 1;
+        }
+        return mainTitle.toString();
+    }
+
+    /**
+     * Returns the index of the bracket closing the one at the given index, or end if it isn't
+     * closed before.
+     */
+    private static int closingBracket(String title, int open, int end) {
+        int depth = 0;
+        for (int i = open; i < end; i++) {
+            char c = title.charAt(i);
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if ((c == ')' || c == ']') && --depth == 0) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns true if every word of the note is an edition word, a year or an ordinal, e.g.
+     * "Revised" or "40th Anniversary Edition".
+     */
+    private static boolean isEditionNote(String note) {
+        StringBuilder words = new StringBuilder(note.length());
+        appendWords(note, words);
+        if (words.length() == 0) {
+            return true;
+        }
+        for (String word : words.toString().split(" ")) {
+            if (!EDITION_WORDS.contains(word) && !isYearOrOrdinal(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true for a year such as "1999" or an ordinal such as "2nd".
+     */
+    private static boolean isYearOrOrdinal(String word) {
+        int digits = 0;
+        while (digits < word.length() && Character.isDigit(word.charAt(digits))) {
+            digits++;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        String suffix = word.substring(digits);
+        if (suffix.isEmpty()) {
+            return digits == 4 && (word.charAt(0) == '1' || word.charAt(0) == '2');
+        }
+        return suffix.equals("st") || suffix.equals("nd") || suffix.equals("rd")
+                || suffix.equals("th");
+    }
+
+    /**
+     * Append the lower case words of the input, without accents or punctuation, separated by
+     * single spaces.
+     */
+    private static void appendWords(String input, StringBuilder output) {
+        String decomposed = Normalizer.normalize(input, Normalizer.Form.NFD)
+                .toLowerCase(Locale.ROOT);
+        int start = output.length();
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && output.length() > start) {
+                    output.append(' ');
+                }
+                pendingSpace = false;
+                output.append(c);
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK && c != '\'') {
+                // Accents are dropped, apostrophes are part of the word
+                pendingSpace = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.booklisting;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link Histogram} counts non-negative values in log-linear buckets: every power of two is split
+ * into 8 buckets, so that a percentile is never off by more than 12.5% whatever the magnitude.
+ * Recording only increments atomic counters and never locks or allocates, so it can be called
+ * from any thread, including the main thread while binding rows.
+ * This class has no Android dependencies so that it can be used and measured on a plain JVM.
+ */
+
+public final class Histogram {
+
+    /** Every power of two is split into 2^SUB_BUCKET_BITS buckets */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Enough buckets for any positive long */
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Record a value, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        mCounts.incrementAndGet(bucketOf(value));
+        mSum.addAndGet(value);
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Forget every recorded value. Values recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Returns a copy of the counts which percentiles can be computed from.
+     */
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, mSum.get(), mMax.get());
+    }
+
+    /**
+     * Returns the bucket of a non-negative value. Values below SUB_BUCKET_COUNT have a bucket
+     * each, the others are bucketed by their highest bit and the SUB_BUCKET_BITS below it.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return ((highestBit - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * Returns the smallest value of the given bucket.
+     */
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int highestBit = (bucket >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket & (SUB_BUCKET_COUNT - 1);
+        return (SUB_BUCKET_COUNT + subBucket) << (highestBit - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * An immutable copy of a {@link Histogram}.
+     */
+    public static final class Snapshot {
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mSum;
+        private final long mMax;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            mCounts = counts;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getSum() {
+            return mSum;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        /** Returns the mean of the values, or 0 if there are none. */
+        public long getMean() {
+            return mCount > 0 ? mSum / mCount : 0;
+        }
+
+        /**
+         * Returns the value the given fraction of the recorded values stayed under, e.g. 0.99 for
+         * the 99th percentile, or 0 if there are none. The value is the highest one of its
+         * bucket, but never more than the largest value recorded.
+         */
+        public long getPercentile(double fraction) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return i + 1 < mCounts.length ? Math.min(mMax, lowestValueOf(i + 1) - 1)
+                            : mMax;
+                }
+            }
+            return mMax;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.booklisting;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * {@link HttpResponse} is the result of an {@link HttpTransport} request. Besides the status,
+ * headers and decoded body it carries how long it took to connect and to receive the first byte,
+ * so that connection reuse can be measured.
+ */
+
+public class HttpResponse implements Closeable {
+
+    /** HTTP status code */
+    private final int mResponseCode;
+
+    /** Response headers, looked up case-insensitively */
+    private final Map<String, String> mHeaders;
+
+    /** Decoded response body */
+    private final InputStream mBody;
+
+    /** Time spent connecting, close to 0 for a pooled connection */
+    private final long mConnectMillis;
+
+    /** Time from the start of the request to the first byte of the response */
+    private final long mTimeToFirstByteMillis;
+
+    /** Counts the body bytes as received on the wire, before decoding */
+    private final CountingInputStream mWireBody;
+
+    /**
+     * Create a new {@link HttpResponse} object.
+     * @param responseCode is the HTTP status code
+     * @param headers are the response headers, in a case-insensitive map
+     * @param body is the decoded response body, or null if there is none
+     * @param connectMillis is the time spent connecting
+     * @param timeToFirstByteMillis is the time until the first byte was received
+     * @param wireBody counts the encoded body bytes, or null if the transport can't count them
+     */
+    public HttpResponse(int responseCode, Map<String, String> headers, InputStream body,
+                        long connectMillis, long timeToFirstByteMillis,
+                        CountingInputStream wireBody) {
+        mResponseCode = responseCode;
+        mHeaders = headers;
+        mBody = body;
+        mConnectMillis = connectMillis;
+        mTimeToFirstByteMillis = timeToFirstByteMillis;
+        mWireBody = wireBody;
+    }
+
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    public String getHeader(String name) {
+        return mHeaders.get(name);
+    }
+
+    public InputStream getBody() {
+        return mBody;
+    }
+
+    public long getConnectMillis() {
+        return mConnectMillis;
+    }
+
+    public long getTimeToFirstByteMillis() {
+        return mTimeToFirstByteMillis;
+    }
+
+    /**
+     * Returns the number of body bytes received on the wire so far, or -1 if unknown.
+     */
+    public long getBytesReceived() {
+        return mWireBody != null ? mWireBody.getCount() : -1;
+    }
+
+    /**
+     * Returns the time spent waiting for body bytes on the wire so far, or -1 if unknown.
+     */
+    public long getReadNanos() {
+        return mWireBody != null ? mWireBody.getReadNanos() : -1;
+    }
+
+    /**
+     * Abort the request from another thread, unblocking a pending read of the body. The default
+     * implementation closes the body, transports that can drop the connection should do so.
+     */
+    public void abort() {
+        try {
+            close();
+        } catch (IOException e) {
+            // The request is being abandoned, there is nothing left to do with the error
+        }
+    }
+
+    /**
+     * Close the body. Depending on the transport this returns the connection to its pool.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mBody != null) {
+            mBody.close();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * {@link HttpTransport} is the HTTP layer used by {@link QueryUtils}. Implementations decide how
+ * connections are opened, pooled and encoded; {@link QueryUtils} only sees the
+ * {@link HttpResponse}.
+ */
+
+public interface HttpTransport {
+
+    /**
+     * Perform a GET request.
+     *
+     * @param url is the URL to request
+     * @param requestHeaders are extra headers to send, e.g. for conditional requests
+     * @param cancellationSignal aborts the request when it is cancelled, or null. The transport
+     *        only holds its cancel listener until get returns, the caller can then set its own
+     *        to abort the body with {@link HttpResponse#abort()}.
+     * @return the response, whose body must be closed by the caller
+     * @throws android.os.OperationCanceledException if the cancellationSignal is cancelled
+     */
+    HttpResponse get(String url, Map<String, String> requestHeaders,
+                     CancellationSignal cancellationSignal) throws IOException;
+}
@@ -0,0 +1,190 @@
+package com.example.android.booklisting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link IncrementalBookFilter} applies {@link BookFilter}s to the loaded results one after the
+ * other. It refines incrementally: when the new filter only narrows the previous one, e.g.
+ * because a character was added to the filter text, only the books that passed the previous
+ * filter and the ones loaded since are checked, and their order is kept instead of sorting them
+ * again. It isn't thread safe, {@link BookFilterEngine} only uses it on its filter thread.
+ * This class has no Android dependencies so that it can be used and measured on a plain JVM.
+ */
+
+public final class IncrementalBookFilter {
+
+    /** State of the last run */
+    private final ArrayList<BookItem> mSource = new ArrayList<BookItem>();
+    private String[] mLowerTitles = new String[0];
+    private String[] mLowerAuthors = new String[0];
+    private int[] mPageCounts = new int[0];
+    private int[] mTitleRanks = new int[0];
+    private int mTitleRankedSize;
+    private BookFilter mLastFilter;
+    private int mLastSourceSize;
+    private int[] mLastMatches = new int[0];
+    private int mLastMatchCount;
+
+    /** Whether a narrower filter only checks the previous matches, off to measure without it */
+    private boolean mIncrementalEnabled = true;
+
+    public void setIncrementalEnabled(boolean enabled) {
+        mIncrementalEnabled = enabled;
+    }
+
+    /**
+     * Returns the books of source passing the filter, in the filter's sort order.
+     */
+    public ArrayList<BookItem> filter(List<BookItem> source, BookFilter filter) {
+        // Work out whether the previous books are still there, with the new ones appended
+        boolean appended = source.size() >= mSource.size();
+        for (int i = 0; appended && i < mSource.size(); i++) {
+            appended = source.get(i) == mSource.get(i);
+        }
+        if (!appended) {
+            mSource.clear();
+            mLastFilter = null;
+            mLastSourceSize = 0;
+            mTitleRankedSize = 0;
+        }
+        int oldSize = mSource.size();
+        for (int i = oldSize; i < source.size(); i++) {
+            mSource.add(source.get(i));
+        }
+        prepareLowerCase(oldSize);
+
+        boolean incremental = mIncrementalEnabled && mLastFilter != null
+                && filter.isRefinementOf(mLastFilter);
+        boolean keepOrder = incremental && filter.getSortOrder() == mLastFilter.getSortOrder();
+        int size = mSource.size();
+        int[] matches = new int[size];
+        int matchCount = 0;
+
+        if (incremental) {
+            // Only the books that passed the previous filter can pass a narrower one
+            for (int i = 0; i < mLastMatchCount; i++) {
+                int index = mLastMatches[i];
+                if (filter.matches(mSource.get(index), mLowerTitles[index],
+                        mLowerAuthors[index])) {
+                    matches[matchCount++] = index;
+                }
+            }
+        }
+        int oldMatchCount = matchCount;
+        // A cleared filter, e.g. once the filter text was deleted, needn't look at the books
+        boolean matchesAll = filter.matchesAll();
+        for (int index = incremental ? mLastSourceSize : 0; index < size; index++) {
+            if (matchesAll || filter.matches(mSource.get(index), mLowerTitles[index],
+                    mLowerAuthors[index])) {
+                matches[matchCount++] = index;
+            }
+        }
+
+        // The refined previous matches keep their order and scanning finds books in API order, so
+        // only a changed sort order or books matching out of order need a sort
+        boolean relevance = filter.getSortOrder() == BookFilter.SortOrder.RELEVANCE;
+        boolean sorted = keepOrder ? relevance || matchCount == oldMatchCount
+                : !incremental && relevance;
+        if (!sorted) {
+            sort(matches, matchCount, filter.getSortOrder());
+        }
+
+        mLastFilter = filter;
+        mLastSourceSize = size;
+        mLastMatches = matches;
+        mLastMatchCount = matchCount;
+
+        ArrayList<BookItem> filtered = new ArrayList<BookItem>(matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            filtered.add(mSource.get(matches[i]));
+        }
+        return filtered;
+    }
+
+    /**
+     * Copy the lower case titles and authors and the page counts of the books from the given
+     * index on into arrays, once per book.
+     */
+    private void prepareLowerCase(int fromIndex) {
+        int size = mSource.size();
+        if (mLowerTitles.length < size) {
+            int capacity = Math.max(size, mLowerTitles.length * 2);
+            mLowerTitles = Arrays.copyOf(mLowerTitles, capacity);
+            mLowerAuthors = Arrays.copyOf(mLowerAuthors, capacity);
+            mPageCounts = Arrays.copyOf(mPageCounts, capacity);
+        }
+        for (int i = fromIndex; i < size; i++) {
+            BookItem bookItem = mSource.get(i);
+            mLowerTitles[i] = bookItem.getmTitle() != null
+                    ? bookItem.getmTitle().toLowerCase(Locale.ROOT) : null;
+            mLowerAuthors[i] = bookItem.getmAuthor() != null
+                    ? bookItem.getmAuthor().toLowerCase(Locale.ROOT) : null;
+            mPageCounts[i] = bookItem.getPageCountValue();
+        }
+    }
+
+    /**
+     * Sort indexes[0, count) in the given order, keeping the API order between equal books.
+     * Every index is packed with its sort key into a long, so that a primitive sort can be used.
+     */
+    private void sort(int[] indexes, int count, BookFilter.SortOrder sortOrder) {
+        if (sortOrder == BookFilter.SortOrder.TITLE) {
+            prepareTitleRanks();
+        }
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            int key;
+            if (sortOrder == BookFilter.SortOrder.TITLE) {
+                key = mTitleRanks[index];
+            } else if (sortOrder == BookFilter.SortOrder.PAGE_COUNT) {
+                key = mPageCounts[index];
+            } else {
+                key = 0;
+            }
+            keys[i] = ((long) key << 32) | index;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < count; i++) {
+            indexes[i] = (int) keys[i];
+        }
+    }
+
+    /**
+     * Rank every book by title, so that sorting by title only compares ints. The ranks are
+     * computed once per set of books rather than for every filter.
+     */
+    private void prepareTitleRanks() {
+        int size = mSource.size();
+        if (mTitleRankedSize == size) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                String firstTitle = mLowerTitles[first];
+                String secondTitle = mLowerTitles[second];
+                if (firstTitle == null || secondTitle == null) {
+                    // Books without a title go last
+                    return firstTitle == null ? (secondTitle == null ? 0 : 1) : -1;
+                }
+                return firstTitle.compareTo(secondTitle);
+            }
+        });
+        if (mTitleRanks.length < size) {
+            mTitleRanks = new int[mLowerTitles.length];
+        }
+        for (int rank = 0; rank < size; rank++) {
+            mTitleRanks[order[rank]] = rank;
+        }
+        mTitleRankedSize = size;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.android.booklisting;
+
+import java.util.Arrays;
+
+/**
+ * {@link LatencyTracker} keeps the latencies of the most recent requests in a ring buffer and
+ * answers percentile queries over them, so that timeouts and hedging delays follow how fast the
+ * server currently answers rather than fixed guesses.
+ * This class has no Android dependencies so that it can be used and measured on a plain JVM.
+ */
+
+public final class LatencyTracker {
+
+    /** Number of latencies kept */
+    private final long[] mSamples;
+
+    /** Number of latencies recorded, of which the last mSamples.length are kept */
+    private long mCount;
+
+    public LatencyTracker(int windowSize) {
+        mSamples = new long[windowSize];
+    }
+
+    /**
+     * Record the latency of a request.
+     */
+    public synchronized void record(long latencyMillis) {
+        mSamples[(int) (mCount % mSamples.length)] = latencyMillis;
+        mCount++;
+    }
+
+    /** Returns the number of latencies in the window. */
+    public synchronized int getSampleCount() {
+        return (int) Math.min(mCount, mSamples.length);
+    }
+
+    /**
+     * Returns the latency the given fraction of the requests in the window stayed under, e.g.
+     * 0.95 for the 95th percentile, or -1 if nothing has been recorded.
+     */
+    public synchronized long getPercentile(double fraction) {
+        int sampleCount = getSampleCount();
+        if (sampleCount == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, sampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * sampleCount) - 1;
+        return sorted[Math.max(0, Math.min(sampleCount - 1, index))];
+    }
+}
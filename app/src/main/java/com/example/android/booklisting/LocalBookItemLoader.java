@@ -0,0 +1,81 @@
+package com.example.android.booklisting;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import java.util.ArrayList;
+
+/**
+ * Loads a list of BookItems from the local {@link BookIndex}, without touching the network.
+ */
+
+public class LocalBookItemLoader extends AsyncTaskLoader<ArrayList<BookItem>> {
+
+    /** Query to search the index for */
+    private BookQuery mQuery;
+
+    /** Signal of the search in progress, cancelled to abort it */
+    private CancellationSignal mCancellationSignal;
+
+    /**
+     * Constructs a new {@link LocalBookItemLoader}.
+     *
+     * @param context of the activity
+     * @param query to search the index for
+     */
+    public LocalBookItemLoader(Context context, BookQuery query) {
+        super(context);
+        mQuery = query;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public ArrayList<BookItem> loadInBackground() {
+        if (mQuery == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            mCancellationSignal = new CancellationSignal();
+        }
+        try {
+            return BookIndex.getInstance(getContext()).search(mQuery, mCancellationSignal);
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+    }
+}
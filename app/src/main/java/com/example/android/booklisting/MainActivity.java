@@ -41,6 +41,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     /** String containing number of results */
     public static String resultNumber;
 
+    /** Runs the query while the user is still typing */
+    private SpeculativeSearch mSpeculativeSearch = new SpeculativeSearch();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -99,7 +102,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
             @Override
             public void afterTextChanged(Editable s) {
-
+                startSpeculativeSearch();
             }
         });
 
@@ -122,7 +125,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
             @Override
             public void afterTextChanged(Editable s) {
-
+                startSpeculativeSearch();
             }
         });
 
@@ -145,6 +148,24 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSpeculativeSearch.cancel();
+    }
+
+    /**
+     * Start fetching the current input in the background, so the result is ready when the user
+     * taps the search button.
+     */
+    private void startSpeculativeSearch() {
+        if (resultNumber == null) {
+            resultNumber = getString(R.string.spinner_default_value);
+        }
+        mSpeculativeSearch.onQueryChanged(searchTitleEditText.getText().toString(),
+                searchAuthorEditText.getText().toString(), resultNumber);
+    }
+
     public void populateSpinner(Spinner spinner) {
         // Create an ArrayAdapter using the string array and a default spinner layout
         ArrayAdapter<CharSequence> spinnerAdapter = ArrayAdapter.createFromResource(this, R.array
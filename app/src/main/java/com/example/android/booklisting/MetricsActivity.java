@@ -0,0 +1,65 @@
+package com.example.android.booklisting;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+/**
+ * The {@link MetricsActivity} is a debug screen showing the percentiles recorded by
+ * {@link PipelineMetrics} for every stage of a search.
+ */
+
+public class MetricsActivity extends AppCompatActivity {
+
+    /** TextView showing the table of percentiles */
+    private TextView mMetricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mMetricsTextView = (TextView) findViewById(R.id.metrics_TextView);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.metrics_reset:
+                PipelineMetrics.reset();
+                showMetrics();
+                return true;
+            case R.id.metrics_refresh:
+                showMetrics();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    private void showMetrics() {
+        mMetricsTextView.setText(PipelineMetrics.formatTable());
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        PipelineMetrics.dump(writer);
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.android.booklisting;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PipelineMetrics} records how long each stage of a search takes and how much data it
+ * moves, in one {@link Histogram} per stage and page size, so that a slow search can be pinned on
+ * the network, the parser or the list. The percentiles are shown by {@link MetricsActivity} and
+ * dumped in the Prometheus text format, e.g. with
+ * {@code adb shell dumpsys activity com.example.android.booklisting}.
+ * This class has no Android dependencies so that it can be used and measured on a plain JVM.
+ */
+
+public final class PipelineMetrics {
+
+    /** Stages of a search, in the order they run */
+    public enum Stage {
+        /** Whole load of a search page, all requests and the merge included */
+        LOAD("load_us"),
+        /** Single request, from the response cache or the network, retries included */
+        FETCH("fetch_us"),
+        /** Connection to the server set up, TLS handshake included */
+        CONNECT("connect_us"),
+        /** Time to the status line of the response */
+        FIRST_BYTE("first_byte_us"),
+        /** Time spent waiting for the body on the socket */
+        DOWNLOAD("download_us"),
+        /** Rest of the time the body is streamed through the parser: inflating and parsing */
+        PARSE("parse_us"),
+        /** Parsing a body stored in the response cache */
+        CACHED_PARSE("cached_parse_us"),
+        /** Bytes received on the wire per response */
+        RESPONSE_BYTES("response_bytes"),
+        /** Rows per response, after collapsing editions */
+        RESPONSE_BOOKS("response_books"),
+        /** Binding a row of the list */
+        BIND("bind_us"),
+        /** Opening the detail screen of a row until its description is shown */
+        DETAIL("detail_us"),
+        /** Starting a search until its first row is shown, from whichever source */
+        FIRST_ROW("first_row_us"),
+        /** The same for the pinned searches, which the background refresh keeps stored */
+        PINNED_FIRST_ROW("pinned_first_row_us");
+
+        /** Name of the metric in the dump, with its unit */
+        private final String mMetricName;
+
+        Stage(String metricName) {
+            mMetricName = metricName;
+        }
+
+        public String getMetricName() {
+            return mMetricName;
+        }
+    }
+
+    /** Percentiles shown for every histogram */
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    /** Prefix of the metric names in the dump */
+    private static final String METRIC_PREFIX = "booklisting_";
+
+    /** Histograms of every stage by page size, created on first use */
+    private static final EnumMap<Stage, ConcurrentHashMap<Integer, Histogram>> sHistograms =
+            new EnumMap<Stage, ConcurrentHashMap<Integer, Histogram>>(Stage.class);
+
+    static {
+        for (Stage stage : Stage.values()) {
+            sHistograms.put(stage, new ConcurrentHashMap<Integer, Histogram>());
+        }
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link PipelineMetrics}
+     * object.
+     */
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Record a value of the given stage for a search with the given page size.
+     */
+    public static void record(Stage stage, int pageSize, long value) {
+        getHistogram(stage, pageSize).record(value);
+    }
+
+    /**
+     * Record the time since startNanos, a value of {@link System#nanoTime()}, in microseconds.
+     */
+    public static void recordSince(Stage stage, int pageSize, long startNanos) {
+        record(stage, pageSize, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    private static Histogram getHistogram(Stage stage, int pageSize) {
+        ConcurrentHashMap<Integer, Histogram> histograms = sHistograms.get(stage);
+        Histogram histogram = histograms.get(pageSize);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent(pageSize, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the values of the given stage recorded for the given page size so far.
+     */
+    public static Histogram.Snapshot getSnapshot(Stage stage, int pageSize) {
+        return getHistogram(stage, pageSize).getSnapshot();
+    }
+
+    /**
+     * Forget every value recorded so far, e.g. between two runs of a benchmark.
+     */
+    public static void reset() {
+        for (ConcurrentHashMap<Integer, Histogram> histograms : sHistograms.values()) {
+            for (Histogram histogram : histograms.values()) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Returns the page sizes values were recorded for with the given stage, in increasing order.
+     */
+    private static ArrayList<Integer> getPageSizes(Stage stage) {
+        ArrayList<Integer> pageSizes = new ArrayList<Integer>(sHistograms.get(stage).keySet());
+        Collections.sort(pageSizes);
+        return pageSizes;
+    }
+
+    /**
+     * Write every histogram in the Prometheus text format, as a summary with its count, sum and
+     * percentiles labelled by page size.
+     */
+    public static void dump(PrintWriter writer) {
+        for (Stage stage : Stage.values()) {
+            String name = METRIC_PREFIX + stage.getMetricName();
+            writer.println("# TYPE " + name + " summary");
+            for (int pageSize : getPageSizes(stage)) {
+                Histogram.Snapshot snapshot = getSnapshot(stage, pageSize);
+                String pageSizeLabel = "page_size=\"" + pageSize + "\"";
+                for (double percentile : PERCENTILES) {
+                    writer.println(name + "{" + pageSizeLabel + ",quantile=\"" + percentile
+                            + "\"} " + snapshot.getPercentile(percentile));
+                }
+                writer.println(name + "_sum{" + pageSizeLabel + "} " + snapshot.getSum());
+                writer.println(name + "_count{" + pageSizeLabel + "} " + snapshot.getCount());
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Returns the dump written by {@link #dump(PrintWriter)}.
+     */
+    public static String dump() {
+        StringWriter dump = new StringWriter();
+        dump(new PrintWriter(dump));
+        return dump.toString();
+    }
+
+    /**
+     * Returns a table of the percentiles of every stage and page size, to be read on screen.
+     * Durations are in milliseconds.
+     */
+    public static String formatTable() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "%-16s %5s %6s %8s %8s %8s %8s%n",
+                "stage", "page", "count", "p50", "p90", "p99", "max"));
+        for (Stage stage : Stage.values()) {
+            boolean micros = stage.getMetricName().endsWith("_us");
+            String label = micros ? stage.getMetricName().substring(0,
+                    stage.getMetricName().length() - 3) : stage.getMetricName();
+            for (int pageSize : getPageSizes(stage)) {
+                Histogram.Snapshot snapshot = getSnapshot(stage, pageSize);
+                table.append(String.format(Locale.ROOT, "%-16s %5d %6d", label, pageSize,
+                        snapshot.getCount()));
+                for (double percentile : PERCENTILES) {
+                    table.append(' ').append(formatValue(snapshot.getPercentile(percentile),
+                            micros));
+                }
+                table.append(' ').append(formatValue(snapshot.getMax(), micros)).append('\n');
+            }
+        }
+        return table.toString();
+    }
+
+    private static String formatValue(long value, boolean micros) {
+        return micros ? String.format(Locale.ROOT, "%8.1f", value / 1000.0)
+                : String.format(Locale.ROOT, "%8d", value);
+    }
+}
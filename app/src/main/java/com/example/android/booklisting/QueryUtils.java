@@ -1,22 +1,24 @@
 package com.example.android.booklisting;
 
 import android.content.Context;
-import android.text.TextUtils;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.example.android.booklisting.BookJsonParser.OnBookItemParsedListener;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Helper methods related to requesting and receiving earthquake data from Google Books.
@@ -24,22 +26,43 @@ import java.util.ArrayList;
 
 public class QueryUtils {
 
-    /** Keys for JSON parsing */
-    private static final String KEY_VOLUMEINFO = "volumeInfo";
-    private static final String KEY_TITLE = "title";
-    private static final String KEY_AUTHORS = "authors";
-    private static final String KEY_DESCRIPTION = "description";
-    private static final String KEY_PAGECOUNT = "pageCount";
-    private static final String KEY_IMAGELINKS = "imageLinks";
-    private static final String KEY_SMALLTHUMBNAIL = "smallThumbnail";
-    private static final String KEY_LANGUAGE = "language";
-    private static final String KEY_PREVIEWLINK = "previewLink";
+    /** Maximum number of results the API returns for a single request */
+    public static final int MAX_RESULTS_PER_REQUEST = 40;
+
+    /** Default number of pages fetched at the same time by fetchBookDataConcurrently */
+    public static final int DEFAULT_PARALLELISM = ConcurrentFetcher.MAX_PARALLELISM;
+
+    /**
+     * Read and connect timeouts of the default transport. They only bound a stalled connection,
+     * the {@link ResilientTransport} on top gives up much sooner once it has seen a few requests.
+     */
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /** Partial-response projection of the rows of the list, without their descriptions */
+    public static final String FIELDS_PROJECTION = BookJsonParser.FIELDS_PROJECTION;
+
+    /** Partial-response projection of a volume opened in the detail screen */
+    public static final String VOLUME_FIELDS_PROJECTION = BookJsonParser.VOLUME_FIELDS_PROJECTION;
+
+    /** Endpoint of the volume searches, the {@link BookListingApplication} sets the build's */
+    private static volatile String sBaseUrl = BookQuery.DEFAULT_BASE_URL;
+
+    /** Whether queries ask for the partial response only, can be turned off for debugging */
+    private static volatile boolean sFieldsProjectionEnabled = true;
 
     public static String errorMessage = null;
 
+    /** HTTP layer used for all requests, retrying and hedging slow or failed requests */
+    private static HttpTransport sHttpTransport = new ResilientTransport(
+            new UrlConnectionTransport(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS));
+
     /** Tag for the log messages */
     public static final String LOG_TAG = QueryUtils.class.getSimpleName();
-    private static Context mContext = MainActivity.mContext;
+
+    /** Context of the response cache and the local index, none outside of the app */
+    private static Context mContext = null;
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -48,23 +71,371 @@ public class QueryUtils {
     private QueryUtils() {
     }
 
-    public static ArrayList<BookItem> fetchBookData(String requestURL) {
+    /**
+     * Callback invoked by fetchBookDataConcurrently as soon as each page has been parsed. Pages
+     * complete in any order, the start index tells where the page belongs.
+     */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(int startIndex, ArrayList<BookItem> bookItems);
+    }
+
+    /**
+     * Replace the HTTP layer, e.g. with one that talks to a local test server. Wrap it in a
+     * {@link ResilientTransport} to keep the retries and hedging.
+     */
+    public static void setHttpTransport(HttpTransport httpTransport) {
+        sHttpTransport = httpTransport;
+    }
+
+    /**
+     * Give the fetches the context of the response cache and the local index. Without one, e.g.
+     * on a plain JVM, every request goes to the network and nothing is indexed.
+     */
+    public static void setContext(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Replace the endpoint of the volume searches, e.g. with a local stand-in server. Only
+     * queries built afterwards use it.
+     */
+    public static void setBaseUrl(String baseUrl) {
+        sBaseUrl = baseUrl;
+    }
+
+    /**
+     * Returns the endpoint of the volume searches.
+     */
+    public static String getBaseUrl() {
+        return sBaseUrl;
+    }
+
+    /**
+     * Returns the counters of the HTTP layer, for the logs.
+     */
+    public static String getHttpStats() {
+        HttpTransport httpTransport = sHttpTransport;
+        return httpTransport instanceof ResilientTransport
+                ? ((ResilientTransport) httpTransport).getStats() : httpTransport.toString();
+    }
+
+    /**
+     * Turn the fields projection on or off. With the projection off the full volume resources
+     * are downloaded, which is useful when debugging the parser.
+     */
+    public static void setFieldsProjectionEnabled(boolean enabled) {
+        sFieldsProjectionEnabled = enabled;
+    }
+
+    /**
+     * Returns the projection queries should ask for, or null if it is turned off.
+     */
+    public static String getFieldsProjection() {
+        return sFieldsProjectionEnabled ? FIELDS_PROJECTION : null;
+    }
+
+    /**
+     * Download the given query with and without the fields projection, bypassing the caches, and
+     * return the number of bytes received on the wire for each, in that order.
+     */
+    public static long[] measureFieldsProjection(BookQuery query) throws IOException {
+        String projectedQuery = query.toBuilder().setFields(FIELDS_PROJECTION).build().getUrl();
+        String fullQuery = query.toBuilder().setFields(null).build().getUrl();
+        long[] bytesReceived = new long[] {
+                measureBytesReceived(projectedQuery), measureBytesReceived(fullQuery)};
+        Log.v(LOG_TAG, "Bytes with projection: " + bytesReceived[0] + ", without: "
+                + bytesReceived[1]);
+        return bytesReceived;
+    }
+
+    private static long measureBytesReceived(String query) throws IOException {
+        HttpResponse response = sHttpTransport.get(query, null, null);
+        try {
+            InputStream body = response.getBody();
+            if (body != null) {
+                byte[] buffer = new byte[4096];
+                while (body.read(buffer) != -1) {
+                    // Only the number of bytes matters
+                }
+            }
+            return response.getBytesReceived();
+        } finally {
+            response.close();
+        }
+    }
+
+    public static ArrayList<BookItem> fetchBookData(BookQuery query) {
+        return fetchBookData(query, (CancellationSignal) null);
+    }
+
+    /**
+     * Fetch the given query. Concurrent calls for the same query share a single fetch and its
+     * parsed result, which must therefore not be modified.
+     *
+     * @throws android.os.OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public static ArrayList<BookItem> fetchBookData(final BookQuery query,
+                                                    CancellationSignal cancellationSignal) {
+        return RequestCoalescer.fetch(query.getUrl(), cancellationSignal,
+                new RequestCoalescer.Fetcher() {
+                    @Override
+                    public ArrayList<BookItem> fetch(String url,
+                                                     CancellationSignal cancellationSignal) {
+                        return fetchBookData(sHttpTransport, getResponseCache(), url,
+                                query.getPageSize(), null, cancellationSignal);
+                    }
+                });
+    }
+
+    /**
+     * Fetch the given query on the calling thread, handing out each {@link BookItem} as soon as
+     * it has been parsed.
+     */
+    public static ArrayList<BookItem> fetchBookData(BookQuery query,
+                                                    OnBookItemParsedListener listener) {
+        return fetchBookData(sHttpTransport, getResponseCache(), query.getUrl(),
+                query.getPageSize(), listener, null);
+    }
+
+    /**
+     * Fetch the given query on the calling thread with the given transport, bypassing the
+     * {@link BookResponseCache} and the sharing of concurrent fetches, e.g. for the tools which
+     * run the pipeline on a plain JVM. Returns null if the query couldn't be loaded.
+     */
+    public static ArrayList<BookItem> fetchBookData(HttpTransport httpTransport,
+                                                    BookQuery query) {
+        return fetchBookData(httpTransport, null, query.getUrl(), query.getPageSize(), null,
+                null);
+    }
+
+    /**
+     * Fetch the given URL with the given transport and cache, if any, recording the
+     * {@link PipelineMetrics} of pageSize, the number of results it asks for.
+     */
+    private static ArrayList<BookItem> fetchBookData(HttpTransport httpTransport,
+                                                     BookResponseCache cache, String requestURL,
+                                                     int pageSize,
+                                                     OnBookItemParsedListener listener,
+                                                     CancellationSignal cancellationSignal) {
         // Create URL object
         URL url = createURL(requestURL);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP request to the URL and parse the JSON response while it is being received
+        ArrayList<BookItem> bookItems = null;
+        long startTime = System.nanoTime();
         try {
-            jsonResponse = makeHTTPRequest(url);
+            bookItems = makeHTTPRequest(httpTransport, cache, url, pageSize, listener,
+                    cancellationSignal);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error closing input stream", e);
         }
-        // Parse JSON string and create an {@ArrayList<BookItem>} object
-        ArrayList<BookItem> bookItems = extractBookData(jsonResponse);
+        PipelineMetrics.recordSince(PipelineMetrics.Stage.FETCH, pageSize, startTime);
+        if (bookItems != null) {
+            PipelineMetrics.record(PipelineMetrics.Stage.RESPONSE_BOOKS, pageSize,
+                    bookItems.size());
+        }
 
         return bookItems;
     }
 
+    /**
+     * Returns the URL of the volumes/{id} resource of the given volume, asking for the fields of
+     * the detail screen only unless the projection is turned off.
+     */
+    public static String volumeUrl(String volumeId) {
+        StringBuilder url = new StringBuilder(sBaseUrl).append('/').append(Uri.encode(volumeId));
+        if (sFieldsProjectionEnabled) {
+            url.append("?fields=").append(Uri.encode(VOLUME_FIELDS_PROJECTION));
+        }
+        return url.toString();
+    }
+
+    /**
+     * Fetch and parse a single volume resource, e.g. from {@link #volumeUrl}. Cancelling the
+     * cancellationSignal aborts the socket read. Returns null if the volume couldn't be loaded.
+     *
+     * @throws OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public static BookItem fetchVolume(String requestURL, CancellationSignal cancellationSignal) {
+        if (cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
+        }
+        try {
+            final HttpResponse response = sHttpTransport.get(requestURL, null,
+                    cancellationSignal);
+            try {
+                // From now on a cancellation aborts the connection, which unblocks a pending read
+                if (cancellationSignal != null) {
+                    cancellationSignal.setOnCancelListener(
+                            new CancellationSignal.OnCancelListener() {
+                                @Override
+                                public void onCancel() {
+                                    response.abort();
+                                }
+                            });
+                }
+                int responseCode = response.getResponseCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    Log.e(LOG_TAG, "Error response code: " + responseCode);
+                    return null;
+                }
+                return BookJsonParser.parseVolume(response.getBody());
+            } finally {
+                if (cancellationSignal != null) {
+                    cancellationSignal.setOnCancelListener(null);
+                }
+                response.close();
+            }
+        } catch (IOException e) {
+            // An aborted read fails with an IOException, report it as the cancellation it is
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            Log.e(LOG_TAG, "Problem retrieving the Google Books volume", e);
+        } catch (IllegalStateException e) {
+            Log.e(LOG_TAG, "Problem parsing the Google Books volume", e);
+        }
+        return null;
+    }
+
+    /**
+     * Fetch the given query, fanned out over pages if it asks for more results than a single
+     * request returns.
+     *
+     * @throws OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public static ArrayList<BookItem> fetchQuery(BookQuery query,
+                                                 CancellationSignal cancellationSignal) {
+        return fetchQuery(query, null, cancellationSignal);
+    }
+
+    /**
+     * Fetch the given query like {@link #fetchQuery(BookQuery, CancellationSignal)}, handing out
+     * every page of a fanned out query to the listener as soon as it has been parsed.
+     *
+     * @throws OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public static ArrayList<BookItem> fetchQuery(BookQuery query, OnPageLoadedListener listener,
+                                                 CancellationSignal cancellationSignal) {
+        if (query.getPageSize() > MAX_RESULTS_PER_REQUEST) {
+            return fetchBookDataConcurrently(query, DEFAULT_PARALLELISM, listener,
+                    cancellationSignal);
+        }
+        return fetchBookData(query, cancellationSignal);
+    }
+
+    /**
+     * Returns the result of the given query from the {@link BookResponseCache} without any
+     * network access, however stale, as long as it is younger than maxAgeMillis. Returns null if
+     * any of its requests isn't stored.
+     */
+    public static ArrayList<BookItem> fetchStoredBookData(BookQuery query, long maxAgeMillis) {
+        BookResponseCache cache = getResponseCache();
+        if (cache == null) {
+            return null;
+        }
+        int pageCount = Math.max(1, (query.getPageSize() + MAX_RESULTS_PER_REQUEST - 1)
+                / MAX_RESULTS_PER_REQUEST);
+        EditionDeduplicator editions = new EditionDeduplicator();
+        try {
+            for (int i = 0; i < pageCount; i++) {
+                BookQuery pageQuery = pageCount == 1 ? query : windowQuery(query, i);
+                BookResponseCache.Entry cacheEntry = cache.get(pageQuery.getUrl());
+                if (cacheEntry == null || cacheEntry.getAgeMillis() > maxAgeMillis) {
+                    return null;
+                }
+                ArrayList<BookItem> bookItems = extractCachedBookData(cacheEntry,
+                        pageQuery.getPageSize(), null, null);
+                if (bookItems == null) {
+                    return null;
+                }
+                editions.addAll(bookItems);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the stored Google Books results", e);
+            return null;
+        }
+        return editions.getRows();
+    }
+
+    /**
+     * Returns the {@link BookResponseCache}, or null without a context.
+     */
+    private static BookResponseCache getResponseCache() {
+        return mContext != null ? BookResponseCache.getInstance(mContext) : null;
+    }
+
+    /**
+     * Returns the query of the index-th window of at most MAX_RESULTS_PER_REQUEST results of the
+     * given query.
+     */
+    private static BookQuery windowQuery(BookQuery query, int index) {
+        return query.toBuilder()
+                .setPageSize(Math.min(MAX_RESULTS_PER_REQUEST,
+                        query.getPageSize() - index * MAX_RESULTS_PER_REQUEST))
+                .setStartIndex(query.getStartIndex() + index * MAX_RESULTS_PER_REQUEST)
+                .build();
+    }
+
+    /**
+     * Fetch a result set larger than a single request allows. The query is split into windows of
+     * at most MAX_RESULTS_PER_REQUEST results, which are fetched and parsed in parallel on at most
+     * parallelism threads of the pool the {@link ConcurrentFetcher} shares between callers. The
+     * pages are merged back in API order, volumes returned by more than one page are only kept
+     * once and editions of the same work are collapsed into one row.
+     *
+     * @throws OperationCanceledException if the cancellationSignal is cancelled
+     */
+    public static ArrayList<BookItem> fetchBookDataConcurrently(final BookQuery query,
+            int parallelism, final OnPageLoadedListener listener,
+            CancellationSignal cancellationSignal) {
+        final int startIndex = query.getStartIndex();
+        int resultCount = query.getPageSize();
+        int pageCount = (resultCount + MAX_RESULTS_PER_REQUEST - 1) / MAX_RESULTS_PER_REQUEST;
+        if (pageCount <= 0) {
+            return new ArrayList<BookItem>();
+        }
+
+        try {
+            List<ArrayList<BookItem>> pages = ConcurrentFetcher.fetch(pageCount, parallelism,
+                    new ConcurrentFetcher.PageFetcher() {
+                        @Override
+                        public ArrayList<BookItem> fetchPage(int index,
+                                                             CancellationSignal pageSignal) {
+                            ArrayList<BookItem> bookItems = fetchBookData(
+                                    windowQuery(query, index), pageSignal);
+                            if (listener != null && bookItems != null) {
+                                listener.onPageLoaded(startIndex
+                                        + index * MAX_RESULTS_PER_REQUEST, bookItems);
+                            }
+                            return bookItems;
+                        }
+                    }, cancellationSignal);
+
+            // Merge the pages in API order, dropping volumes that were already added and
+            // collapsing editions of works found on an earlier page
+            EditionDeduplicator editions = null;
+            for (ArrayList<BookItem> pageBookItems : pages) {
+                if (pageBookItems == null) {
+                    continue;
+                }
+                if (editions == null) {
+                    editions = new EditionDeduplicator();
+                }
+                editions.addAll(pageBookItems);
+            }
+            return editions != null ? editions.getRows() : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.e(LOG_TAG, "Interrupted while fetching the Google Books pages", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OperationCanceledException) {
+                throw (OperationCanceledException) e.getCause();
+            }
+            Log.e(LOG_TAG, "Problem fetching the Google Books pages", e);
+        }
+        return null;
+    }
 
     /**
      * Returns new URL object from the given string URL.
@@ -80,155 +451,211 @@ public class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL with the given transport and parse the response
+     * straight from the connection's input stream, so that no copy of the whole payload is ever
+     * held in memory. Responses are stored in the cache, if any: a fresh entry is served without
+     * any network access and a stale one is revalidated, reusing the stored body if the server
+     * answers 304. Cancelling the cancellationSignal aborts the socket read and stops the parser
+     * at the next item. The time of every stage is recorded in the {@link PipelineMetrics} of
+     * pageSize.
      */
-    private static String makeHTTPRequest(URL url) throws IOException {
+    private static ArrayList<BookItem> makeHTTPRequest(HttpTransport httpTransport,
+                                                       BookResponseCache cache, URL url,
+                                                       int pageSize,
+                                                       OnBookItemParsedListener listener,
+                                                       CancellationSignal cancellationSignal)
+            throws IOException {
 
         // If the url is empty, return early
-        String jsonResponse = null;
+        ArrayList<BookItem> bookItems = null;
         if (url == null) {
-            return jsonResponse;
+            return bookItems;
         }
-        HttpURLConnection urlConnection = null;
+
+        // Don't start a request nobody is waiting for any more
+        if (cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
+        }
+
+        // Check the response cache first
+        BookResponseCache.Entry cacheEntry = cache != null ? cache.get(url.toString()) : null;
+        if (cacheEntry != null && cacheEntry.isFresh()) {
+            cache.recordHit();
+            return extractCachedBookData(cacheEntry, pageSize, listener, cancellationSignal);
+        }
+
+        // Ask the server to only send the body if it changed since it was cached
+        Map<String, String> requestHeaders = new HashMap<String, String>();
+        if (cacheEntry != null) {
+            if (cacheEntry.getETag() != null) {
+                requestHeaders.put("If-None-Match", cacheEntry.getETag());
+            }
+            if (cacheEntry.getLastModified() != null) {
+                requestHeaders.put("If-Modified-Since", cacheEntry.getLastModified());
+            }
+        }
+
+        HttpResponse response = null;
         InputStream inputStream = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            response = httpTransport.get(url.toString(), requestHeaders, cancellationSignal);
+            Log.v(LOG_TAG, "Connected in " + response.getConnectMillis() + " ms, first byte after "
+                    + response.getTimeToFirstByteMillis() + " ms");
+            PipelineMetrics.record(PipelineMetrics.Stage.CONNECT, pageSize,
+                    response.getConnectMillis() * 1000);
+            PipelineMetrics.record(PipelineMetrics.Stage.FIRST_BYTE, pageSize,
+                    response.getTimeToFirstByteMillis() * 1000);
+
+            // From now on a cancellation aborts the connection, which unblocks a pending read
+            if (cancellationSignal != null) {
+                final HttpResponse abortableResponse = response;
+                cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                    @Override
+                    public void onCancel() {
+                        abortableResponse.abort();
+                    }
+                });
+            }
 
             // If the request was successful (response code 200), then read the input stream and
-            // parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromInputStream(inputStream);
+            // parse the response. If the cached response is still valid (response code 304), then
+            // parse the stored body instead.
+            int responseCode = response.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                long bodyStartTime = System.nanoTime();
+                inputStream = response.getBody();
+                if (cache != null) {
+                    cache.recordMiss();
+                    BookResponseCache.CachingInputStream cachingStream = cache.put(url.toString(),
+                            inputStream, response.getHeader("ETag"),
+                            response.getHeader("Last-Modified"));
+                    inputStream = cachingStream;
+                    EditionDeduplicator editions = new EditionDeduplicator();
+                    // Only store a response which parsed cleanly, closing the stream without a
+                    // commit discards it so that the next request doesn't serve the broken body
+                    if (parseBookData(cachingStream, editions, listener, cancellationSignal)) {
+                        cachingStream.commit();
+                    }
+                    bookItems = editions.getRows();
+                } else {
+                    bookItems = extractBookData(inputStream, listener, cancellationSignal);
+                }
+                recordBodyMetrics(response, pageSize, bodyStartTime);
+                // Keep every volume fetched from the network in the local index, so it can be
+                // found without the network. A cached or revalidated body holds volumes indexed
+                // when it was fetched.
+                if (bookItems != null && mContext != null) {
+                    BookIndex.getInstance(mContext).addAllAsync(bookItems);
+                }
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cacheEntry != null) {
+                cache.recordRevalidate();
+                cache.markRevalidated(cacheEntry, response.getHeader("ETag"),
+                        response.getHeader("Last-Modified"));
+                bookItems = extractCachedBookData(cacheEntry, pageSize, listener,
+                        cancellationSignal);
             } else {
-                Log.e(LOG_TAG,"Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG,"Error response code: " + responseCode);
             }
         } catch (IOException e) {
+            // An aborted read fails with an IOException, report it as the cancellation it is
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
             Log.e(LOG_TAG, "Problem retrieving the Google Books JSON results", e);
         } finally {
-            // Close connection
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
             }
-            // Close stream
+            // Close stream, which hands the connection back to the transport's pool
             if (inputStream != null) {
                 inputStream.close();
             }
+            if (response != null) {
+                Log.v(LOG_TAG, "Received " + response.getBytesReceived() + " bytes");
+                response.close();
+            }
+        }
+        return bookItems;
+    }
+
+    /**
+     * Record how long the body of the response took and how much of that was spent waiting for
+     * the network. The body is parsed while it is received, so the rest went to the parser.
+     */
+    private static void recordBodyMetrics(HttpResponse response, int pageSize,
+                                          long bodyStartTime) {
+        long bodyNanos = System.nanoTime() - bodyStartTime;
+        long readNanos = response.getReadNanos();
+        if (readNanos >= 0) {
+            PipelineMetrics.record(PipelineMetrics.Stage.DOWNLOAD, pageSize, readNanos / 1000);
+            PipelineMetrics.record(PipelineMetrics.Stage.PARSE, pageSize,
+                    (bodyNanos - readNanos) / 1000);
+            PipelineMetrics.record(PipelineMetrics.Stage.RESPONSE_BYTES, pageSize,
+                    response.getBytesReceived());
         }
-        return jsonResponse;
     }
 
-    private static String readFromInputStream(InputStream inputstream) throws IOException {
-        StringBuilder streamOutput = new StringBuilder();
-        if (inputstream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputstream, Charset
-                    .forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                streamOutput.append(line);
-                line = reader.readLine();
-            }
+    /**
+     * Parse the body of a cached response.
+     */
+    private static ArrayList<BookItem> extractCachedBookData(BookResponseCache.Entry cacheEntry,
+            int pageSize, OnBookItemParsedListener listener, CancellationSignal cancellationSignal)
+            throws IOException {
+        long startTime = System.nanoTime();
+        InputStream inputStream = cacheEntry.openBody();
+        try {
+            ArrayList<BookItem> bookItems = extractBookData(inputStream, listener,
+                    cancellationSignal);
+            PipelineMetrics.recordSince(PipelineMetrics.Stage.CACHED_PARSE, pageSize, startTime);
+            return bookItems;
+        } finally {
+            inputStream.close();
         }
-        return streamOutput.toString();
     }
 
-    private static ArrayList<BookItem> extractBookData(String bookDataJSON) {
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(bookDataJSON)) {
+    /**
+     * Parse the Google Books response with the {@link BookJsonParser}, collapsing the editions of
+     * a work into one row. A malformed response is reported in errorMessage and the books parsed
+     * until then are returned.
+     */
+    static ArrayList<BookItem> extractBookData(InputStream inputStream,
+                                               OnBookItemParsedListener listener,
+                                               CancellationSignal cancellationSignal)
+            throws IOException {
+        // If there is no stream, then return early.
+        if (inputStream == null) {
             return null;
         }
 
-        // Create empty ArrayList in which the parsed data will be added
-        ArrayList<BookItem> bookItems = new ArrayList<BookItem>();
+        // Collect the parsed data, one row per work with the other editions as its alternates
+        EditionDeduplicator editions = new EditionDeduplicator();
+        parseBookData(inputStream, editions, listener, cancellationSignal);
 
-        // Try to parse the SAMPLE_JSON_RESPONSE. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        // Return the list of BookItems
+        return editions.getRows();
+    }
 
+    /**
+     * Parse the Google Books response into editions. Returns false if the response is malformed,
+     * which is reported in errorMessage, the books parsed until then stay in editions.
+     */
+    private static boolean parseBookData(InputStream inputStream, EditionDeduplicator editions,
+                                         OnBookItemParsedListener listener,
+                                         CancellationSignal cancellationSignal)
+            throws IOException {
+        // If there's a problem with the way the JSON is formatted, a MalformedJsonException or an
+        // IllegalStateException will be thrown. Catch them so the app doesn't crash, print the
+        // error message to the logs and report the failure to the caller.
         try {
-            // Build a list of BookItem Objects
-            JSONObject baseJSONObject = new JSONObject(bookDataJSON);
-            JSONArray bookArray = baseJSONObject.getJSONArray("items");
-
-            // Variables for JSON parsing
-            String title;
-            JSONArray authors;
-            String author;
-            String description;
-            int pageCount;
-            JSONObject imageLinks;
-            String smallThumbnail;
-            String language;
-            String previewLink;
-
-            for (int i = 0; i < bookArray.length(); i++) {
-                JSONObject currentBook = bookArray.getJSONObject(i);
-                JSONObject volumeInfo = currentBook.getJSONObject(KEY_VOLUMEINFO);
-                // Check if key "title" exists and if yes, return value
-                if (volumeInfo.has(KEY_TITLE)) {
-                    title = volumeInfo.getString(KEY_TITLE);
-                } else {
-                    title = null;
-                }
-                // Check if key "authors" exists and if yes, return value
-                if (volumeInfo.has(KEY_AUTHORS)) {
-                    authors = volumeInfo.getJSONArray(KEY_AUTHORS);
-                    author = authors.getString(0);
-                } else {
-                    author = null;
-                }
-
-                // Check if key "description" exists and if yes, return value
-                if (volumeInfo.has(KEY_DESCRIPTION)) {
-                    description = volumeInfo.getString(KEY_DESCRIPTION);
-                } else {
-                    description = null;
-                }
-
-                // Check if key "pageCount" exists and if yes, return value
-                if (volumeInfo.has(KEY_PAGECOUNT)) {
-                    pageCount = volumeInfo.getInt(KEY_PAGECOUNT);
-                } else {
-                    pageCount = 0;
-                }
-
-                // Check if key "imageLinks" exists and if yes, return value
-                if (volumeInfo.has(KEY_IMAGELINKS)) {
-                    imageLinks = volumeInfo.getJSONObject(KEY_IMAGELINKS);
-                    smallThumbnail = imageLinks.getString(KEY_SMALLTHUMBNAIL);
-                } else {
-                    smallThumbnail = null;
-                }
-
-                // Check if key "language" exists and if yes, return value
-                if (volumeInfo.has(KEY_LANGUAGE)) {
-                    language = volumeInfo.getString(KEY_LANGUAGE);
-                } else {
-                    language = null;
-                }
-
-                // Check if key "previewLink" exists and if yes, return value
-                if (volumeInfo.has(KEY_PREVIEWLINK)) {
-                    previewLink = volumeInfo.getString(KEY_PREVIEWLINK);
-                } else {
-                    previewLink = null;
-                }
-
-                // Create the BookItem object and add it to the ArrayList
-                BookItem bookItem = new BookItem(smallThumbnail, previewLink, title, author,
-                        pageCount, language, description);
-                bookItems.add(bookItem);
-            }
-        } catch (JSONException e) {
+            BookJsonParser.parse(inputStream, editions, listener, cancellationSignal);
+            return true;
+        } catch (MalformedJsonException e) {
+            Log.e(LOG_TAG, "Problem parsing the BookItem JSON results", e);
+            errorMessage = "Problem parsing the BookItem JSON results. JSONException: " + e;
+        } catch (IllegalStateException e) {
             Log.e(LOG_TAG, "Problem parsing the BookItem JSON results", e);
-            errorMessage = "Problem parsing the BookItem JSON results. JSONExcelption: " + e;
+            errorMessage = "Problem parsing the BookItem JSON results. JSONException: " + e;
         }
-
-        // Return the list of BookItems
-        return bookItems;
+        return false;
     }
 }
@@ -0,0 +1,164 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * {@link RequestCoalescer} makes concurrent requests for the same normalized query share a single
+ * fetch. The first caller starts the fetch on a background thread and every caller, including
+ * the first one, waits for its result. A caller that is cancelled stops waiting right away, but
+ * the fetch itself is only cancelled when the last interested caller has gone.
+ */
+
+final class RequestCoalescer {
+
+    /**
+     * Performs the actual fetch of a query.
+     */
+    interface Fetcher {
+        ArrayList<BookItem> fetch(String url, CancellationSignal cancellationSignal);
+    }
+
+    /** Fetches in flight, keyed by normalized query. Also used as the lock for all flights. */
+    private static final HashMap<String, Flight> sFlights = new HashMap<String, Flight>();
+
+    /**
+     * Threads running the fetches, so that waiting callers never block a fetch from starting.
+     * They are as many as the pages fetched at the same time, further fetches queue.
+     */
+    private static final ExecutorService sExecutor = ConcurrentFetcher.newBoundedExecutor(
+            "request-coalescer", ConcurrentFetcher.MAX_PARALLELISM);
+
+    /**
+     * Create a private constructor because no one should ever create a {@link RequestCoalescer}
+     * object.
+     */
+    private RequestCoalescer() {
+    }
+
+    /**
+     * Returns the result of the given query, fetching it unless an identical fetch is already in
+     * flight.
+     *
+     * @throws OperationCanceledException if the caller's cancellationSignal is cancelled
+     */
+    static ArrayList<BookItem> fetch(final String url, CancellationSignal cancellationSignal,
+                                     final Fetcher fetcher) {
+        final String key = BookResponseCache.normalizeUrl(url);
+        final CountDownLatch wakeUp = new CountDownLatch(1);
+        final Flight flight;
+        boolean startFlight = false;
+        synchronized (sFlights) {
+            Flight existingFlight = sFlights.get(key);
+            if (existingFlight == null) {
+                flight = new Flight();
+                sFlights.put(key, flight);
+                startFlight = true;
+            } else {
+                flight = existingFlight;
+            }
+            flight.mCallers++;
+            flight.mWaiters.add(wakeUp);
+        }
+
+        if (startFlight) {
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ArrayList<BookItem> bookItems = null;
+                    try {
+                        // Every caller may have gone while the flight was queued
+                        flight.mCancellationSignal.throwIfCanceled();
+                        bookItems = fetcher.fetch(url, flight.mCancellationSignal);
+                    } catch (OperationCanceledException e) {
+                        // Every caller has gone, so there is nobody to deliver to
+                    } finally {
+                        complete(key, flight, bookItems);
+                    }
+                }
+            });
+        }
+
+        // Stop waiting as soon as this caller is cancelled
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    wakeUp.countDown();
+                }
+            });
+        }
+        try {
+            wakeUp.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leave(key, flight, wakeUp);
+            return null;
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+        }
+
+        if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+            leave(key, flight, wakeUp);
+            throw new OperationCanceledException();
+        }
+        return flight.mResult;
+    }
+
+    /**
+     * Store the result of a flight and wake up everybody waiting for it.
+     */
+    private static void complete(String key, Flight flight, ArrayList<BookItem> bookItems) {
+        synchronized (sFlights) {
+            flight.mResult = bookItems;
+            flight.mDone = true;
+            if (sFlights.get(key) == flight) {
+                sFlights.remove(key);
+            }
+            for (CountDownLatch waiter : flight.mWaiters) {
+                waiter.countDown();
+            }
+            flight.mWaiters.clear();
+        }
+    }
+
+    /**
+     * Remove a caller from a flight, cancelling the flight if it was the last one.
+     */
+    private static void leave(String key, Flight flight, CountDownLatch wakeUp) {
+        boolean cancelFlight = false;
+        synchronized (sFlights) {
+            if (flight.mDone || !flight.mWaiters.remove(wakeUp)) {
+                return;
+            }
+            flight.mCallers--;
+            if (flight.mCallers == 0) {
+                // New callers for this query have to start a fresh flight
+                sFlights.remove(key);
+                cancelFlight = true;
+            }
+        }
+        // Cancel outside the lock, cancel listeners may close sockets
+        if (cancelFlight) {
+            flight.mCancellationSignal.cancel();
+        }
+    }
+
+    /**
+     * A fetch in flight and the callers waiting for it.
+     */
+    private static class Flight {
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
+        private final ArrayList<CountDownLatch> mWaiters = new ArrayList<CountDownLatch>();
+        private int mCallers;
+        private boolean mDone;
+        private ArrayList<BookItem> mResult;
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ResilientTransport} is an {@link HttpTransport} which makes another transport tolerate
+ * slow and failing requests. The time to the response headers is tracked in a
+ * {@link LatencyTracker}; an attempt which takes much longer than recent requests did is given
+ * up, and failed attempts, server errors and rate limiting are retried with capped exponential
+ * backoff and full jitter. With hedging on, a duplicate request is sent once an attempt has taken
+ * longer than the 95th percentile and whichever answers first is used. Only GET requests go
+ * through an {@link HttpTransport}, so every request can safely be sent more than once.
+ * Cancelling a request stops its backoff and aborts its attempts in flight. Apart from
+ * CancellationSignal this class has no Android dependencies, so that it can still be used and
+ * measured on a plain JVM.
+ */
+
+public class ResilientTransport implements HttpTransport {
+
+    /** Number of latencies the timeouts are derived from */
+    private static final int LATENCY_WINDOW = 100;
+
+    /** Latencies needed before the timeouts adapt and hedging starts */
+    private static final int MIN_SAMPLES = 10;
+
+    /**
+     * An attempt is given up after this multiple of the 95th percentile, within the bounds. The
+     * 99th percentile would be the stalls themselves as soon as more than 1% of requests stall.
+     */
+    private static final int TIMEOUT_PERCENTILE_MULTIPLIER = 4;
+    private static final long MIN_ATTEMPT_TIMEOUT_MILLIS = 1000;
+    private static final long MAX_ATTEMPT_TIMEOUT_MILLIS = 10000;
+
+    /** Hedged requests are never sent sooner than this */
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+
+    /** Number of attempts, the first one included */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** Backoff before the first retry, doubled for every further retry up to the cap */
+    private static final long BASE_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 2000;
+
+    /** Status code for rate limiting, not defined by {@link HttpURLConnection} */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /** Requests sent at the same time by default: every page fetched at once and its hedge */
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS =
+            2 * ConcurrentFetcher.MAX_PARALLELISM;
+
+    private final HttpTransport mDelegate;
+
+    private final LatencyTracker mLatencyTracker = new LatencyTracker(LATENCY_WINDOW);
+
+    /**
+     * Threads running the attempts, so that a stalled one can be left behind. An abandoned
+     * attempt is cancelled, which frees its thread, so a bounded pool is enough.
+     */
+    private final ExecutorService mExecutor;
+
+    private final Random mRandom = new Random();
+
+    private volatile boolean mHedgingEnabled = true;
+
+    /** Counters used to tune the policy */
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mRetryCount = new AtomicInteger();
+    private final AtomicInteger mHedgeCount = new AtomicInteger();
+    private final AtomicInteger mHedgeWinCount = new AtomicInteger();
+    private final AtomicInteger mTimeoutCount = new AtomicInteger();
+
+    /** Error of the last failed attempt, for the stats */
+    private volatile IOException mLastError;
+
+    public ResilientTransport(HttpTransport delegate) {
+        this(delegate, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Create a transport which sends at most maxConcurrentRequests requests, hedges included, at
+     * the same time and queues the ones beyond that.
+     */
+    public ResilientTransport(HttpTransport delegate, int maxConcurrentRequests) {
+        mDelegate = delegate;
+        mExecutor = ConcurrentFetcher.newBoundedExecutor("resilient-transport",
+                maxConcurrentRequests);
+    }
+
+    /**
+     * Turn hedged requests on or off. They cut the tail latency at the cost of about 5% more
+     * requests.
+     */
+    public void setHedgingEnabled(boolean enabled) {
+        mHedgingEnabled = enabled;
+    }
+
+    /**
+     * Returns how long an attempt may take before it is given up: four times the 95th percentile
+     * of the recent latencies, or the maximum until enough requests have been seen.
+     */
+    public long getAttemptTimeoutMillis() {
+        if (mLatencyTracker.getSampleCount() < MIN_SAMPLES) {
+            return MAX_ATTEMPT_TIMEOUT_MILLIS;
+        }
+        long timeout = mLatencyTracker.getPercentile(0.95) * TIMEOUT_PERCENTILE_MULTIPLIER;
+        return Math.max(MIN_ATTEMPT_TIMEOUT_MILLIS, Math.min(MAX_ATTEMPT_TIMEOUT_MILLIS, timeout));
+    }
+
+    /**
+     * Returns how long an attempt may take before a hedged request is sent, or -1 if none is.
+     */
+    public long getHedgeDelayMillis() {
+        if (!mHedgingEnabled || mLatencyTracker.getSampleCount() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, mLatencyTracker.getPercentile(0.95));
+    }
+
+    @Override
+    public HttpResponse get(String url, Map<String, String> requestHeaders,
+                            CancellationSignal cancellationSignal) throws IOException {
+        mRequestCount.incrementAndGet();
+        Call call = new Call(cancellationSignal);
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(call);
+        }
+        try {
+            IOException lastError = null;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                call.throwIfCanceled();
+                if (attempt > 0) {
+                    mRetryCount.incrementAndGet();
+                    backOff(attempt, call);
+                }
+                try {
+                    HttpResponse response = getHedged(url, requestHeaders, call);
+                    if (call.isCanceled()) {
+                        response.abort();
+                        call.throwIfCanceled();
+                    }
+                    return response;
+                } catch (IOException e) {
+                    lastError = e;
+                    mLastError = e;
+                }
+            }
+            call.throwIfCanceled();
+            throw lastError;
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    /**
+     * Wait a random time up to the capped exponential backoff for the given retry, or until the
+     * call is cancelled.
+     */
+    private void backOff(int retry, Call call) throws InterruptedIOException {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (retry - 1));
+        long backoff = (long) (mRandom.nextDouble() * cap);
+        try {
+            call.mCanceled.await(backoff, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+        call.throwIfCanceled();
+    }
+
+    /**
+     * Make one attempt, hedged if it takes longer than usual, and return the first good
+     * response. The other request is abandoned and its response closed.
+     *
+     * @throws IOException if no request succeeded before the attempt timed out
+     */
+    private HttpResponse getHedged(String url, Map<String, String> requestHeaders, Call call)
+            throws IOException {
+        long timeoutMillis = getAttemptTimeoutMillis();
+        long hedgeDelayMillis = getHedgeDelayMillis();
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        CompletionService<HttpResponse> completionService =
+                new ExecutorCompletionService<HttpResponse>(mExecutor);
+        HashMap<Future<HttpResponse>, Request> requests =
+                new HashMap<Future<HttpResponse>, Request>();
+        Request primary = new Request(url, requestHeaders);
+        call.add(primary);
+        requests.put(completionService.submit(primary), primary);
+        int pending = 1;
+        boolean hedged = false;
+        IOException lastError = null;
+
+        try {
+            while (pending > 0) {
+                long now = System.nanoTime();
+                long wait = deadline - now;
+                boolean hedgeDue = !hedged && hedgeDelayMillis >= 0;
+                if (hedgeDue) {
+                    wait = Math.min(wait,
+                            startTime + TimeUnit.MILLISECONDS.toNanos(hedgeDelayMillis) - now);
+                }
+                Future<HttpResponse> done = completionService.poll(Math.max(0, wait),
+                        TimeUnit.NANOSECONDS);
+                // A cancelled call has abandoned its requests, which makes them return at once
+                call.throwIfCanceled();
+                if (done == null) {
+                    if (hedgeDue && System.nanoTime() < deadline) {
+                        // The request is slower than 95% of the recent ones, send a second one
+                        Request hedge = new Request(url, requestHeaders);
+                        call.add(hedge);
+                        requests.put(completionService.submit(hedge), hedge);
+                        pending++;
+                        hedged = true;
+                        mHedgeCount.incrementAndGet();
+                        continue;
+                    }
+                    // Count the time given up on, so a slowing server raises the timeouts
+                    mTimeoutCount.incrementAndGet();
+                    mLatencyTracker.record(timeoutMillis);
+                    throw new InterruptedIOException("No response within " + timeoutMillis
+                            + " ms");
+                }
+                pending--;
+
+                Request request = requests.remove(done);
+                call.remove(request);
+                HttpResponse response;
+                try {
+                    response = done.get();
+                } catch (ExecutionException e) {
+                    lastError = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                    continue;
+                }
+                int responseCode = response.getResponseCode();
+                if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                        || responseCode == HTTP_TOO_MANY_REQUESTS) {
+                    closeQuietly(response);
+                    lastError = new IOException("HTTP " + responseCode);
+                    continue;
+                }
+                mLatencyTracker.record(request.mLatencyMillis);
+                if (request != primary) {
+                    mHedgeWinCount.incrementAndGet();
+                }
+                return response;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        } finally {
+            // Leave the other requests behind, they are cancelled and their responses closed
+            for (Request request : requests.values()) {
+                call.remove(request);
+                request.abandon();
+            }
+        }
+        throw lastError;
+    }
+
+    private static void closeQuietly(HttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            // The response is thrown away, there is nothing left to do with the error
+        }
+    }
+
+    /**
+     * Returns the counters of the policy, for the logs.
+     */
+    public String getStats() {
+        return "Requests: " + mRequestCount.get() + ", retries: " + mRetryCount.get()
+                + ", timeouts: " + mTimeoutCount.get() + ", hedges: " + mHedgeCount.get()
+                + " (won " + mHedgeWinCount.get() + "), attempt timeout: "
+                + getAttemptTimeoutMillis() + " ms, hedge delay: " + getHedgeDelayMillis()
+                + " ms, last error: " + mLastError;
+    }
+
+    /**
+     * The attempts of a single call to {@link #get}, which are abandoned when the caller's
+     * CancellationSignal is cancelled.
+     */
+    private static final class Call implements CancellationSignal.OnCancelListener {
+        private final CancellationSignal mCancellationSignal;
+
+        /** Counted down on cancellation, which wakes up a backoff */
+        private final CountDownLatch mCanceled = new CountDownLatch(1);
+
+        /** Requests in flight */
+        private final ArrayList<Request> mRequests = new ArrayList<Request>();
+
+        Call(CancellationSignal cancellationSignal) {
+            mCancellationSignal = cancellationSignal;
+        }
+
+        @Override
+        public void onCancel() {
+            mCanceled.countDown();
+            synchronized (this) {
+                for (Request request : mRequests) {
+                    request.abandon();
+                }
+                mRequests.clear();
+            }
+        }
+
+        synchronized void add(Request request) {
+            if (isCanceled()) {
+                request.abandon();
+            } else {
+                mRequests.add(request);
+            }
+        }
+
+        synchronized void remove(Request request) {
+            mRequests.remove(request);
+        }
+
+        boolean isCanceled() {
+            return mCancellationSignal != null && mCancellationSignal.isCanceled();
+        }
+
+        void throwIfCanceled() {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.throwIfCanceled();
+            }
+        }
+    }
+
+    /**
+     * A single request to the delegate, which can be abandoned while it is in flight.
+     */
+    private final class Request implements Callable<HttpResponse> {
+        private final String mUrl;
+        private final Map<String, String> mRequestHeaders;
+
+        /** Cancelled when the request is abandoned, which aborts its connection */
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
+        private long mLatencyMillis;
+        private HttpResponse mResponse;
+        private boolean mAbandoned;
+
+        Request(String url, Map<String, String> requestHeaders) {
+            mUrl = url;
+            mRequestHeaders = requestHeaders;
+        }
+
+        @Override
+        public HttpResponse call() throws IOException {
+            long startTime = System.nanoTime();
+            HttpResponse response = mDelegate.get(mUrl, mRequestHeaders, mCancellationSignal);
+            synchronized (this) {
+                mLatencyMillis = (System.nanoTime() - startTime) / 1000000;
+                if (mAbandoned) {
+                    response.abort();
+                    return null;
+                }
+                mResponse = response;
+            }
+            return response;
+        }
+
+        /**
+         * Cancel this request and close its response, now or as soon as it arrives.
+         */
+        void abandon() {
+            synchronized (this) {
+                mAbandoned = true;
+                if (mResponse != null) {
+                    mResponse.abort();
+                    mResponse = null;
+                }
+            }
+            // Outside of the lock, as the cancellation waits for the delegate to drop its listener
+            mCancellationSignal.cancel();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.android.booklisting;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link SavedSearches} keeps the searches worth having ready before the user opens them: the
+ * ones the user pinned and the most recent others. They are stored in the shared preferences,
+ * and {@link SearchRefreshJobService} refreshes their results in the background, so that
+ * {@link BookItemLoader} can show a saved search from the local store at once. Changes are
+ * made on a background thread, one after the other, as the activities make them from the main
+ * thread.
+ */
+
+public final class SavedSearches {
+
+    /** Name of the shared preferences and their keys */
+    private static final String PREFERENCES_NAME = "saved_searches";
+    private static final String KEY_PINNED = "pinned";
+    private static final String KEY_RECENT = "recent";
+
+    /** Number of searches of each kind kept, which bounds the work of a refresh */
+    private static final int MAX_PINNED = 10;
+    private static final int MAX_RECENT = 5;
+
+    /** Stored results older than this aren't shown, the search waits for the network */
+    public static final long MAX_STORED_AGE_MILLIS = 2 * 24 * 60 * 60 * 1000L;
+
+    /** Separators of the fields of a search and of the searches of a list */
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String SEARCH_SEPARATOR = "\n";
+
+    /** Whether saved searches are shown from the local store, off to measure without it */
+    private static volatile boolean sStoredResultsEnabled = true;
+
+    /** Reads and writes the preferences for the changes, in the order they were made */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link SavedSearches}
+     * object.
+     */
+    private SavedSearches() {
+    }
+
+    /**
+     * Remember a search the user ran, as the most recent one, and make sure the background
+     * refresh is scheduled. Returns at once, the work is done on a background thread.
+     *
+     * @return whether the search was saved before with the same page size, so that the
+     *         background refresh has been keeping its results, and whether it is pinned
+     */
+    public static Future<SearchState> recordSearch(Context context, String title, String author,
+                                                   int pageSize) {
+        final Context appContext = context.getApplicationContext();
+        final Search search = new Search(title, author, pageSize);
+        return sExecutor.submit(new Callable<SearchState>() {
+            @Override
+            public SearchState call() {
+                if (search.isEmpty()) {
+                    return SearchState.UNSAVED;
+                }
+                boolean saved = isSaved(appContext, search);
+                SharedPreferences preferences = getPreferences(appContext);
+                boolean pinned = indexOf(read(preferences, KEY_PINNED), search) >= 0;
+                List<Search> recent = read(preferences, KEY_RECENT);
+                remove(recent, search);
+                recent.add(0, search);
+                write(preferences, KEY_RECENT, recent, MAX_RECENT);
+                SearchRefreshJobService.schedule(appContext);
+                return new SearchState(saved, pinned);
+            }
+        });
+    }
+
+    /**
+     * Returns the state recordSearch found, waiting for it if need be, or
+     * {@link SearchState#UNSAVED} if the saved searches couldn't be read.
+     */
+    public static SearchState getState(Future<SearchState> recordedSearch) {
+        try {
+            return recordedSearch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SearchState.UNSAVED;
+        } catch (ExecutionException e) {
+            return SearchState.UNSAVED;
+        }
+    }
+
+    /**
+     * Pin or unpin a search. Pinned searches are refreshed whatever else the user searches for.
+     * Returns at once, the work is done on a background thread.
+     */
+    public static void setPinned(Context context, String title, String author, int pageSize,
+                                 final boolean pinned) {
+        final Context appContext = context.getApplicationContext();
+        final Search search = new Search(title, author, pageSize);
+        if (search.isEmpty()) {
+            return;
+        }
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences preferences = getPreferences(appContext);
+                List<Search> pinnedSearches = read(preferences, KEY_PINNED);
+                remove(pinnedSearches, search);
+                if (pinned) {
+                    pinnedSearches.add(0, search);
+                }
+                write(preferences, KEY_PINNED, pinnedSearches, MAX_PINNED);
+                if (pinned) {
+                    SearchRefreshJobService.schedule(appContext);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns true if the search is pinned or recent with its page size, so that the background
+     * refresh keeps its results.
+     */
+    private static boolean isSaved(Context context, Search search) {
+        for (Search savedSearch : getAll(context)) {
+            if (savedSearch.matches(search) && savedSearch.mPageSize == search.mPageSize) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the searches to refresh, the pinned ones first.
+     */
+    public static List<Search> getAll(Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        List<Search> searches = read(preferences, KEY_PINNED);
+        for (Search search : read(preferences, KEY_RECENT)) {
+            if (indexOf(searches, search) < 0) {
+                searches.add(search);
+            }
+        }
+        return searches;
+    }
+
+    /**
+     * Turn showing saved searches from the local store on or off. With it off every search waits
+     * for the network, which gives the time to the first row to compare against.
+     */
+    public static void setStoredResultsEnabled(boolean enabled) {
+        sStoredResultsEnabled = enabled;
+    }
+
+    public static boolean isStoredResultsEnabled() {
+        return sStoredResultsEnabled;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static List<Search> read(SharedPreferences preferences, String key) {
+        List<Search> searches = new ArrayList<Search>();
+        String value = preferences.getString(key, null);
+        if (value == null || value.isEmpty()) {
+            return searches;
+        }
+        for (String line : value.split(SEARCH_SEPARATOR)) {
+            String[] fields = line.split(FIELD_SEPARATOR, -1);
+            if (fields.length != 3) {
+                continue;
+            }
+            try {
+                searches.add(new Search(fields[1], fields[2], Integer.parseInt(fields[0])));
+            } catch (NumberFormatException e) {
+                // Not written by this version, drop it
+            }
+        }
+        return searches;
+    }
+
+    private static void write(SharedPreferences preferences, String key, List<Search> searches,
+                              int maxCount) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < searches.size() && i < maxCount; i++) {
+            Search search = searches.get(i);
+            if (i > 0) {
+                value.append(SEARCH_SEPARATOR);
+            }
+            value.append(search.mPageSize).append(FIELD_SEPARATOR).append(search.mTitle)
+                    .append(FIELD_SEPARATOR).append(search.mAuthor);
+        }
+        preferences.edit().putString(key, value.toString()).apply();
+    }
+
+    private static int indexOf(List<Search> searches, Search search) {
+        for (int i = 0; i < searches.size(); i++) {
+            if (searches.get(i).matches(search)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void remove(List<Search> searches, Search search) {
+        int index = indexOf(searches, search);
+        if (index >= 0) {
+            searches.remove(index);
+        }
+    }
+
+    /**
+     * What recordSearch found out about a search before recording it.
+     */
+    public static final class SearchState {
+        /** State of a search which isn't saved, or whose state couldn't be read */
+        public static final SearchState UNSAVED = new SearchState(false, false);
+
+        private final boolean mSaved;
+        private final boolean mPinned;
+
+        private SearchState(boolean saved, boolean pinned) {
+            mSaved = saved;
+            mPinned = pinned;
+        }
+
+        /** Returns true if the background refresh has been keeping the search's results. */
+        public boolean isSaved() {
+            return mSaved;
+        }
+
+        /** Returns true if the user pinned the search. */
+        public boolean isPinned() {
+            return mPinned;
+        }
+    }
+
+    /**
+     * A saved search: the user's input and the number of results per page.
+     */
+    public static final class Search {
+        private final String mTitle;
+        private final String mAuthor;
+        private final int mPageSize;
+
+        private Search(String title, String author, int pageSize) {
+            mTitle = clean(title);
+            mAuthor = clean(author);
+            mPageSize = pageSize;
+        }
+
+        /** Trims the input and keeps the separators out of it */
+        private static String clean(String input) {
+            return input == null ? "" : input.replace(FIELD_SEPARATOR, " ")
+                    .replace(SEARCH_SEPARATOR, " ").trim();
+        }
+
+        public String getmTitle() {
+            return mTitle;
+        }
+
+        public String getmAuthor() {
+            return mAuthor;
+        }
+
+        public int getmPageSize() {
+            return mPageSize;
+        }
+
+        boolean isEmpty() {
+            return mTitle.isEmpty() && mAuthor.isEmpty();
+        }
+
+        /** Returns true if both are the same input, whatever their case and page size */
+        boolean matches(Search other) {
+            return mTitle.toLowerCase(Locale.ROOT).equals(other.mTitle.toLowerCase(Locale.ROOT))
+                    && mAuthor.toLowerCase(Locale.ROOT).equals(
+                    other.mAuthor.toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.android.booklisting;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.SystemClock;
+
+import java.util.HashSet;
+
+/**
+ * {@link ScrollPrefetcher} watches the scroll position and velocity of the results list and
+ * warms the rows about to be shown: their thumbnails are fetched into the memory cache and their
+ * text is formatted, for the next rows in the scroll direction. The faster the list scrolls, the
+ * further ahead it looks. Once the list comes to rest, the full volumes of the visible rows,
+ * the ones most likely to be opened, are prefetched for the detail screen. Prefetches for rows
+ * that left the window or the screen are cancelled, and nothing is prefetched on a metered
+ * network. Whether the network is metered is tracked from the connectivity broadcasts rather
+ * than asked for on every scroll event.
+ */
+
+public class ScrollPrefetcher {
+
+    /** Number of rows prefetched when the list scrolls slowly */
+    private static final int MIN_PREFETCH_ROWS = 4;
+
+    /** Upper bound of the number of rows prefetched */
+    private static final int MAX_PREFETCH_ROWS = 20;
+
+    /** How far ahead the prefetch window reaches at the current velocity */
+    private static final float LOOKAHEAD_SECONDS = 0.5f;
+
+    /** Whether rows are prefetched at all, off to measure without it */
+    private static volatile boolean sPrefetchEnabled = true;
+
+    private final Context mContext;
+    private final BookItemAdapter mAdapter;
+
+    /** Last observed first visible row and when it was observed */
+    private int mLastFirstVisibleItem;
+    private long mLastScrollTime;
+
+    /** Current prefetch window, end exclusive */
+    private int mWindowStart;
+    private int mWindowEnd;
+
+    /** Thumbnails being prefetched for the rows of the current window */
+    private HashSet<String> mPrefetchedUrls = new HashSet<String>();
+
+    /** Volumes being prefetched for the rows visible while the list was last at rest */
+    private HashSet<String> mPrefetchedVolumeIds = new HashSet<String>();
+
+    /** Whether the active network is metered, updated on every connectivity change */
+    private boolean mNetworkMetered;
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mNetworkMetered = isNetworkMetered();
+            if (mNetworkMetered) {
+                cancelPrefetches();
+            }
+        }
+    };
+
+    /**
+     * Create a prefetcher for the given list, which watches the network until {@link #cancel()}
+     * is called.
+     */
+    public ScrollPrefetcher(Context context, BookItemAdapter adapter) {
+        mContext = context;
+        mAdapter = adapter;
+        mNetworkMetered = isNetworkMetered();
+        context.registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Turn prefetching on or off. With it off rows only start loading when they are bound, which
+     * gives the placeholder-visible ratio to compare against.
+     */
+    public static void setPrefetchEnabled(boolean enabled) {
+        sPrefetchEnabled = enabled;
+    }
+
+    /**
+     * Called for every scroll event of the list.
+     */
+    public void onScroll(int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        long now = SystemClock.elapsedRealtime();
+        int rowsMoved = firstVisibleItem - mLastFirstVisibleItem;
+        long elapsedMillis = Math.max(1, now - mLastScrollTime);
+        mLastFirstVisibleItem = firstVisibleItem;
+        mLastScrollTime = now;
+        if (totalItemCount == 0) {
+            return;
+        }
+
+        // Don't spend the user's data on rows that may never be shown
+        if (!sPrefetchEnabled || mNetworkMetered) {
+            updateWindow(0, 0);
+            return;
+        }
+
+        // Look further ahead the faster the list moves
+        float rowsPerSecond = Math.abs(rowsMoved) * 1000f / elapsedMillis;
+        int prefetchRows = Math.min(MAX_PREFETCH_ROWS,
+                MIN_PREFETCH_ROWS + (int) (rowsPerSecond * LOOKAHEAD_SECONDS));
+        if (rowsMoved < 0) {
+            updateWindow(Math.max(0, firstVisibleItem - prefetchRows), firstVisibleItem);
+        } else {
+            int lastVisibleItem = firstVisibleItem + visibleItemCount;
+            updateWindow(lastVisibleItem, Math.min(totalItemCount, lastVisibleItem + prefetchRows));
+        }
+    }
+
+    /**
+     * Move the prefetch window, cancelling the rows that left it and warming the ones that
+     * entered it.
+     */
+    private void updateWindow(int windowStart, int windowEnd) {
+        if (windowStart == mWindowStart && windowEnd == mWindowEnd) {
+            return;
+        }
+        mWindowStart = windowStart;
+        mWindowEnd = windowEnd;
+
+        HashSet<String> prefetchedUrls = new HashSet<String>();
+        int count = Math.min(windowEnd, mAdapter.getItemCount());
+        for (int position = windowStart; position < count; position++) {
+            BookItem bookItem = mAdapter.getItem(position);
+            // Format the row text now rather than while binding the row
+            bookItem.getmPageCount();
+            String url = bookItem.getmSmallThumbnailURL();
+            if (url != null) {
+                prefetchedUrls.add(url);
+                if (!mPrefetchedUrls.contains(url)) {
+                    ThumbnailLoader.prefetch(mContext, url);
+                }
+            }
+        }
+        for (String url : mPrefetchedUrls) {
+            if (!prefetchedUrls.contains(url)) {
+                ThumbnailLoader.cancelPrefetch(mContext, url);
+            }
+        }
+        mPrefetchedUrls = prefetchedUrls;
+    }
+
+    /**
+     * Called when the list has come to rest with the given rows visible, both inclusive.
+     */
+    public void onSettled(int firstVisibleItem, int lastVisibleItem) {
+        if (!sPrefetchEnabled || mNetworkMetered) {
+            updateVolumes(0, -1);
+        } else {
+            updateVolumes(firstVisibleItem, Math.min(lastVisibleItem,
+                    firstVisibleItem + MAX_PREFETCH_ROWS - 1));
+        }
+    }
+
+    /**
+     * Prefetch the volumes of the given rows, both inclusive, and cancel the ones of rows that
+     * are no longer visible.
+     */
+    private void updateVolumes(int firstItem, int lastItem) {
+        HashSet<String> prefetchedVolumeIds = new HashSet<String>();
+        int count = Math.min(lastItem + 1, mAdapter.getItemCount());
+        for (int position = Math.max(0, firstItem); position < count; position++) {
+            String volumeId = mAdapter.getItem(position).getmId();
+            if (volumeId != null) {
+                prefetchedVolumeIds.add(volumeId);
+                if (!mPrefetchedVolumeIds.contains(volumeId)) {
+                    BookDetails.prefetch(volumeId);
+                }
+            }
+        }
+        for (String volumeId : mPrefetchedVolumeIds) {
+            if (!prefetchedVolumeIds.contains(volumeId)) {
+                BookDetails.cancelPrefetch(volumeId);
+            }
+        }
+        mPrefetchedVolumeIds = prefetchedVolumeIds;
+    }
+
+    private boolean isNetworkMetered() {
+        ConnectivityManager connMgr = (ConnectivityManager)
+                mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connMgr == null || connMgr.isActiveNetworkMetered();
+    }
+
+    /**
+     * Cancel all prefetches and stop watching the network, when the list goes away.
+     */
+    public void cancel() {
+        mContext.unregisterReceiver(mConnectivityReceiver);
+        cancelPrefetches();
+    }
+
+    private void cancelPrefetches() {
+        updateWindow(0, 0);
+        updateVolumes(0, -1);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.android.booklisting;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link SearchRefreshJobService} refreshes the results of the {@link SavedSearches} while the
+ * device is idle, charging and on an unmetered network, so that opening one of them is served
+ * from the {@link BookResponseCache} instead of a cold round trip. Every run fetches the pages a
+ * search shows when it is opened, for all the saved searches at once, so that the radio wakes
+ * up once per window rather than once per search. Fresh responses are skipped by the cache and
+ * stale ones are revalidated, which costs little when nothing changed.
+ */
+
+public class SearchRefreshJobService extends JobService {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = SearchRefreshJobService.class.getSimpleName();
+
+    /** ID of the job, unique within the app */
+    private static final int JOB_ID = 1;
+
+    /** The job runs at most once per interval, when its constraints allow it */
+    private static final long REFRESH_INTERVAL_MILLIS = 6 * 60 * 60 * 1000L;
+
+    /** Runs the refreshes one after the other, a refresh fans out on sFetchExecutor */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Fetches the queries of a refresh, shared by the runs rather than created for each. It is
+     * kept apart from the pool of the {@link ConcurrentFetcher}, which a query larger than a
+     * single request fans out on, so that a refresh never waits on a pool it occupies.
+     */
+    private static final ExecutorService sFetchExecutor = ConcurrentFetcher.newBoundedExecutor(
+            "search-refresh", QueryUtils.DEFAULT_PARALLELISM);
+
+    /** Whether this process has made sure the job is scheduled, which lasts across reboots */
+    private static final AtomicBoolean sScheduled = new AtomicBoolean();
+
+    /** Signals of the requests of the refresh in progress, cancelled when the job is stopped */
+    private final ArrayList<CancellationSignal> mCancellationSignals =
+            new ArrayList<CancellationSignal>();
+
+    /**
+     * Schedule the periodic refresh unless it is already scheduled. Only the first call of a
+     * process asks the JobScheduler, which takes a call to the system server.
+     */
+    public static void schedule(Context context) {
+        if (sScheduled.getAndSet(true)) {
+            return;
+        }
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo pendingJob : jobScheduler.getAllPendingJobs()) {
+            if (pendingJob.getId() == JOB_ID) {
+                return;
+            }
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, SearchRefreshJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(REFRESH_INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Error scheduling the refresh of the saved searches");
+            // Try again on the next search
+            sScheduled.set(false);
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        // The job may run in a process the MainActivity never started in
+        QueryUtils.setContext(this);
+        final List<BookQuery> queries = getQueries(SavedSearches.getAll(this));
+        if (queries.isEmpty()) {
+            return false;
+        }
+        synchronized (mCancellationSignals) {
+            mCancellationSignals.clear();
+            for (int i = 0; i < queries.size(); i++) {
+                mCancellationSignals.add(new CancellationSignal());
+            }
+        }
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int failedCount = refresh(queries);
+                // When nothing could be fetched, try again with the scheduler's back-off
+                jobFinished(params, failedCount == queries.size());
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints no longer hold, e.g. the user woke the device up
+        synchronized (mCancellationSignals) {
+            for (CancellationSignal cancellationSignal : mCancellationSignals) {
+                cancellationSignal.cancel();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the pages shown when each of the searches is opened: the first page and the one
+     * after it, which the list asks for right away.
+     */
+    private static List<BookQuery> getQueries(List<SavedSearches.Search> searches) {
+        List<BookQuery> queries = new ArrayList<BookQuery>(searches.size() * 2);
+        for (SavedSearches.Search search : searches) {
+            BookQuery firstPage = BookListActivity.firstPageQuery(search.getmTitle(),
+                    search.getmAuthor(), search.getmPageSize());
+            if (firstPage.isEmpty()) {
+                continue;
+            }
+            queries.add(firstPage);
+            queries.add(BookListActivity.nextPageQuery(firstPage, search.getmPageSize(),
+                    BookListActivity.firstPageSize(search.getmPageSize())));
+        }
+        return queries;
+    }
+
+    /**
+     * Fetch all the queries on a few threads at the same time, each into the response cache.
+     * Returns the number of queries that failed.
+     */
+    private int refresh(List<BookQuery> queries) {
+        long startTime = System.nanoTime();
+        List<Future<ArrayList<BookItem>>> results =
+                new ArrayList<Future<ArrayList<BookItem>>>(queries.size());
+        int failedCount = 0;
+        try {
+            for (int i = 0; i < queries.size(); i++) {
+                final BookQuery query = queries.get(i);
+                final CancellationSignal cancellationSignal;
+                synchronized (mCancellationSignals) {
+                    cancellationSignal = mCancellationSignals.get(i);
+                }
+                results.add(sFetchExecutor.submit(new Callable<ArrayList<BookItem>>() {
+                    @Override
+                    public ArrayList<BookItem> call() {
+                        return QueryUtils.fetchQuery(query, cancellationSignal);
+                    }
+                }));
+            }
+            for (Future<ArrayList<BookItem>> result : results) {
+                try {
+                    if (result.get() == null) {
+                        failedCount++;
+                    }
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof OperationCanceledException)) {
+                        Log.e(LOG_TAG, "Problem refreshing a saved search", e);
+                    }
+                    failedCount++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return queries.size();
+        } finally {
+            // Stop the fetches still running when the wait was interrupted
+            for (Future<ArrayList<BookItem>> result : results) {
+                result.cancel(true);
+            }
+        }
+        Log.v(LOG_TAG, "Refreshed " + (queries.size() - failedCount) + " of " + queries.size()
+                + " pages of saved searches in " + (System.nanoTime() - startTime) / 1000000
+                + " ms");
+        return failedCount;
+    }
+}
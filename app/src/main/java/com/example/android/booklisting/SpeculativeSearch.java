@@ -0,0 +1,171 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link SpeculativeSearch} runs the search the user is typing before the search button is
+ * tapped. Keystrokes are debounced, the query is fetched off the main thread and a query that is
+ * superseded by a newer keystroke is cancelled. The result ends up in the {@link BookResultCache}
+ * (or, if it is still in flight, is shared through the {@link RequestCoalescer}), so that
+ * {@link BookListActivity} finds it warm.
+ */
+
+public class SpeculativeSearch {
+
+    /** Time without keystrokes after which the query is fired */
+    public static final long DEBOUNCE_MILLIS = 400;
+
+    /** Queries shorter than this are too vague to be worth fetching */
+    private static final int MIN_QUERY_LENGTH = 3;
+
+    /** Thread running the speculative queries, one at a time */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    /** Queries whose result was fetched speculatively and hasn't been used yet */
+    private static final Set<String> sWarmQueries =
+            Collections.synchronizedSet(new HashSet<String>());
+
+    /** Queries being fetched speculatively, which a search joins through the coalescer */
+    private static final Set<String> sRunningQueries =
+            Collections.synchronizedSet(new HashSet<String>());
+
+    /** Counters used to tune the debounce window */
+    private static final AtomicInteger sKeystrokeCount = new AtomicInteger();
+    private static final AtomicInteger sRequestCount = new AtomicInteger();
+    private static final AtomicInteger sSearchCount = new AtomicInteger();
+    private static final AtomicInteger sHitCount = new AtomicInteger();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Query waiting for the debounce window to pass */
+    private BookQuery mPendingQuery;
+
+    /** Signal of the speculative query in flight */
+    private CancellationSignal mCancellationSignal;
+
+    private final Runnable mFireQuery = new Runnable() {
+        @Override
+        public void run() {
+            fire(mPendingQuery);
+        }
+    };
+
+    /**
+     * Called on the main thread for every keystroke.
+     *
+     * @param titleInput is the current title input
+     * @param authorInput is the current author input
+     * @param resultNumber is the number of results chosen by the user
+     */
+    public void onQueryChanged(String titleInput, String authorInput, String resultNumber) {
+        sKeystrokeCount.incrementAndGet();
+        mHandler.removeCallbacks(mFireQuery);
+        if (titleInput.trim().length() + authorInput.trim().length() < MIN_QUERY_LENGTH) {
+            cancel();
+            return;
+        }
+        // Build the same first page query BookListActivity will load
+        mPendingQuery = BookListActivity.firstPageQuery(titleInput, authorInput,
+                Integer.parseInt(resultNumber));
+        mHandler.postDelayed(mFireQuery, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Stop the pending and the running speculative query.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mFireQuery);
+        mPendingQuery = null;
+        if (mCancellationSignal != null) {
+            mCancellationSignal.cancel();
+            mCancellationSignal = null;
+        }
+    }
+
+    private void fire(final BookQuery query) {
+        // The previous query has been superseded
+        cancel();
+        if (query == null || BookResultCache.get(query) != null) {
+            return;
+        }
+        sRequestCount.incrementAndGet();
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        mCancellationSignal = cancellationSignal;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (cancellationSignal.isCanceled()) {
+                    return;
+                }
+                sRunningQueries.add(query.getKey());
+                try {
+                    ArrayList<BookItem> bookItems = QueryUtils.fetchBookData(query,
+                            cancellationSignal);
+                    if (bookItems != null) {
+                        BookResultCache.put(query, bookItems);
+                        sWarmQueries.add(query.getKey());
+                    }
+                } catch (OperationCanceledException e) {
+                    // Superseded by a newer keystroke
+                } finally {
+                    sRunningQueries.remove(query.getKey());
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when a search is started, to count how many searches found their result warm, in
+     * the cache or still being fetched, in which case the search joins that fetch.
+     */
+    public static void onSearchStarted(BookQuery query) {
+        sSearchCount.incrementAndGet();
+        String key = query.getKey();
+        boolean cached = sWarmQueries.remove(key);
+        if (cached || sRunningQueries.contains(key)) {
+            sHitCount.incrementAndGet();
+        }
+    }
+
+    public static int getKeystrokeCount() {
+        return sKeystrokeCount.get();
+    }
+
+    public static int getRequestCount() {
+        return sRequestCount.get();
+    }
+
+    /** Returns the average number of keystrokes per speculative request. */
+    public static float getKeystrokesPerRequest() {
+        int requests = sRequestCount.get();
+        return requests == 0 ? 0 : (float) sKeystrokeCount.get() / requests;
+    }
+
+    /** Returns the fraction of searches whose result had been fetched speculatively. */
+    public static float getHitRate() {
+        int searches = sSearchCount.get();
+        return searches == 0 ? 0 : (float) sHitCount.get() / searches;
+    }
+
+    /**
+     * Returns the keystrokes per speculative request and the share of searches found warm, for
+     * the logs.
+     */
+    public static String getStats() {
+        return "Speculative search: " + String.format(Locale.US, "%.1f", getKeystrokesPerRequest())
+                + " keystrokes per request, " + (int) (100 * getHitRate())
+                + "% of searches found warm";
+    }
+}
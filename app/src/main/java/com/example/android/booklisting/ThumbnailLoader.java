@@ -0,0 +1,180 @@
+package com.example.android.booklisting;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.StatsSnapshot;
+import com.squareup.picasso.UrlConnectionDownloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ThumbnailLoader} loads the book covers shown in the list. Covers are decoded at the size
+ * of the row's ImageView (@dimen/width_images x @dimen/height_images) instead of at full size,
+ * decoded bitmaps are kept in a memory cache capped at a fraction of the heap and the encoded
+ * bytes in a disk cache. All requests share one tag so they can be paused while the list flings.
+ */
+
+public final class ThumbnailLoader {
+
+    /** Tag shared by all thumbnail requests */
+    private static final Object TAG = ThumbnailLoader.class;
+
+    /** Use 1/8th of the available heap for decoded thumbnails */
+    private static final int MEMORY_CACHE_HEAP_FRACTION = 8;
+
+    private static Picasso sPicasso;
+    private static LruCache sMemoryCache;
+
+    /** Prefix of the tags of prefetch requests, which are tagged per URL */
+    private static final String PREFETCH_TAG_PREFIX = "prefetch:";
+
+    /** Number and total duration of the loads that missed the memory cache */
+    private static final AtomicLong sLoadCount = new AtomicLong();
+    private static final AtomicLong sTotalLoadMillis = new AtomicLong();
+
+    /** Number of rows bound and how many of them had to show the placeholder */
+    private static final AtomicLong sBindCount = new AtomicLong();
+    private static final AtomicLong sPlaceholderCount = new AtomicLong();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ThumbnailLoader}
+     * object.
+     */
+    private ThumbnailLoader() {
+    }
+
+    static synchronized Picasso getPicasso(Context context) {
+        if (sPicasso == null) {
+            Context applicationContext = context.getApplicationContext();
+            sMemoryCache = new LruCache((int) (Runtime.getRuntime().maxMemory()
+                    / MEMORY_CACHE_HEAP_FRACTION));
+            sPicasso = new Picasso.Builder(applicationContext)
+                    .memoryCache(sMemoryCache)
+                    // Keeps the encoded bytes in an HTTP response cache in the cache dir
+                    .downloader(new UrlConnectionDownloader(applicationContext))
+                    .build();
+        }
+        return sPicasso;
+    }
+
+    /**
+     * Load the thumbnail at url into the ImageView of a list row. A request still running for a
+     * recycled row is cancelled by Picasso when the ImageView gets its new request.
+     */
+    public static void load(ImageView imageView, String url) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final boolean[] fromMemoryCache = new boolean[1];
+        request(imageView.getContext(), url)
+                .placeholder(R.mipmap.ic_launcher)
+                .error(R.drawable.no_thumbnail)
+                .tag(TAG)
+                .into(imageView, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        // Memory cache hits call back synchronously and aren't counted
+                        fromMemoryCache[0] = true;
+                        long loadMillis = SystemClock.elapsedRealtime() - startTime;
+                        if (loadMillis > 0) {
+                            sLoadCount.incrementAndGet();
+                            sTotalLoadMillis.addAndGet(loadMillis);
+                        }
+                    }
+
+                    @Override
+                    public void onError() {
+                    }
+                });
+        // Anything not served synchronously from memory shows the placeholder for a while
+        sBindCount.incrementAndGet();
+        if (!fromMemoryCache[0]) {
+            sPlaceholderCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Warm the memory cache with the thumbnail at url, decoded exactly like a list row would
+     * decode it so that the row finds it in the cache.
+     */
+    public static void prefetch(Context context, String url) {
+        request(context, url)
+                .priority(Picasso.Priority.LOW)
+                .tag(PREFETCH_TAG_PREFIX + url)
+                .fetch();
+    }
+
+    /**
+     * Cancel the prefetch of the thumbnail at url.
+     */
+    public static void cancelPrefetch(Context context, String url) {
+        getPicasso(context).cancelTag(PREFETCH_TAG_PREFIX + url);
+    }
+
+    /**
+     * Returns the request shared by rows and prefetches, so both use the same cache key.
+     */
+    private static RequestCreator request(Context context, String url) {
+        return getPicasso(context)
+                .load(url)
+                .resizeDimen(R.dimen.width_images, R.dimen.height_images)
+                .centerInside()
+                .onlyScaleDown();
+    }
+
+    /** Returns the fraction of bound rows that had to show the placeholder. */
+    public static float getPlaceholderRatio() {
+        long binds = sBindCount.get();
+        return binds == 0 ? 0 : (float) sPlaceholderCount.get() / binds;
+    }
+
+    /**
+     * Empty the memory cache and reset the counters, so that the next rows are measured from a
+     * cold start. The disk cache is kept.
+     */
+    public static void resetStats(Context context) {
+        getPicasso(context);
+        sMemoryCache.clear();
+        sLoadCount.set(0);
+        sTotalLoadMillis.set(0);
+        sBindCount.set(0);
+        sPlaceholderCount.set(0);
+    }
+
+    /**
+     * Cancel the request of a recycled row that doesn't have a thumbnail to show.
+     */
+    public static void cancel(ImageView imageView) {
+        getPicasso(imageView.getContext()).cancelRequest(imageView);
+    }
+
+    /** Stop submitting thumbnail requests, e.g. while the list flings. */
+    public static void pause(Context context) {
+        getPicasso(context).pauseTag(TAG);
+    }
+
+    /** Resume the thumbnail requests held back by pause. */
+    public static void resume(Context context) {
+        getPicasso(context).resumeTag(TAG);
+    }
+
+    /**
+     * Returns the memory cache hit ratio, the bytes of decoded bitmaps held, the average time
+     * a thumbnail that missed the memory cache took to download and decode and the fraction of
+     * rows bound while their thumbnail wasn't ready.
+     */
+    public static String getStats(Context context) {
+        StatsSnapshot snapshot = getPicasso(context).getSnapshot();
+        long requests = snapshot.cacheHits + snapshot.cacheMisses;
+        long loads = sLoadCount.get();
+        return "Thumbnail cache hit ratio: "
+                + (requests == 0 ? 0 : 100 * snapshot.cacheHits / requests) + "%"
+                + ", bitmap bytes held: " + snapshot.size + "/" + snapshot.maxSize
+                + ", average load time: " + (loads == 0 ? 0 : sTotalLoadMillis.get() / loads)
+                + " ms, placeholder visible: " + (int) (100 * getPlaceholderRatio()) + "%";
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * {@link UrlConnectionTransport} is the default {@link HttpTransport}, built on
+ * {@link HttpURLConnection}. Connections are never disconnected after a successful request:
+ * closing the fully read body hands the socket back to the platform's keep-alive pool, and all
+ * HTTPS connections share one socket factory so that TLS sessions are resumed instead of
+ * negotiated from scratch. Responses are requested gzip-encoded and decoded transparently.
+ */
+
+public class UrlConnectionTransport implements HttpTransport {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = UrlConnectionTransport.class.getSimpleName();
+
+    /** Number of idle connections kept alive per host, unless configured otherwise */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+
+    /** Number of TLS sessions kept for resumption */
+    private static final int TLS_SESSION_CACHE_SIZE = 16;
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+
+    /** Socket factory shared by all HTTPS connections, so its session cache is shared too */
+    private final SSLSocketFactory mSslSocketFactory;
+
+    public UrlConnectionTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+        mSslSocketFactory = createSslSocketFactory();
+    }
+
+    /**
+     * Turn on the platform's keep-alive pool and keep up to maxIdleConnections idle connections
+     * per host. The pool is shared by every {@link HttpURLConnection} of the process and reads
+     * these settings once, when it is first used, so this isn't tunable per transport: call it
+     * once at process start, before the first request.
+     */
+    public static void configureKeepAlive(int maxIdleConnections) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(maxIdleConnections));
+    }
+
+    private static SSLSocketFactory createSslSocketFactory() {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            sslContext.getClientSessionContext().setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+            return sslContext.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            Log.e(LOG_TAG, "Error creating the TLS context, using the default one", e);
+            return HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+    }
+
+    @Override
+    public HttpResponse get(String url, Map<String, String> requestHeaders,
+                            CancellationSignal cancellationSignal) throws IOException {
+        if (cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
+        }
+        long startTime = System.nanoTime();
+        final HttpURLConnection urlConnection = (HttpURLConnection) new URL(url).openConnection();
+        boolean success = false;
+        if (cancellationSignal != null) {
+            // Dropping the connection unblocks a connect or a wait for the status line
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    urlConnection.disconnect();
+                }
+            });
+        }
+        try {
+            if (urlConnection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) urlConnection).setSSLSocketFactory(mSslSocketFactory);
+            }
+            urlConnection.setReadTimeout(mReadTimeoutMillis);
+            urlConnection.setConnectTimeout(mConnectTimeoutMillis);
+            urlConnection.setRequestMethod("GET");
+            // Setting Accept-Encoding ourselves means we also have to decode the body ourselves
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    urlConnection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            urlConnection.connect();
+            long connectMillis = (System.nanoTime() - startTime) / 1000000;
+
+            // getResponseCode() blocks until the status line has been received
+            int responseCode = urlConnection.getResponseCode();
+            long timeToFirstByteMillis = (System.nanoTime() - startTime) / 1000000;
+            if (cancellationSignal != null) {
+                // Cancelled before the connection was opened, which disconnect doesn't prevent
+                cancellationSignal.throwIfCanceled();
+            }
+
+            InputStream body = responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? urlConnection.getInputStream() : urlConnection.getErrorStream();
+            CountingInputStream wireBody = null;
+            if (body != null) {
+                wireBody = new CountingInputStream(body);
+                body = wireBody;
+                if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                    body = new GZIPInputStream(body);
+                }
+            }
+            HttpResponse response = new HttpResponse(responseCode, readHeaders(urlConnection),
+                    body, connectMillis, timeToFirstByteMillis, wireBody) {
+                @Override
+                public void abort() {
+                    // Closing the socket is the only way to unblock a read on another thread
+                    urlConnection.disconnect();
+                }
+            };
+            success = true;
+            return response;
+        } catch (IOException e) {
+            // A connection dropped by the cancellation fails with an IOException, report it as the
+            // cancellation it is
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            throw e;
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+            // A failed connection can't be reused, so drop it instead of returning it to the pool
+            if (!success) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    private static Map<String, String> readHeaders(HttpURLConnection urlConnection) {
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : urlConnection.getHeaderFields().entrySet()) {
+            // The status line is returned with a null key
+            if (header.getKey() != null && !header.getValue().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+}
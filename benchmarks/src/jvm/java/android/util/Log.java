@@ -0,0 +1,97 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * {@link Log} replaces the framework's Log when the app's classes run on a plain JVM. The one of
+ * android-all hands every message to the native logger, which only the Android runtime has. This
+ * one writes warnings and errors to the standard error stream, in the format of logcat, and drops
+ * the rest, as the framework does below the default level of isLoggable.
+ */
+
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    /** Lowest priority written, the framework's default of isLoggable */
+    private static final int MIN_PRIORITY = INFO;
+
+    private static final String PRIORITY_LETTERS = "??VDIWEA";
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return println(VERBOSE, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println(DEBUG, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return println(INFO, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return println(WARN, tag, getStackTraceString(tr));
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return level >= MIN_PRIORITY;
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        StringWriter stackTrace = new StringWriter();
+        PrintWriter writer = new PrintWriter(stackTrace);
+        tr.printStackTrace(writer);
+        writer.flush();
+        return stackTrace.toString();
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        if (priority < MIN_PRIORITY) {
+            return 0;
+        }
+        String line = PRIORITY_LETTERS.charAt(Math.min(priority, ASSERT)) + "/" + tag + ": " + msg;
+        System.err.println(line);
+        return line.length();
+    }
+}
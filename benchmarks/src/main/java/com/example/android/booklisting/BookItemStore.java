@@ -0,0 +1,257 @@
+package com.example.android.booklisting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * {@link BookItemStore} holds a large number of books as columns instead of one {@link BookItem}
+ * object per book. Page counts are kept in an int array, authors and languages are stored once in
+ * a shared string table and referenced by index, and the page count text is only formatted when a
+ * row asks for it. It is a candidate layout for very large result sets which the app doesn't use,
+ * so it lives with the benchmarks that weigh it against the list of {@link BookItem}s. Columns are
+ * read by row index, and {@link #getBookItem} turns a row back into the {@link BookItem} it was
+ * built from, its alternates included.
+ */
+
+public final class BookItemStore {
+
+    /** Capacity of a new store */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /** Number of books in the store */
+    private int mSize;
+
+    /** Columns holding one value per book */
+    private String[] mIds;
+    private String[] mSmallThumbnailURLs;
+    private String[] mPreviewURLs;
+    private String[] mTitles;
+    private String[] mDescriptions;
+    private int[] mPageCounts;
+
+    /** Other editions of each row, shared with the books they came from */
+    private List<BookItem>[] mAlternates;
+
+    /** Indexes into the string table, -1 for null */
+    private int[] mAuthorRefs;
+    private int[] mLanguageRefs;
+
+    /** Page count text, formatted on first use */
+    private String[] mPageCountTexts;
+
+    /** Deduplicated authors and languages */
+    private final StringTable mStrings = new StringTable();
+
+    public BookItemStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BookItemStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        mIds = new String[capacity];
+        mSmallThumbnailURLs = new String[capacity];
+        mPreviewURLs = new String[capacity];
+        mTitles = new String[capacity];
+        mDescriptions = new String[capacity];
+        mPageCounts = new int[capacity];
+        mAlternates = newListArray(capacity);
+        mAuthorRefs = new int[capacity];
+        mLanguageRefs = new int[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<BookItem>[] newListArray(int capacity) {
+        return (List<BookItem>[]) new List[capacity];
+    }
+
+    /**
+     * Append a book without alternates and return its row index.
+     */
+    public int add(String id, String smallThumbnailURL, String previewURL, String title,
+                   String author, int pageCount, String language, String description) {
+        return add(id, smallThumbnailURL, previewURL, title, author, pageCount, language,
+                description, Collections.<BookItem>emptyList());
+    }
+
+    private int add(String id, String smallThumbnailURL, String previewURL, String title,
+                    String author, int pageCount, String language, String description,
+                    List<BookItem> alternates) {
+        if (mSize == mIds.length) {
+            grow();
+        }
+        int index = mSize++;
+        mIds[index] = id;
+        mSmallThumbnailURLs[index] = smallThumbnailURL;
+        mPreviewURLs[index] = previewURL;
+        mTitles[index] = title;
+        mDescriptions[index] = description;
+        mPageCounts[index] = pageCount;
+        mAlternates[index] = alternates;
+        mAuthorRefs[index] = mStrings.add(author);
+        mLanguageRefs[index] = mStrings.add(language);
+        return index;
+    }
+
+    /**
+     * Append a book and its alternates and return its row index.
+     */
+    public int add(BookItem bookItem) {
+        return add(bookItem.getmId(), bookItem.getmSmallThumbnailURL(),
+                bookItem.getmPreviewURL(), bookItem.getmTitle(), bookItem.getmAuthor(),
+                bookItem.getPageCountValue(), bookItem.getmLanguage(),
+                bookItem.getmDescription(), bookItem.getmAlternates());
+    }
+
+    /**
+     * Append all the given books.
+     */
+    public void addAll(List<BookItem> bookItems) {
+        ensureCapacity(mSize + bookItems.size());
+        for (int i = 0; i < bookItems.size(); i++) {
+            add(bookItems.get(i));
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        while (mIds.length < capacity) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        int capacity = mIds.length + (mIds.length >> 1) + 1;
+        mIds = Arrays.copyOf(mIds, capacity);
+        mSmallThumbnailURLs = Arrays.copyOf(mSmallThumbnailURLs, capacity);
+        mPreviewURLs = Arrays.copyOf(mPreviewURLs, capacity);
+        mTitles = Arrays.copyOf(mTitles, capacity);
+        mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+        mPageCounts = Arrays.copyOf(mPageCounts, capacity);
+        mAlternates = Arrays.copyOf(mAlternates, capacity);
+        mAuthorRefs = Arrays.copyOf(mAuthorRefs, capacity);
+        mLanguageRefs = Arrays.copyOf(mLanguageRefs, capacity);
+        if (mPageCountTexts != null) {
+            mPageCountTexts = Arrays.copyOf(mPageCountTexts, capacity);
+        }
+    }
+
+    /** Returns the number of books in the store. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Returns the number of distinct authors and languages. */
+    public int getDistinctStringCount() {
+        return mStrings.size();
+    }
+
+    public String getId(int index) {
+        checkIndex(index);
+        return mIds[index];
+    }
+
+    public String getSmallThumbnailURL(int index) {
+        checkIndex(index);
+        return mSmallThumbnailURLs[index];
+    }
+
+    public String getPreviewURL(int index) {
+        checkIndex(index);
+        return mPreviewURLs[index];
+    }
+
+    public String getTitle(int index) {
+        checkIndex(index);
+        return mTitles[index];
+    }
+
+    public String getAuthor(int index) {
+        checkIndex(index);
+        return mStrings.get(mAuthorRefs[index]);
+    }
+
+    public String getPageCountText(int index) {
+        checkIndex(index);
+        if (mPageCountTexts == null) {
+            // Only allocated once a row is shown
+            mPageCountTexts = new String[mIds.length];
+        }
+        String pageCountText = mPageCountTexts[index];
+        if (pageCountText == null) {
+            pageCountText = String.valueOf(mPageCounts[index]);
+            mPageCountTexts[index] = pageCountText;
+        }
+        return pageCountText;
+    }
+
+    public int getPageCount(int index) {
+        checkIndex(index);
+        return mPageCounts[index];
+    }
+
+    public String getLanguage(int index) {
+        checkIndex(index);
+        return mStrings.get(mLanguageRefs[index]);
+    }
+
+    public String getDescription(int index) {
+        checkIndex(index);
+        return mDescriptions[index];
+    }
+
+    public List<BookItem> getAlternates(int index) {
+        checkIndex(index);
+        return mAlternates[index];
+    }
+
+    /**
+     * Returns the book at the given row as a {@link BookItem} with its alternates, e.g. to hand it
+     * to code that works on single books.
+     */
+    public BookItem getBookItem(int index) {
+        checkIndex(index);
+        return new BookItem(mIds[index], mSmallThumbnailURLs[index], mPreviewURLs[index],
+                mTitles[index], getAuthor(index), mPageCounts[index], getLanguage(index),
+                mDescriptions[index]).withAlternates(mAlternates[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+    }
+
+    /**
+     * Table of distinct strings, each referenced by its index.
+     */
+    private static final class StringTable {
+        private final HashMap<String, Integer> mIndexes = new HashMap<String, Integer>();
+        private String[] mStrings = new String[16];
+
+        int add(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = mIndexes.get(value);
+            if (index != null) {
+                return index;
+            }
+            int newIndex = mIndexes.size();
+            if (newIndex == mStrings.length) {
+                mStrings = Arrays.copyOf(mStrings, newIndex * 2);
+            }
+            mStrings[newIndex] = value;
+            mIndexes.put(value, newIndex);
+            return newIndex;
+        }
+
+        String get(int index) {
+            return index < 0 ? null : mStrings[index];
+        }
+
+        int size() {
+            return mIndexes.size();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.android.booklisting.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * {@link BenchmarkRunner} runs the benchmarks with the allocation profiler and either just
+ * reports them, stores their average time and allocation per operation as the baseline, or
+ * compares them against a stored baseline and exits with an error on a regression.
+ *
+ * <p>Usage: {@code BenchmarkRunner [--include regex] [--record file | --check file]
+ * [--time-tolerance fraction] [--alloc-tolerance fraction]}
+ */
+
+public final class BenchmarkRunner {
+
+    /** A benchmark may be this much slower than its baseline before it counts as a regression */
+    private static final double DEFAULT_TIME_TOLERANCE = 0.15;
+
+    /** Allocation barely varies between runs, so it gets a much tighter tolerance */
+    private static final double DEFAULT_ALLOC_TOLERANCE = 0.05;
+
+    /** Suffixes of the baseline keys */
+    private static final String TIME_SUFFIX = ".us_per_op";
+    private static final String ALLOC_SUFFIX = ".bytes_per_op";
+
+    /** Name of the secondary result of the allocation profiler, after its "·gc." prefix */
+    private static final String ALLOC_RESULT = "gc.alloc.rate.norm";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        String include = BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+        File recordFile = null;
+        File checkFile = null;
+        double timeTolerance = DEFAULT_TIME_TOLERANCE;
+        double allocTolerance = DEFAULT_ALLOC_TOLERANCE;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--include") && i + 1 < args.length) {
+                include = args[++i];
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                recordFile = new File(args[++i]);
+            } else if (args[i].equals("--check") && i + 1 < args.length) {
+                checkFile = new File(args[++i]);
+            } else if (args[i].equals("--time-tolerance") && i + 1 < args.length) {
+                timeTolerance = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--alloc-tolerance") && i + 1 < args.length) {
+                allocTolerance = Double.parseDouble(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        // Read the baseline first, so that a missing one fails before the long run
+        Properties baseline = null;
+        if (checkFile != null) {
+            if (!checkFile.isFile()) {
+                System.err.println("No baseline at " + checkFile + ", record one with --record");
+                System.exit(2);
+            }
+            baseline = load(checkFile);
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class);
+        if (recordFile != null || checkFile != null) {
+            // The baseline only holds the average times, the throughput runs would be wasted
+            options.mode(Mode.AverageTime);
+        }
+        Collection<RunResult> results = new Runner(options.build()).run();
+        Properties measured = toProperties(results);
+
+        if (recordFile != null) {
+            store(measured, recordFile);
+            System.out.println("Stored the baseline of " + results.size() + " benchmarks in "
+                    + recordFile);
+        }
+        if (baseline != null && !check(measured, baseline, timeTolerance, allocTolerance)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the average time and allocation per operation of every result, keyed by the
+     * benchmark and its parameters.
+     */
+    private static Properties toProperties(Collection<RunResult> results) {
+        Properties properties = new Properties();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            if (params.getMode() != Mode.AverageTime) {
+                continue;
+            }
+            String key = keyOf(params);
+            properties.setProperty(key + TIME_SUFFIX,
+                    String.valueOf(toMicros(result.getPrimaryResult())));
+            for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith(ALLOC_RESULT)) {
+                    properties.setProperty(key + ALLOC_SUFFIX,
+                            String.valueOf(secondary.getValue().getScore()));
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Returns e.g. "ParseBenchmark.extractBookData[itemCount=40,projected=true]".
+     */
+    private static String keyOf(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        int classStart = benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1;
+        StringBuilder key = new StringBuilder(benchmark.substring(classStart));
+        if (!params.getParamsKeys().isEmpty()) {
+            key.append('[');
+            boolean first = true;
+            for (String paramKey : params.getParamsKeys()) {
+                if (!first) {
+                    key.append(',');
+                }
+                first = false;
+                key.append(paramKey).append('=').append(params.getParam(paramKey));
+            }
+            key.append(']');
+        }
+        return key.toString();
+    }
+
+    private static double toMicros(Result result) {
+        String unit = result.getScoreUnit();
+        double score = result.getScore();
+        if (unit.startsWith("ns/")) {
+            return score / 1000;
+        } else if (unit.startsWith("ms/")) {
+            return score * 1000;
+        } else if (unit.startsWith("s/")) {
+            return score * 1000000;
+        }
+        return score;
+    }
+
+    /**
+     * Print how every measured value compares to the baseline and return false if any of them
+     * regressed by more than the tolerance.
+     */
+    private static boolean check(Properties measured, Properties baseline, double timeTolerance,
+                                 double allocTolerance) {
+        boolean passed = true;
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (String key : measured.stringPropertyNames()) {
+            sorted.put(key, measured.getProperty(key));
+        }
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            String key = entry.getKey();
+            double value = Double.parseDouble(entry.getValue());
+            String baselineValue = baseline.getProperty(key);
+            if (baselineValue == null) {
+                System.out.println("NEW  " + key + " = " + format(value));
+                continue;
+            }
+            double expected = Double.parseDouble(baselineValue);
+            double tolerance = key.endsWith(ALLOC_SUFFIX) ? allocTolerance : timeTolerance;
+            double change = expected > 0 ? (value - expected) / expected : 0;
+            boolean regressed = change > tolerance;
+            System.out.println((regressed ? "FAIL " : "OK   ") + key + " = " + format(value)
+                    + " (baseline " + format(expected) + ", "
+                    + String.format(Locale.ROOT, "%+.1f%%", change * 100) + ")");
+            passed &= !regressed;
+        }
+        if (!passed) {
+            System.out.println("Regression beyond " + Math.round(timeTolerance * 100)
+                    + "% in time or " + Math.round(allocTolerance * 100) + "% in allocation");
+        }
+        return passed;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            properties.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            properties.store(outputStream, "Benchmark baseline: average us/op and bytes/op,"
+                    + " recorded with gradlew :benchmarks:jmhBaseline");
+        } finally {
+            outputStream.close();
+        }
+    }
+}
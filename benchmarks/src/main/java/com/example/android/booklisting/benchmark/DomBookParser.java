@@ -0,0 +1,89 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookItem;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * {@link DomBookParser} is the parsing path QueryUtils used before the streaming
+ * BookJsonParser: the whole response read into a String, that String parsed into an org.json
+ * DOM and the DOM walked into {@link BookItem}s. It is only kept so that the benchmarks can
+ * compare the two paths on the same fixtures.
+ */
+
+final class DomBookParser {
+
+    /** Keys for JSON parsing */
+    private static final String KEY_ITEMS = "items";
+    private static final String KEY_ID = "id";
+    private static final String KEY_VOLUMEINFO = "volumeInfo";
+    private static final String KEY_TITLE = "title";
+    private static final String KEY_AUTHORS = "authors";
+    private static final String KEY_DESCRIPTION = "description";
+    private static final String KEY_PAGECOUNT = "pageCount";
+    private static final String KEY_IMAGELINKS = "imageLinks";
+    private static final String KEY_SMALLTHUMBNAIL = "smallThumbnail";
+    private static final String KEY_LANGUAGE = "language";
+    private static final String KEY_PREVIEWLINK = "previewLink";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a {@link DomBookParser}
+     * object.
+     */
+    private DomBookParser() {
+    }
+
+    /**
+     * Read the whole stream into a String, line by line, as readFromInputStream did.
+     */
+    static String readFromInputStream(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
+        StringBuilder streamOutput = new StringBuilder();
+        String line = reader.readLine();
+        while (line != null) {
+            streamOutput.append(line);
+            line = reader.readLine();
+        }
+        return streamOutput.toString();
+    }
+
+    /**
+     * Parse at most maxItems books out of the response. The DOM of the whole response is built
+     * first, however few books are asked for.
+     */
+    static ArrayList<BookItem> parse(String json, int maxItems) throws JSONException {
+        ArrayList<BookItem> bookItems = new ArrayList<BookItem>();
+        JSONArray bookArray = new JSONObject(json).getJSONArray(KEY_ITEMS);
+        for (int i = 0; i < bookArray.length() && i < maxItems; i++) {
+            JSONObject currentBook = bookArray.getJSONObject(i);
+            JSONObject volumeInfo = currentBook.getJSONObject(KEY_VOLUMEINFO);
+            String title = volumeInfo.has(KEY_TITLE) ? volumeInfo.getString(KEY_TITLE) : null;
+            String author = volumeInfo.has(KEY_AUTHORS)
+                    ? volumeInfo.getJSONArray(KEY_AUTHORS).getString(0) : null;
+            String description = volumeInfo.has(KEY_DESCRIPTION)
+                    ? volumeInfo.getString(KEY_DESCRIPTION) : null;
+            int pageCount = volumeInfo.has(KEY_PAGECOUNT) ? volumeInfo.getInt(KEY_PAGECOUNT) : 0;
+            String smallThumbnail = volumeInfo.has(KEY_IMAGELINKS)
+                    ? volumeInfo.getJSONObject(KEY_IMAGELINKS).getString(KEY_SMALLTHUMBNAIL)
+                    : null;
+            String language = volumeInfo.has(KEY_LANGUAGE)
+                    ? volumeInfo.getString(KEY_LANGUAGE) : null;
+            String previewLink = volumeInfo.has(KEY_PREVIEWLINK)
+                    ? volumeInfo.getString(KEY_PREVIEWLINK) : null;
+            bookItems.add(new BookItem(currentBook.optString(KEY_ID, null), smallThumbnail,
+                    previewLink, title, author, pageCount, language, description));
+        }
+        return bookItems;
+    }
+}
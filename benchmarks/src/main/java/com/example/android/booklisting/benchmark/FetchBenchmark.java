@@ -0,0 +1,134 @@
+package com.example.android.booklisting.benchmark;
+
+import android.os.CancellationSignal;
+
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.BookQuery;
+import com.example.android.booklisting.ConcurrentFetcher;
+import com.example.android.booklisting.EditionDeduplicator;
+import com.example.android.booklisting.HttpResponse;
+import com.example.android.booklisting.HttpTransport;
+import com.example.android.booklisting.UrlConnectionTransport;
+import com.example.android.booklisting.tools.NetworkConditions;
+import com.example.android.booklisting.tools.StubBooksServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FetchBenchmark} measures fetching a result set of four windows, the way
+ * QueryUtils.fetchBookDataConcurrently does, from a {@link StubBooksServer} on localhost which
+ * answers every request after the same latency. With a parallelism of 1 the windows are fetched
+ * one after the other, which is the time to compare the parallel fetch against.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchBenchmark {
+
+    /** Latency of every response of the stub server, without any spread */
+    private static final int LATENCY_MILLIS = 100;
+
+    /** Results of the largest request, and number of windows of the result set */
+    private static final int WINDOW_SIZE = 40;
+    private static final int WINDOW_COUNT = 4;
+
+    /** Number of windows fetched at the same time */
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private StubBooksServer mServer;
+    private HttpTransport mTransport;
+    private String[] mWindowUrls;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new StubBooksServer(0, WINDOW_COUNT * 2, new NetworkConditions.Builder()
+                .setLatencyMedian(LATENCY_MILLIS)
+                .setLatencySigma(0)
+                .build(), null);
+        mServer.start();
+        mTransport = new UrlConnectionTransport(LATENCY_MILLIS * 10, LATENCY_MILLIS * 10);
+        BookQuery query = new BookQuery.Builder()
+                .setBaseUrl(mServer.getBaseUrl())
+                .setTitle("android")
+                .setFields(BookJsonParser.FIELDS_PROJECTION)
+                .build();
+        mWindowUrls = new String[WINDOW_COUNT];
+        for (int i = 0; i < WINDOW_COUNT; i++) {
+            mWindowUrls[i] = query.toBuilder()
+                    .setPageSize(WINDOW_SIZE)
+                    .setStartIndex(i * WINDOW_SIZE)
+                    .build()
+                    .getUrl();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Benchmark
+    public ArrayList<BookItem> fetchWindows() throws ExecutionException, InterruptedException {
+        List<ArrayList<BookItem>> pages = ConcurrentFetcher.fetch(WINDOW_COUNT, parallelism,
+                new ConcurrentFetcher.PageFetcher() {
+                    @Override
+                    public ArrayList<BookItem> fetchPage(int index,
+                                                         CancellationSignal cancellationSignal) {
+                        return fetchWindow(mWindowUrls[index], cancellationSignal);
+                    }
+                }, null);
+        EditionDeduplicator editions = new EditionDeduplicator();
+        for (ArrayList<BookItem> page : pages) {
+            editions.addAll(page);
+        }
+        return editions.getRows();
+    }
+
+    /**
+     * Fetch and parse a single window the way QueryUtils.fetchBookData does, without its caches.
+     */
+    private ArrayList<BookItem> fetchWindow(String url, CancellationSignal cancellationSignal) {
+        HttpResponse response = null;
+        try {
+            response = mTransport.get(url, Collections.<String, String>emptyMap(),
+                    cancellationSignal);
+            EditionDeduplicator editions = new EditionDeduplicator();
+            BookJsonParser.parse(response.getBody(), editions, null, cancellationSignal);
+            return editions.getRows();
+        } catch (IOException e) {
+            throw new IllegalStateException("Stub server failed", e);
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    // The body was read, nothing is lost
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookFilter;
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.IncrementalBookFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FilterBenchmark} measures filtering 10k loaded books while the user types a word into
+ * the filter, one filter per keystroke as BookListActivity submits them, with the filter
+ * checking every book each time and refining the previous matches, and toggling the short books
+ * filter of the list menu. An operation is a single keystroke or menu tap, so the time compares
+ * with the frame budget of 16 ms.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    /** Typed one character at a time, after clearing the filter */
+    private static final String TYPED_TEXT = "garden";
+
+    /** Filters per operation: the cleared one and one per character typed */
+    static final int KEYSTROKE_COUNT = 7;
+
+    /** Filters per operation: the short books turned on, then off again */
+    static final int TOGGLE_COUNT = 2;
+
+    @Param({"10000"})
+    public int itemCount;
+
+    @Param({"rescan", "incremental"})
+    public String filtering;
+
+    @Param({"RELEVANCE", "TITLE"})
+    public String sortOrder;
+
+    private ArrayList<BookItem> mBookItems;
+    private IncrementalBookFilter mFilter;
+    private BookFilter[] mKeystrokes;
+    private BookFilter[] mToggles;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBookItems = Fixtures.parse(itemCount);
+        mFilter = new IncrementalBookFilter();
+        mFilter.setIncrementalEnabled(filtering.equals("incremental"));
+        mKeystrokes = new BookFilter[KEYSTROKE_COUNT];
+        for (int i = 0; i < mKeystrokes.length; i++) {
+            mKeystrokes[i] = new BookFilter.Builder()
+                    .setText(TYPED_TEXT.substring(0, i))
+                    .setSortOrder(BookFilter.SortOrder.valueOf(sortOrder))
+                    .build();
+        }
+        BookFilter cleared = new BookFilter.Builder()
+                .setSortOrder(BookFilter.SortOrder.valueOf(sortOrder))
+                .build();
+        mToggles = new BookFilter[] {
+                cleared.toBuilder()
+                        .setPageCountRange(BookFilter.SHORT_BOOK_MIN_PAGE_COUNT,
+                                BookFilter.SHORT_BOOK_MAX_PAGE_COUNT)
+                        .build(),
+                cleared};
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYSTROKE_COUNT)
+    public int typeText() {
+        int matchCount = 0;
+        for (BookFilter keystroke : mKeystrokes) {
+            matchCount += mFilter.filter(mBookItems, keystroke).size();
+        }
+        return matchCount;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOGGLE_COUNT)
+    public int toggleShortBooks() {
+        int matchCount = 0;
+        for (BookFilter toggle : mToggles) {
+            matchCount += mFilter.filter(mBookItems, toggle).size();
+        }
+        return matchCount;
+    }
+}
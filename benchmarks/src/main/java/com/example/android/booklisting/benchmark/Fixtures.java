@@ -0,0 +1,282 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.EditionDeduplicator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * {@link Fixtures} provides Google Books volume search responses for the benchmarks. A response
+ * recorded from the API is used if the resources hold one, e.g. fixtures/volumes_40.json for 40
+ * items in full or fixtures/volumes_40_projected.json for the fields projection. Otherwise a
+ * response of the same shape is generated from a fixed seed, so that every run parses the same
+ * bytes. The tools module serves the generated responses, and the volumes they hold, from its
+ * stub server.
+ */
+
+public final class Fixtures {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Share of the items which are another edition of an earlier item */
+    private static final double EDITION_SHARE = 0.1;
+
+    private static final String[] WORDS = {"the", "history", "of", "java", "android", "garden",
+            "river", "night", "programming", "concurrency", "école", "naïve", "über", "data",
+            "mountain", "secret", "city", "performance", "ocean", "patterns", "lost", "winter"};
+
+    private static final String[] NAMES = {"Ann", "John", "Maria", "Joshua", "Brian", "Zoë",
+            "Martin", "Chen", "Ravi", "Ingrid", "Nikos", "Fernando"};
+
+    /** Volume ids are the prefix and seed * multiplier + index in base 36, e.g. "vol64k" */
+    private static final String ID_PREFIX = "vol";
+    private static final long ID_SEED_MULTIPLIER = 7919;
+
+    private static final String[] LANGUAGES = {"en", "en", "en", "de", "fr", "el", "es"};
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the response with the given number of items, in full or with the fields
+     * projection applied.
+     */
+    public static byte[] load(int itemCount, boolean projected) throws IOException {
+        String name = "/fixtures/volumes_" + itemCount + (projected ? "_projected" : "") + ".json";
+        InputStream recorded = Fixtures.class.getResourceAsStream(name);
+        if (recorded == null) {
+            return generate(itemCount, projected).getBytes(UTF_8);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = recorded.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            recorded.close();
+        }
+    }
+
+    /**
+     * Returns the rows of a generated response with the given number of items and the fields
+     * projection, parsed the way the app parses a response, for the benchmarks of what is done
+     * with the books afterwards. Editions are collapsed, so there are fewer rows than items.
+     */
+    public static ArrayList<BookItem> parse(int itemCount) throws IOException {
+        EditionDeduplicator editions = new EditionDeduplicator();
+        BookJsonParser.parse(new ByteArrayInputStream(generate(itemCount, true).getBytes(UTF_8)),
+                editions, null, null);
+        return editions.getRows();
+    }
+
+    /**
+     * Returns a response with the given number of items, with every key the API sends in full or
+     * only the ones the fields projection asks for.
+     */
+    public static String generate(int itemCount, boolean projected) {
+        return generate(itemCount, itemCount, projected);
+    }
+
+    /**
+     * Returns a response with the given number of items generated from the given seed, e.g. a
+     * hash of the query, so that different queries get different volumes.
+     */
+    public static String generate(long seed, int itemCount, boolean projected) {
+        return generate(seed, itemCount, projected, new int[1]).toString();
+    }
+
+    /**
+     * Returns the volume resource with the given id in full, as the volumes/{id} endpoint would
+     * send it, if the id is one of a response generated from a seed between 0 and 2^32, or null
+     * otherwise.
+     */
+    public static String generateVolume(String id) {
+        long value;
+        try {
+            value = id.startsWith(ID_PREFIX) ? Long.parseLong(id.substring(ID_PREFIX.length()),
+                    36) : -1;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (value < 0) {
+            return null;
+        }
+        // The volume is the same whatever the number of items generated after it
+        int index = (int) (value % ID_SEED_MULTIPLIER);
+        int[] itemStart = new int[1];
+        StringBuilder json = generate(value / ID_SEED_MULTIPLIER, index + 1, false, itemStart);
+        return json.substring(itemStart[0], json.length() - "]}".length());
+    }
+
+    /**
+     * Returns the response and stores where its last item starts in lastItemStart[0].
+     */
+    private static StringBuilder generate(long seed, int itemCount, boolean projected,
+                                          int[] lastItemStart) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(itemCount * (projected ? 400 : 2500));
+        json.append("{");
+        if (!projected) {
+            json.append("\"kind\": \"books#volumes\", \"totalItems\": ").append(itemCount * 25)
+                    .append(", ");
+        }
+        json.append("\"items\": [");
+        String[] titles = new String[itemCount];
+        String[] authors = new String[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            if (i > 0 && random.nextDouble() < EDITION_SHARE) {
+                // Another edition of an earlier work
+                int work = random.nextInt(i);
+                titles[i] = titles[work] + (random.nextBoolean() ? ": A Novel" : " (Revised)");
+                authors[i] = authors[work];
+            } else {
+                titles[i] = capitalize(words(random, 2 + random.nextInt(5)));
+                authors[i] = NAMES[random.nextInt(NAMES.length)] + " "
+                        + capitalize(WORDS[random.nextInt(WORDS.length)]) + "son";
+            }
+            if (i > 0) {
+                json.append(',');
+            }
+            lastItemStart[0] = json.length();
+            appendItem(json, random, seed, i, titles[i], authors[i], projected);
+        }
+        json.append("]}");
+        return json;
+    }
+
+    private static void appendItem(StringBuilder json, Random random, long seed, int index,
+                                   String title, String author, boolean projected) {
+        String id = ID_PREFIX + Long.toString((seed & 0xffffffffL) * ID_SEED_MULTIPLIER + index,
+                36);
+        json.append("{");
+        if (!projected) {
+            json.append("\"kind\": \"books#volume\", ");
+        }
+        json.append("\"id\": ").append(quote(id)).append(", ");
+        if (!projected) {
+            json.append("\"etag\": ").append(quote(Long.toString(random.nextLong(), 36)))
+                    .append(", \"selfLink\": ")
+                    .append(quote("https://www.googleapis.com/books/v1/volumes/" + id))
+                    .append(", ");
+        }
+        json.append("\"volumeInfo\": {\"title\": ").append(quote(title));
+        json.append(", \"authors\": [").append(quote(author));
+        if (random.nextInt(4) == 0) {
+            json.append(", ").append(quote(NAMES[random.nextInt(NAMES.length)] + " Editor"));
+        }
+        json.append("]");
+        if (!projected) {
+            json.append(", \"publisher\": \"Example Press\", \"publishedDate\": \"")
+                    .append(1950 + random.nextInt(70)).append("-0")
+                    .append(1 + random.nextInt(9)).append("-1")
+                    .append(random.nextInt(9)).append('"');
+        }
+        // The list's projection leaves the description to the volumes/{id} endpoint
+        if (!projected && random.nextInt(10) > 0) {
+            json.append(", \"description\": ").append(quote(
+                    capitalize(words(random, 30 + random.nextInt(120))) + ". \"Quoted\"\n"));
+        }
+        if (!projected) {
+            json.append(", \"industryIdentifiers\": [{\"type\": \"ISBN_13\", \"identifier\": \"978")
+                    .append(1000000000L + (long) (random.nextDouble() * 8999999999L))
+                    .append("\"}, {\"type\": \"ISBN_10\", \"identifier\": \"")
+                    .append(100000000 + random.nextInt(899999999)).append("X\"}]")
+                    .append(", \"readingModes\": {\"text\": false, \"image\": true}");
+        }
+        if (random.nextInt(8) > 0) {
+            json.append(", \"pageCount\": ").append(40 + random.nextInt(900));
+        }
+        if (!projected) {
+            json.append(", \"printType\": \"BOOK\", \"categories\": [\"Fiction\"]")
+                    .append(", \"averageRating\": ").append(1 + random.nextInt(5))
+                    .append(", \"ratingsCount\": ").append(random.nextInt(300))
+                    .append(", \"maturityRating\": \"NOT_MATURE\", \"allowAnonLogging\": false")
+                    .append(", \"contentVersion\": \"1.2.3.0.preview.1\"")
+                    .append(", \"panelizationSummary\": {\"containsEpubBubbles\": false,")
+                    .append(" \"containsImageBubbles\": false}");
+        }
+        if (random.nextInt(5) > 0) {
+            String thumbnail = "http://books.google.com/books/content?id=" + id
+                    + "&printsec=frontcover&img=1&zoom=5&source=gbs_api";
+            json.append(", \"imageLinks\": {\"smallThumbnail\": ").append(quote(thumbnail));
+            if (!projected) {
+                json.append(", \"thumbnail\": ").append(quote(thumbnail.replace("zoom=5",
+                        "zoom=1")));
+            }
+            json.append("}");
+        }
+        json.append(", \"language\": ").append(quote(LANGUAGES[random.nextInt(LANGUAGES.length)]));
+        json.append(", \"previewLink\": ").append(quote("http://books.google.com/books?id=" + id
+                + "&printsec=frontcover&dq=intitle:java&hl=&cd=" + index + "&source=gbs_api"));
+        if (!projected) {
+            json.append(", \"infoLink\": ").append(quote("http://books.google.com/books?id="
+                    + id + "&dq=intitle:java&hl=&source=gbs_api"))
+                    .append(", \"canonicalVolumeLink\": ")
+                    .append(quote("https://books.google.com/books/about/x.html?id=" + id));
+        }
+        json.append("}");
+        if (!projected) {
+            json.append(", \"saleInfo\": {\"country\": \"GR\", \"saleability\": \"NOT_FOR_SALE\",")
+                    .append(" \"isEbook\": false}")
+                    .append(", \"accessInfo\": {\"country\": \"GR\", \"viewability\": \"PARTIAL\",")
+                    .append(" \"embeddable\": true, \"publicDomain\": false,")
+                    .append(" \"textToSpeechPermission\": \"ALLOWED\",")
+                    .append(" \"epub\": {\"isAvailable\": false},")
+                    .append(" \"pdf\": {\"isAvailable\": true, \"acsTokenLink\": ")
+                    .append(quote("http://books.google.com/books/download/x-sample-pdf.acsm?id="
+                            + id)).append("},")
+                    .append(" \"webReaderLink\": ")
+                    .append(quote("http://play.google.com/books/reader?id=" + id))
+                    .append(", \"accessViewStatus\": \"SAMPLE\", \"quoteSharingAllowed\": false}")
+                    .append(", \"searchInfo\": {\"textSnippet\": ")
+                    .append(quote(words(random, 20) + " &quot;snippet&quot;")).append("}");
+        }
+        json.append("}");
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder(count * 8);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private static String capitalize(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    /**
+     * Returns the text as a JSON string, with quotes, backslashes and control characters escaped.
+     */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2);
+        quoted.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c == '\n') {
+                quoted.append("\\n");
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
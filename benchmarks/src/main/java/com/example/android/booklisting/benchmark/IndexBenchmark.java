@@ -0,0 +1,221 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookIndexContract;
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IndexBenchmark} measures the local full-text index of the BookIndex holding 10k and
+ * 100k volumes: ingesting a page of fetched volumes and searching it. The app's index goes
+ * through Android's SQLite classes, which don't run on a JVM, so this runs the statements of the
+ * {@link BookIndexContract} through the SQLite JDBC driver, ingesting the way BookIndex.addAll
+ * does. Ingesting either counts the volumes for every page, as it did before, or keeps track of
+ * their number. The size of the index is printed when it has been filled.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class IndexBenchmark {
+
+    /** Volumes ingested at once, a page of results */
+    private static final int PAGE_SIZE = 40;
+
+    /** Volumes ingested at once while the index is filled */
+    private static final int FILL_BATCH_SIZE = 1000;
+
+    /** Searches run one after the other, whole words, prefixes and both columns */
+    private static final String[][] SEARCHES = {
+            {"garden", ""}, {"hist", ""}, {"", "maria"}, {"java", "john"}, {"of the", ""}};
+
+    @Param({"10000", "100000"})
+    public int volumeCount;
+
+    private File mDatabaseFile;
+    private Connection mConnection;
+    private PreparedStatement mDeleteStatement;
+    private PreparedStatement mInsertStatement;
+    private PreparedStatement mCountStatement;
+    private PreparedStatement mTrimStatement;
+    private PreparedStatement mSearchStatement;
+    private ArrayList<BookItem> mVolumes;
+    private long mVolumeCount = -1;
+    private int mNextPage;
+    private String[] mMatchExpressions;
+    private int mNextSearch;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        // Every edition is indexed on its own, so the collapsed ones count as well
+        mVolumes = new ArrayList<BookItem>(volumeCount);
+        for (BookItem bookItem : Fixtures.parse(volumeCount)) {
+            mVolumes.add(bookItem);
+            mVolumes.addAll(bookItem.getmAlternates());
+        }
+
+        mDatabaseFile = File.createTempFile("book_index", ".db");
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + mDatabaseFile.getPath());
+        Statement statement = mConnection.createStatement();
+        // The journal mode BookIndex turns on and Android's default synchronous mode with it
+        statement.execute("PRAGMA journal_mode = WAL");
+        statement.execute("PRAGMA synchronous = FULL");
+        statement.execute(BookIndexContract.SQL_CREATE_VOLUMES);
+        statement.close();
+        mConnection.setAutoCommit(false);
+        mDeleteStatement = mConnection.prepareStatement(BookIndexContract.SQL_DELETE_VOLUME);
+        mInsertStatement = mConnection.prepareStatement(BookIndexContract.SQL_INSERT_VOLUME);
+        mCountStatement = mConnection.prepareStatement(
+                "SELECT COUNT(*) FROM " + BookIndexContract.TABLE_VOLUMES);
+        mTrimStatement = mConnection.prepareStatement(BookIndexContract.SQL_TRIM);
+        mSearchStatement = mConnection.prepareStatement(BookIndexContract.SQL_SEARCH);
+
+        for (int i = 0; i < mVolumes.size(); i += FILL_BATCH_SIZE) {
+            addAll(mVolumes.subList(i, Math.min(mVolumes.size(), i + FILL_BATCH_SIZE)), true);
+        }
+        System.out.println(String.format(Locale.ROOT, "Index of %d volumes: %d KB",
+                countVolumes(), mDatabaseFile.length() / 1024));
+
+        mMatchExpressions = new String[SEARCHES.length];
+        for (int i = 0; i < SEARCHES.length; i++) {
+            mMatchExpressions[i] = BookIndexContract.matchExpression(new BookQuery.Builder()
+                    .setTitle(SEARCHES[i][0])
+                    .setAuthor(SEARCHES[i][1])
+                    .build());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConnection.close();
+        new File(mDatabaseFile.getPath() + "-wal").delete();
+        new File(mDatabaseFile.getPath() + "-shm").delete();
+        mDatabaseFile.delete();
+    }
+
+    /**
+     * Ingest the next page of volumes, which are in the index already, as when a search is
+     * fetched again.
+     */
+    @Benchmark
+    public long ingestPage(Counting counting) throws SQLException {
+        int pageCount = mVolumes.size() / PAGE_SIZE;
+        int start = (mNextPage++ % pageCount) * PAGE_SIZE;
+        return addAll(mVolumes.subList(start, start + PAGE_SIZE),
+                counting.counting.equals("tracked"));
+    }
+
+    @Benchmark
+    public ArrayList<BookItem> search() throws SQLException {
+        mSearchStatement.setString(1, mMatchExpressions[mNextSearch++ % SEARCHES.length]);
+        mSearchStatement.setInt(2, PAGE_SIZE);
+        mSearchStatement.setInt(3, 0);
+        ArrayList<BookItem> bookItems = new ArrayList<BookItem>();
+        ResultSet resultSet = mSearchStatement.executeQuery();
+        try {
+            while (resultSet.next()) {
+                bookItems.add(new BookItem(resultSet.getString(1), resultSet.getString(2),
+                        resultSet.getString(3), resultSet.getString(4), resultSet.getString(5),
+                        resultSet.getInt(6), resultSet.getString(7), resultSet.getString(8)));
+            }
+        } finally {
+            resultSet.close();
+        }
+        return bookItems;
+    }
+
+    /**
+     * Add the volumes in a transaction the way BookIndex.addAll does, and return the number of
+     * volumes in the index.
+     *
+     * @param tracked is false to count the volumes in the index rather than keeping track
+     */
+    private long addAll(List<BookItem> bookItems, boolean tracked) throws SQLException {
+        long fetchedAt = System.currentTimeMillis();
+        long volumeCount = tracked && mVolumeCount >= 0 ? mVolumeCount : countVolumes();
+        for (BookItem bookItem : bookItems) {
+            long docId = BookIndexContract.docIdFor(bookItem.getmId());
+            mDeleteStatement.setLong(1, docId);
+            volumeCount -= mDeleteStatement.executeUpdate();
+
+            mInsertStatement.setLong(1, docId);
+            mInsertStatement.setString(2, bookItem.getmId());
+            setStringOrNull(mInsertStatement, 3, bookItem.getmTitle());
+            setStringOrNull(mInsertStatement, 4, bookItem.getmAuthor());
+            setStringOrNull(mInsertStatement, 5, bookItem.getmSmallThumbnailURL());
+            setStringOrNull(mInsertStatement, 6, bookItem.getmPreviewURL());
+            mInsertStatement.setLong(7, bookItem.getPageCountValue());
+            setStringOrNull(mInsertStatement, 8, bookItem.getmLanguage());
+            setStringOrNull(mInsertStatement, 9, bookItem.getmDescription());
+            mInsertStatement.setLong(10, fetchedAt);
+            mInsertStatement.executeUpdate();
+            volumeCount++;
+        }
+        long excess = volumeCount - BookIndexContract.MAX_VOLUMES;
+        if (excess > 0) {
+            mTrimStatement.setLong(1, excess);
+            mTrimStatement.executeUpdate();
+            volumeCount = BookIndexContract.MAX_VOLUMES;
+        }
+        mConnection.commit();
+        mVolumeCount = volumeCount;
+        return volumeCount;
+    }
+
+    private long countVolumes() throws SQLException {
+        ResultSet resultSet = mCountStatement.executeQuery();
+        try {
+            resultSet.next();
+            return resultSet.getLong(1);
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private static void setStringOrNull(PreparedStatement statement, int index, String value)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+
+    /**
+     * How ingesting knows the number of volumes, which doesn't matter to searching.
+     */
+    @State(Scope.Benchmark)
+    public static class Counting {
+        @Param({"count", "tracked"})
+        public String counting;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.EditionDeduplicator;
+
+import org.json.JSONException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParseBenchmark} measures reading and parsing a Google Books response held in memory, so
+ * that only the CPU and allocation cost of the client is measured, not the network. The
+ * streaming parser is measured against the {@link DomBookParser} it replaced, on the same
+ * fixtures, both for the whole response and for the time until the first row can be shown.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    /** Number of items in the response */
+    @Param({"10", "40", "1000"})
+    public int itemCount;
+
+    /** Whether the response only holds the keys of the fields projection */
+    @Param({"true", "false"})
+    public boolean projected;
+
+    private byte[] mResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        mResponse = Fixtures.load(itemCount, projected);
+    }
+
+    /**
+     * Read the whole response into a String the way readFromInputStream did before the response
+     * was parsed while streaming, to compare against the cost of that copy.
+     */
+    @Benchmark
+    public String readFromInputStream() throws IOException {
+        return DomBookParser.readFromInputStream(new ByteArrayInputStream(mResponse));
+    }
+
+    /**
+     * Parse the response into rows the way QueryUtils.extractBookData does, editions collapsed.
+     */
+    @Benchmark
+    public ArrayList<BookItem> extractBookData() throws IOException {
+        EditionDeduplicator editions = new EditionDeduplicator();
+        BookJsonParser.parse(new ByteArrayInputStream(mResponse), editions, null, null);
+        return editions.getRows();
+    }
+
+    /**
+     * Parse the response into rows the way extractBookData did before the streaming parser.
+     */
+    @Benchmark
+    public ArrayList<BookItem> extractBookDataDom() throws IOException, JSONException {
+        return DomBookParser.parse(
+                DomBookParser.readFromInputStream(new ByteArrayInputStream(mResponse)),
+                Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parse the response until the streaming parser hands out its first row, which is when the
+     * list can show it.
+     */
+    @Benchmark
+    public BookItem firstItem() throws IOException {
+        FirstItemListener listener = new FirstItemListener();
+        try {
+            BookJsonParser.parse(new ByteArrayInputStream(mResponse), new EditionDeduplicator(),
+                    listener, null);
+        } catch (FirstItemFound e) {
+            // The rest of the response isn't read
+        }
+        return listener.mFirstItem;
+    }
+
+    /**
+     * Parse the response until its first row with the DOM path, which reads and parses all of
+     * it first.
+     */
+    @Benchmark
+    public BookItem firstItemDom() throws IOException, JSONException {
+        ArrayList<BookItem> bookItems = DomBookParser.parse(
+                DomBookParser.readFromInputStream(new ByteArrayInputStream(mResponse)), 1);
+        return bookItems.isEmpty() ? null : bookItems.get(0);
+    }
+
+    /**
+     * Keeps the first row the parser hands out and stops the parse there.
+     */
+    private static final class FirstItemListener
+            implements BookJsonParser.OnBookItemParsedListener {
+        private BookItem mFirstItem;
+
+        @Override
+        public void onBookItemParsed(BookItem bookItem) {
+            mFirstItem = bookItem;
+            throw FirstItemFound.INSTANCE;
+        }
+    }
+
+    /**
+     * Thrown to stop the parse at the first row. It is shared and has no stack trace, so that
+     * stopping costs nothing that would show up in the measurement.
+     */
+    private static final class FirstItemFound extends RuntimeException {
+        private static final FirstItemFound INSTANCE = new FirstItemFound();
+
+        private FirstItemFound() {
+            super(null, null, false, false);
+        }
+    }
+}
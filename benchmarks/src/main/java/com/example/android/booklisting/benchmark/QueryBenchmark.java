@@ -0,0 +1,67 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.BookQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QueryBenchmark} measures turning the user's input into a request URL. The query is built
+ * by {@link BookQuery} the way BookListActivity.firstPageQuery does, which replaced
+ * returnFinalQuery, and then derived for the following pages.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    /** Title the user searched for, plain or needing canonicalization and encoding */
+    @Param({"java", "  The Lord of the Rings:  Fellowship & Co.  ", "Καζαντζάκης"})
+    public String title;
+
+    private BookQuery mFirstPageQuery;
+
+    @Setup
+    public void setUp() {
+        mFirstPageQuery = firstPageQuery();
+    }
+
+    @Benchmark
+    public String returnFinalQuery() {
+        return firstPageQuery().getUrl();
+    }
+
+    @Benchmark
+    public String nextPageQuery() {
+        return mFirstPageQuery.toBuilder()
+                .setPageSize(40)
+                .setStartIndex(10)
+                .build()
+                .getUrl();
+    }
+
+    private BookQuery firstPageQuery() {
+        return new BookQuery.Builder()
+                .setTitle(title)
+                .setAuthor("tolkien")
+                .setPageSize(10)
+                .setFields(BookJsonParser.FIELDS_PROJECTION)
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookItemStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StoreBenchmark} measures reading every row of a large result set the way a bind does,
+ * from the ArrayList of {@link BookItem}s the parser returns and from a {@link BookItemStore}
+ * holding the same books, and building the store from the list. What the store saves is heap,
+ * which {@link StoreHeapComparison} measures; this shows what its reads and its copy cost.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class StoreBenchmark {
+
+    /** Number of items of the result set, a tenth of which are collapsed editions */
+    @Param({"1000", "10000", "100000"})
+    public int itemCount;
+
+    private ArrayList<BookItem> mBookItems;
+    private BookItemStore mStore;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBookItems = Fixtures.parse(itemCount);
+        mStore = new BookItemStore(mBookItems.size());
+        mStore.addAll(mBookItems);
+    }
+
+    @Benchmark
+    public int bindList() {
+        int length = 0;
+        for (int i = 0; i < mBookItems.size(); i++) {
+            BookItem bookItem = mBookItems.get(i);
+            length += length(bookItem.getmTitle()) + length(bookItem.getmAuthor())
+                    + length(bookItem.getmPageCount()) + length(bookItem.getmLanguage())
+                    + length(bookItem.getmSmallThumbnailURL());
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int bindStore() {
+        int length = 0;
+        for (int i = 0; i < mStore.size(); i++) {
+            length += length(mStore.getTitle(i)) + length(mStore.getAuthor(i))
+                    + length(mStore.getPageCountText(i)) + length(mStore.getLanguage(i))
+                    + length(mStore.getSmallThumbnailURL(i));
+        }
+        return length;
+    }
+
+    @Benchmark
+    public BookItemStore buildStore() {
+        BookItemStore store = new BookItemStore(mBookItems.size());
+        store.addAll(mBookItems);
+        return store;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+}
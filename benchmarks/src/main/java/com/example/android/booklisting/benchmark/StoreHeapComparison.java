@@ -0,0 +1,128 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookItemStore;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * {@link StoreHeapComparison} compares the heap retained by the books of a result set held the
+ * way the parser returns them, an ArrayList of {@link BookItem}s, and held in a
+ * {@link BookItemStore}. JMH measures time and allocation but not what stays reachable, so this
+ * takes the used heap after full collections before and after the books are built, the median
+ * of a few rounds. A small result set is built several times over, so that what it retains
+ * stands out of what the collections themselves leave behind. Both hold the same strings and
+ * alternates apart from the authors and languages, which the store keeps once, and the page
+ * count texts, which are formatted for every row as a bind would.
+ *
+ * <p>Usage: {@code StoreHeapComparison [itemCount...]}, 1000, 10000 and 100000 by default.
+ */
+
+public final class StoreHeapComparison {
+
+    private static final int[] DEFAULT_ITEM_COUNTS = {1000, 10000, 100000};
+
+    private static final int ROUNDS = 5;
+
+    /** Books built per measurement at least, however small the result set */
+    private static final int MIN_MEASURED_ITEMS = 100000;
+
+    /** What is being measured is kept reachable here */
+    private static Object sRetained;
+
+    /** Number of rows of the last result set parsed */
+    private static int sRowCount;
+
+    private StoreHeapComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] itemCounts = DEFAULT_ITEM_COUNTS;
+        if (args.length > 0) {
+            itemCounts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                itemCounts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("items  rows  list_bytes  store_bytes  store/list");
+        for (int itemCount : itemCounts) {
+            long[] listBytes = new long[ROUNDS];
+            long[] storeBytes = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                listBytes[round] = measureList(itemCount);
+                storeBytes[round] = measureStore(itemCount);
+            }
+            long list = median(listBytes);
+            long store = median(storeBytes);
+            System.out.println(String.format(Locale.ROOT, "%d  %d  %d  %d  %.2f", itemCount,
+                    sRowCount, list, store, (double) store / list));
+        }
+    }
+
+    /**
+     * Returns the bytes retained by the parsed books, their page count texts formatted.
+     */
+    private static long measureList(int itemCount) throws IOException {
+        int copies = copiesOf(itemCount);
+        Object[] retained = new Object[copies];
+        long before = usedHeapAfterGc();
+        for (int copy = 0; copy < copies; copy++) {
+            ArrayList<BookItem> bookItems = Fixtures.parse(itemCount);
+            for (int i = 0; i < bookItems.size(); i++) {
+                bookItems.get(i).getmPageCount();
+            }
+            sRowCount = bookItems.size();
+            retained[copy] = bookItems;
+        }
+        sRetained = retained;
+        long retainedBytes = usedHeapAfterGc() - before;
+        sRetained = null;
+        return retainedBytes / copies;
+    }
+
+    /**
+     * Returns the bytes retained by a store of the parsed books, which share their strings with
+     * it and are dropped once it holds them, its page count texts formatted.
+     */
+    private static long measureStore(int itemCount) throws IOException {
+        int copies = copiesOf(itemCount);
+        Object[] retained = new Object[copies];
+        long before = usedHeapAfterGc();
+        for (int copy = 0; copy < copies; copy++) {
+            BookItemStore store = new BookItemStore(sRowCount);
+            store.addAll(Fixtures.parse(itemCount));
+            for (int i = 0; i < store.size(); i++) {
+                store.getPageCountText(i);
+            }
+            retained[copy] = store;
+        }
+        sRetained = retained;
+        long retainedBytes = usedHeapAfterGc() - before;
+        sRetained = null;
+        return retainedBytes / copies;
+    }
+
+    private static int copiesOf(int itemCount) {
+        return Math.max(1, (MIN_MEASURED_ITEMS + itemCount - 1) / itemCount);
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        // A single collection may leave objects behind which became unreachable during it
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
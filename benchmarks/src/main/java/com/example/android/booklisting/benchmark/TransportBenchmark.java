@@ -0,0 +1,120 @@
+package com.example.android.booklisting.benchmark;
+
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.BookQuery;
+import com.example.android.booklisting.HttpResponse;
+import com.example.android.booklisting.HttpTransport;
+import com.example.android.booklisting.ResilientTransport;
+import com.example.android.booklisting.UrlConnectionTransport;
+import com.example.android.booklisting.tools.NetworkConditions;
+import com.example.android.booklisting.tools.StubBooksServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TransportBenchmark} measures the time to a good response from a
+ * {@link StubBooksServer} whose latency has a long tail and which fails some requests, with the
+ * plain {@link UrlConnectionTransport} and with the {@link ResilientTransport} around it. An
+ * operation repeats the request until it got a 200 and read its body, so the failures the plain
+ * transport passes on cost it a request too. Several threads send requests at the same time, so
+ * that the bounded pool of the resilient transport is part of what is measured. The sampled
+ * percentiles show what hedging does to the tail, which the average hides.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(TransportBenchmark.THREAD_COUNT)
+// Without TCP_NODELAY the stub server's responses wait for delayed acknowledgements, which adds
+// tens of milliseconds to every request
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class TransportBenchmark {
+
+    /** Requests sent at the same time */
+    static final int THREAD_COUNT = 8;
+
+    /** Median latency of the stub server and its spread, which puts the 99th percentile at 10x */
+    private static final int LATENCY_MILLIS = 20;
+    private static final double LATENCY_SIGMA = 1.0;
+
+    /** Share of the requests failing with a 503 */
+    private static final double ERROR_RATE = 0.01;
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    @Param({"plain", "resilient"})
+    public String transport;
+
+    private StubBooksServer mServer;
+    private HttpTransport mTransport;
+    private String mUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Enough threads for every request and hedge in flight, so the server isn't the limit
+        mServer = new StubBooksServer(0, THREAD_COUNT * 4, new NetworkConditions.Builder()
+                .setLatencyMedian(LATENCY_MILLIS)
+                .setLatencySigma(LATENCY_SIGMA)
+                .setErrorRate(ERROR_RATE)
+                .build(), null);
+        mServer.start();
+        HttpTransport connectionTransport =
+                new UrlConnectionTransport(TIMEOUT_MILLIS, TIMEOUT_MILLIS);
+        mTransport = transport.equals("plain") ? connectionTransport
+                : new ResilientTransport(connectionTransport, THREAD_COUNT * 2);
+        mUrl = new BookQuery.Builder()
+                .setBaseUrl(mServer.getBaseUrl())
+                .setTitle("android")
+                .setFields(BookJsonParser.FIELDS_PROJECTION)
+                .build()
+                .getUrl();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Benchmark
+    public long getUntilOk() throws IOException {
+        while (true) {
+            HttpResponse response = mTransport.get(mUrl, null, null);
+            try {
+                if (response.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                    return readBody(response.getBody());
+                }
+            } finally {
+                response.close();
+            }
+        }
+    }
+
+    private static long readBody(InputStream body) throws IOException {
+        byte[] buffer = new byte[4096];
+        long length = 0;
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.android.booklisting.tools;
+
+import android.util.JsonWriter;
+
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.BookQuery;
+import com.example.android.booklisting.HttpTransport;
+import com.example.android.booklisting.PipelineMetrics;
+import com.example.android.booklisting.QueryUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link CatalogIngester} fetches a stream of title/author queries with the app's fetch and parse
+ * pipeline: the URL built by {@link BookQuery} with the fields projection of the detail screen,
+ * so that descriptions are kept, fetched by {@link QueryUtils} with the given
+ * {@link HttpTransport} and without the response cache, and parsed into rows of collapsed
+ * editions. Queries run on a fixed pool of workers, with at most
+ * perHostLimit requests to any one host at a time, and the rows are written as one JSON object
+ * per line as soon as their query is done. Only a few queries per worker are read ahead, so
+ * memory stays the same however long the input is.
+ */
+
+public final class CatalogIngester {
+
+    /** Queries read ahead of the workers, per worker */
+    private static final int READ_AHEAD_PER_WORKER = 2;
+
+    private final HttpTransport mTransport;
+    private final String mBaseUrl;
+    private final int mPageSize;
+    private final int mWorkerCount;
+    private final int mPerHostLimit;
+
+    /** Requests each host may still take */
+    private final ConcurrentHashMap<String, Semaphore> mHostPermits =
+            new ConcurrentHashMap<String, Semaphore>();
+
+    /** Counters of the run */
+    private final AtomicLong mQueryCount = new AtomicLong();
+    private final AtomicLong mFailedQueryCount = new AtomicLong();
+    private final AtomicLong mItemCount = new AtomicLong();
+
+    /** Bytes the pipeline had recorded for the page size before the run */
+    private volatile long mBytesReceivedBefore;
+
+    public CatalogIngester(HttpTransport transport, String baseUrl, int pageSize,
+                           int workerCount, int perHostLimit) {
+        mTransport = transport;
+        mBaseUrl = baseUrl;
+        mPageSize = pageSize;
+        mWorkerCount = workerCount;
+        mPerHostLimit = perHostLimit;
+    }
+
+    /**
+     * Fetch every query of the input and write its rows to the output, returning once all of
+     * them are written. A line holds a title and an author separated by a tab, either may be
+     * empty; empty lines and lines starting with # are skipped.
+     */
+    public void ingest(BufferedReader queries, final Writer output) throws IOException,
+            InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(mWorkerCount);
+        final Semaphore readAhead = new Semaphore(mWorkerCount * READ_AHEAD_PER_WORKER);
+        mBytesReceivedBefore = getPipelineBytesReceived();
+        try {
+            String line;
+            while ((line = queries.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                final String title = tab >= 0 ? line.substring(0, tab) : line;
+                final String author = tab >= 0 ? line.substring(tab + 1) : "";
+
+                // Wait for a worker to catch up before reading any further
+                readAhead.acquire();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            ingestQuery(title, author, output);
+                        } finally {
+                            readAhead.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            output.flush();
+        }
+    }
+
+    /**
+     * Fetch a single query and write its rows. A failed query is counted and skipped.
+     */
+    private void ingestQuery(String title, String author, Writer output) {
+        try {
+            fetchAndWrite(title, author, output);
+        } finally {
+            mQueryCount.incrementAndGet();
+        }
+    }
+
+    private void fetchAndWrite(String title, String author, Writer output) {
+        BookQuery query = new BookQuery.Builder()
+                .setBaseUrl(mBaseUrl)
+                .setTitle(title)
+                .setAuthor(author)
+                .setPageSize(mPageSize)
+                .setFields(BookJsonParser.FULL_FIELDS_PROJECTION)
+                .build();
+        if (query.isEmpty()) {
+            mFailedQueryCount.incrementAndGet();
+            return;
+        }
+        try {
+            ArrayList<BookItem> rows = fetch(query);
+            if (rows == null) {
+                mFailedQueryCount.incrementAndGet();
+                return;
+            }
+            String lines = toJsonLines(title, author, rows);
+            synchronized (output) {
+                output.write(lines);
+            }
+            mItemCount.addAndGet(rows.size());
+        } catch (IOException e) {
+            mFailedQueryCount.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mFailedQueryCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fetch and parse the given query, holding one of its host's permits meanwhile. Returns the
+     * rows, or null if the query couldn't be loaded.
+     */
+    private ArrayList<BookItem> fetch(BookQuery query) throws IOException, InterruptedException {
+        Semaphore hostPermits = getHostPermits(new URL(query.getUrl()).getAuthority());
+        hostPermits.acquire();
+        try {
+            return QueryUtils.fetchBookData(mTransport, query);
+        } finally {
+            hostPermits.release();
+        }
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore hostPermits = mHostPermits.get(host);
+        if (hostPermits == null) {
+            Semaphore newHostPermits = new Semaphore(mPerHostLimit);
+            hostPermits = mHostPermits.putIfAbsent(host, newHostPermits);
+            if (hostPermits == null) {
+                hostPermits = newHostPermits;
+            }
+        }
+        return hostPermits;
+    }
+
+    /**
+     * Returns the rows as NDJSON, one object per row with the query it was found by and the
+     * volume ids of its other editions.
+     */
+    private static String toJsonLines(String title, String author, ArrayList<BookItem> rows)
+            throws IOException {
+        StringWriter lines = new StringWriter(rows.size() * 512);
+        for (BookItem row : rows) {
+            JsonWriter writer = new JsonWriter(lines);
+            writer.beginObject();
+            writer.name("queryTitle").value(title);
+            writer.name("queryAuthor").value(author);
+            writer.name("id").value(row.getmId());
+            writer.name("title").value(row.getmTitle());
+            writer.name("author").value(row.getmAuthor());
+            writer.name("pageCount").value(row.getPageCountValue());
+            writer.name("language").value(row.getmLanguage());
+            writer.name("description").value(row.getmDescription());
+            writer.name("smallThumbnail").value(row.getmSmallThumbnailURL());
+            writer.name("previewLink").value(row.getmPreviewURL());
+            writer.name("editions");
+            writer.beginArray();
+            for (BookItem alternate : row.getmAlternates()) {
+                writer.value(alternate.getmId());
+            }
+            writer.endArray();
+            writer.endObject();
+            writer.flush();
+            lines.write('\n');
+        }
+        return lines.toString();
+    }
+
+    public long getQueryCount() {
+        return mQueryCount.get();
+    }
+
+    public long getFailedQueryCount() {
+        return mFailedQueryCount.get();
+    }
+
+    public long getItemCount() {
+        return mItemCount.get();
+    }
+
+    /**
+     * Returns the bytes received since the run started, as the {@link PipelineMetrics} of the page
+     * size recorded them.
+     */
+    public long getBytesReceived() {
+        return getPipelineBytesReceived() - mBytesReceivedBefore;
+    }
+
+    private long getPipelineBytesReceived() {
+        return PipelineMetrics.getSnapshot(PipelineMetrics.Stage.RESPONSE_BYTES, mPageSize)
+                .getSum();
+    }
+
+    /**
+     * Returns the counters and the rates over the given number of seconds.
+     */
+    public String formatStats(double seconds) {
+        return String.format(Locale.ROOT,
+                "%d queries (%.1f/s), %d failed, %d items (%.1f/s), %.1f MB received",
+                getQueryCount(), getQueryCount() / seconds, getFailedQueryCount(),
+                getItemCount(), getItemCount() / seconds, getBytesReceived() / 1e6);
+    }
+}
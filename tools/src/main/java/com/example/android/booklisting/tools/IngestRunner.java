@@ -0,0 +1,145 @@
+package com.example.android.booklisting.tools;
+
+import com.example.android.booklisting.BookQuery;
+import com.example.android.booklisting.HttpTransport;
+import com.example.android.booklisting.ResilientTransport;
+import com.example.android.booklisting.UrlConnectionTransport;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IngestRunner} runs a {@link CatalogIngester} from the command line, printing the query
+ * and item rates every few seconds and once more at the end. With --stub the queries go to an
+ * in-process {@link StubBooksServer} instead of Google Books.
+ *
+ * <p>Usage: {@code IngestRunner --queries file|- [--output file|-] [--base-url url | --stub]
+ * [--workers count] [--per-host count] [--page-size count]}
+ */
+
+public final class IngestRunner {
+
+    /** Timeouts of the transport, as in the app */
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    /** Seconds between two progress reports */
+    private static final int REPORT_INTERVAL_SECONDS = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private IngestRunner() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String queriesPath = null;
+        String outputPath = "-";
+        String baseUrl = BookQuery.DEFAULT_BASE_URL;
+        boolean stub = false;
+        int workerCount = 16;
+        int perHostLimit = 8;
+        int pageSize = 40;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--queries") && i + 1 < args.length) {
+                queriesPath = args[++i];
+            } else if (args[i].equals("--output") && i + 1 < args.length) {
+                outputPath = args[++i];
+            } else if (args[i].equals("--base-url") && i + 1 < args.length) {
+                baseUrl = args[++i];
+            } else if (args[i].equals("--stub")) {
+                stub = true;
+            } else if (args[i].equals("--workers") && i + 1 < args.length) {
+                workerCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--per-host") && i + 1 < args.length) {
+                perHostLimit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--page-size") && i + 1 < args.length) {
+                pageSize = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (queriesPath == null) {
+            throw new IllegalArgumentException("Missing --queries");
+        }
+        // Keep a connection alive for every request a host may take at the same time
+        UrlConnectionTransport.configureKeepAlive(perHostLimit);
+
+        StubBooksServer server = null;
+        if (stub) {
+            server = new StubBooksServer(0, perHostLimit);
+            server.start();
+            baseUrl = server.getBaseUrl();
+        }
+
+        // Room for a hedge of every worker's request
+        HttpTransport transport = new ResilientTransport(
+                new UrlConnectionTransport(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS),
+                workerCount * 2);
+
+        final CatalogIngester ingester = new CatalogIngester(transport, baseUrl, pageSize,
+                workerCount, perHostLimit);
+        InputStream queriesStream = queriesPath.equals("-") ? System.in
+                : new FileInputStream(queriesPath);
+        OutputStream outputStream = outputPath.equals("-") ? System.out
+                : new FileOutputStream(outputPath);
+        BufferedReader queries = new BufferedReader(new InputStreamReader(queriesStream, UTF_8));
+        Writer output = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8));
+
+        // Report the rates of every interval, so that a slowdown during the run shows up
+        final long startTime = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(new Runnable() {
+            private long mLastTime = startTime;
+            private long mLastQueryCount;
+            private long mLastItemCount;
+
+            @Override
+            public void run() {
+                long now = System.nanoTime();
+                double seconds = (now - mLastTime) / 1e9;
+                long queryCount = ingester.getQueryCount();
+                long itemCount = ingester.getItemCount();
+                System.err.println(String.format(Locale.ROOT,
+                        "%.0f s: %.1f queries/s, %.1f items/s, %s",
+                        (now - startTime) / 1e9, (queryCount - mLastQueryCount) / seconds,
+                        (itemCount - mLastItemCount) / seconds,
+                        ingester.formatStats((now - startTime) / 1e9)));
+                mLastTime = now;
+                mLastQueryCount = queryCount;
+                mLastItemCount = itemCount;
+            }
+        }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            ingester.ingest(queries, output);
+        } finally {
+            reporter.shutdownNow();
+            queries.close();
+            if (outputStream != System.out) {
+                output.close();
+            }
+            if (server != null) {
+                server.stop();
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.println(String.format(Locale.ROOT, "Done in %.1f s: ", seconds)
+                + ingester.formatStats(seconds));
+        System.err.println(((ResilientTransport) transport).getStats());
+        // Report failed queries in the exit status
+        System.exit(ingester.getFailedQueryCount() == 0 ? 0 : 1);
+    }
+}
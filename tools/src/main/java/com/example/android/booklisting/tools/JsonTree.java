@@ -0,0 +1,188 @@
+package com.example.android.booklisting.tools;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link JsonTree} reads JSON into a tree of maps, lists, strings, longs, doubles and booleans,
+ * and writes such a tree back, keeping only the keys a Google Books fields parameter selects.
+ * It lets the {@link StubBooksServer} project its responses the way the API does.
+ */
+
+final class JsonTree {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link JsonTree} object.
+     */
+    private JsonTree() {
+    }
+
+    static Object parse(String json) throws IOException {
+        return read(new StringReader(json));
+    }
+
+    static Object read(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            return read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the value as JSON, with only the keys of the selection if it isn't null.
+     */
+    static String toJson(Object value, Map<?, ?> selection) throws IOException {
+        StringWriter json = new StringWriter();
+        JsonWriter writer = new JsonWriter(json);
+        write(writer, value, selection);
+        writer.flush();
+        return json.toString();
+    }
+
+    /**
+     * Returns the tree of keys a fields parameter selects, e.g. "items(id,volumeInfo/title)".
+     * A key mapped to null selects its whole value.
+     */
+    static Map<String, Object> parseFields(String fields) {
+        int[] position = new int[1];
+        Map<String, Object> selection = new LinkedHashMap<String, Object>();
+        parseFieldList(fields, position, selection);
+        if (position[0] != fields.length()) {
+            throw new IllegalArgumentException("Invalid fields: " + fields);
+        }
+        return selection;
+    }
+
+    private static void parseFieldList(String fields, int[] position,
+                                       Map<String, Object> selection) {
+        while (true) {
+            parseField(fields, position, selection);
+            if (position[0] < fields.length() && fields.charAt(position[0]) == ',') {
+                position[0]++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void parseField(String fields, int[] position, Map<String, Object> selection) {
+        int start = position[0];
+        while (position[0] < fields.length() && "(),/".indexOf(fields.charAt(position[0])) < 0) {
+            position[0]++;
+        }
+        String name = fields.substring(start, position[0]).trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Invalid fields: " + fields);
+        }
+        char next = position[0] < fields.length() ? fields.charAt(position[0]) : ',';
+        if (next != '/' && next != '(') {
+            selection.put(name, null);
+            return;
+        }
+        Object existing = selection.get(name);
+        if (selection.containsKey(name) && existing == null) {
+            // Already selected as a whole, parse the rest into a throwaway selection
+            existing = new LinkedHashMap<String, Object>();
+        } else if (existing == null) {
+            existing = new LinkedHashMap<String, Object>();
+            selection.put(name, existing);
+        }
+        Map<String, Object> children = (Map<String, Object>) existing;
+        position[0]++;
+        if (next == '/') {
+            parseField(fields, position, children);
+        } else {
+            parseFieldList(fields, position, children);
+            if (position[0] >= fields.length() || fields.charAt(position[0]) != ')') {
+                throw new IllegalArgumentException("Invalid fields: " + fields);
+            }
+            position[0]++;
+        }
+    }
+
+    /**
+     * Write a value, keeping only the keys of its objects the selection asks for. The selection
+     * applies to every element of an array.
+     */
+    private static void write(JsonWriter writer, Object value, Map<?, ?> selection)
+            throws IOException {
+        if (value instanceof Map) {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (selection != null && !selection.containsKey(entry.getKey())) {
+                    continue;
+                }
+                writer.name((String) entry.getKey());
+                write(writer, entry.getValue(),
+                        selection != null ? (Map<?, ?>) selection.get(entry.getKey()) : null);
+            }
+            writer.endObject();
+        } else if (value instanceof List) {
+            writer.beginArray();
+            for (Object element : (List<?>) value) {
+                write(writer, element, selection);
+            }
+            writer.endArray();
+        } else if (value instanceof String) {
+            writer.value((String) value);
+        } else if (value instanceof Long) {
+            writer.value((Long) value);
+        } else if (value instanceof Double) {
+            writer.value((Double) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else {
+            writer.nullValue();
+        }
+    }
+
+    private static Object read(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<String, Object>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, read(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<Object>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.add(read(reader));
+                }
+                reader.endArray();
+                return array;
+            case NUMBER:
+                String number = reader.nextString();
+                if (number.indexOf('.') < 0 && number.indexOf('e') < 0
+                        && number.indexOf('E') < 0) {
+                    return Long.valueOf(number);
+                }
+                return Double.valueOf(number);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                return reader.nextString();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.android.booklisting.tools;
+
+import android.util.MalformedJsonException;
+
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.BookQuery;
+import com.example.android.booklisting.EditionDeduplicator;
+import com.example.android.booklisting.Histogram;
+import com.example.android.booklisting.HttpResponse;
+import com.example.android.booklisting.HttpTransport;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LoadDriver} keeps a fixed number of searches in flight for a given time, each one going
+ * through the same steps as a search in the app: the first page built like
+ * BookListActivity.firstPageQuery, then the following pages as the user scrolls, each fetched
+ * with the given {@link HttpTransport} and parsed by the {@link BookJsonParser} into rows while it
+ * is received, as QueryUtils.fetchBookData does. The latency of every page, from the request to
+ * its last row, goes into a {@link Histogram}, first pages apart since they are the ones the user
+ * waits for, and every failure is counted by its cause.
+ */
+
+public final class LoadDriver {
+
+    /** Size of the first page, as in the app */
+    private static final int FIRST_PAGE_SIZE = 10;
+
+    private final HttpTransport mTransport;
+    private final String mBaseUrl;
+    private final int mConcurrency;
+    private final int mPageSize;
+    private final int mPagesPerSearch;
+
+    /** Latency in microseconds of the first pages and of the following ones */
+    private final Histogram mFirstPageLatency = new Histogram();
+    private final Histogram mNextPageLatency = new Histogram();
+
+    /** Counters of the run */
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mItemCount = new AtomicLong();
+    private final AtomicLong mTimeoutCount = new AtomicLong();
+    private final AtomicLong mIoErrorCount = new AtomicLong();
+    private final AtomicLong mMalformedCount = new AtomicLong();
+
+    /** Responses other than 200, by response code */
+    private final ConcurrentHashMap<Integer, AtomicInteger> mHttpErrorCounts =
+            new ConcurrentHashMap<Integer, AtomicInteger>();
+
+    /** Next query to search, shared by all the workers */
+    private final AtomicInteger mNextQuery = new AtomicInteger();
+
+    /** Whether the pages are recorded, false during the warm-up */
+    private volatile boolean mRecording;
+
+    /**
+     * @param concurrency number of searches in flight at any time
+     * @param pageSize results of every page after the first one
+     * @param pagesPerSearch pages loaded by every search, the first one included
+     */
+    public LoadDriver(HttpTransport transport, String baseUrl, int concurrency, int pageSize,
+                      int pagesPerSearch) {
+        mTransport = transport;
+        mBaseUrl = baseUrl;
+        mConcurrency = concurrency;
+        mPageSize = pageSize;
+        mPagesPerSearch = pagesPerSearch;
+    }
+
+    /**
+     * Search the queries over and over, each a title and an author, for the warm-up and then
+     * the measured time. Only the measured time is recorded.
+     */
+    public void run(final List<String[]> queries, long warmUpMillis, long durationMillis)
+            throws InterruptedException {
+        final long endTime = System.nanoTime() + (warmUpMillis + durationMillis) * 1000000L;
+        final CountDownLatch done = new CountDownLatch(mConcurrency);
+        for (int i = 0; i < mConcurrency; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.nanoTime() < endTime) {
+                            String[] query = queries.get((mNextQuery.getAndIncrement()
+                                    & Integer.MAX_VALUE) % queries.size());
+                            search(query[0], query[1]);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "LoadDriver-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Thread.sleep(warmUpMillis);
+        mRecording = true;
+        done.await();
+    }
+
+    /**
+     * Load the first page of a search, then the following ones while there are more.
+     */
+    private void search(String title, String author) {
+        BookQuery firstPage = new BookQuery.Builder()
+                .setBaseUrl(mBaseUrl)
+                .setTitle(title)
+                .setAuthor(author)
+                .setPageSize(FIRST_PAGE_SIZE)
+                .setFields(BookJsonParser.FIELDS_PROJECTION)
+                .build();
+        if (firstPage.isEmpty()) {
+            return;
+        }
+        int itemCount = fetchPage(firstPage, mFirstPageLatency);
+        int startIndex = FIRST_PAGE_SIZE;
+        for (int page = 1; page < mPagesPerSearch && itemCount > 0; page++) {
+            BookQuery nextPage = firstPage.toBuilder()
+                    .setPageSize(mPageSize)
+                    .setStartIndex(startIndex)
+                    .build();
+            itemCount = fetchPage(nextPage, mNextPageLatency);
+            startIndex += mPageSize;
+        }
+    }
+
+    /**
+     * Fetch and parse a page, recording its latency if it succeeded. Returns the number of
+     * volumes it held, or 0 if it failed.
+     */
+    private int fetchPage(BookQuery query, Histogram latency) {
+        long startTime = System.nanoTime();
+        int itemCount = 0;
+        boolean succeeded = false;
+        try {
+            HttpResponse response = mTransport.get(query.getUrl(), null, null);
+            try {
+                int responseCode = response.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    EditionDeduplicator editions = new EditionDeduplicator();
+                    BookJsonParser.parse(response.getBody(), editions, null, null);
+                    itemCount = editions.getRows().size();
+                    succeeded = true;
+                } else if (mRecording) {
+                    countHttpError(responseCode);
+                }
+            } finally {
+                response.close();
+            }
+        } catch (SocketTimeoutException e) {
+            count(mTimeoutCount);
+        } catch (MalformedJsonException e) {
+            count(mMalformedCount);
+        } catch (IllegalStateException e) {
+            // The parser found a token where it expected another one
+            count(mMalformedCount);
+        } catch (IOException e) {
+            count(mIoErrorCount);
+        }
+        if (mRecording) {
+            mRequestCount.incrementAndGet();
+            if (succeeded) {
+                latency.record((System.nanoTime() - startTime) / 1000);
+                mItemCount.addAndGet(itemCount);
+            }
+        }
+        return itemCount;
+    }
+
+    private void count(AtomicLong counter) {
+        if (mRecording) {
+            counter.incrementAndGet();
+        }
+    }
+
+    private void countHttpError(int responseCode) {
+        AtomicInteger counter = mHttpErrorCounts.get(responseCode);
+        if (counter == null) {
+            AtomicInteger newCounter = new AtomicInteger();
+            counter = mHttpErrorCounts.putIfAbsent(responseCode, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the number of pages that failed, whatever the cause.
+     */
+    public long getErrorCount() {
+        long errorCount = mTimeoutCount.get() + mIoErrorCount.get() + mMalformedCount.get();
+        for (AtomicInteger counter : mHttpErrorCounts.values()) {
+            errorCount += counter.get();
+        }
+        return errorCount;
+    }
+
+    /**
+     * Returns the request rate and the counters over the given number of seconds.
+     */
+    public String formatStats(double seconds) {
+        return String.format(Locale.ROOT, "%d requests (%.1f/s), %d items, %d errors",
+                getRequestCount(), getRequestCount() / seconds, mItemCount.get(),
+                getErrorCount());
+    }
+
+    /**
+     * Returns the latency percentiles of both kinds of pages and the errors by cause.
+     */
+    public String formatReport(double seconds) {
+        StringBuilder report = new StringBuilder();
+        report.append(formatStats(seconds)).append('\n');
+        report.append(String.format(Locale.ROOT, "%-10s %8s %8s %8s %8s %8s %8s %8s%n",
+                "ms", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        appendLatency(report, "first page", mFirstPageLatency.getSnapshot());
+        appendLatency(report, "next pages", mNextPageLatency.getSnapshot());
+        report.append("Errors: ").append(mTimeoutCount.get()).append(" timeouts, ")
+                .append(mIoErrorCount.get()).append(" I/O errors, ")
+                .append(mMalformedCount.get()).append(" malformed responses");
+        for (Map.Entry<Integer, AtomicInteger> entry
+                : new TreeMap<Integer, AtomicInteger>(mHttpErrorCounts).entrySet()) {
+            report.append(", ").append(entry.getValue().get()).append(" HTTP ")
+                    .append(entry.getKey());
+        }
+        return report.toString();
+    }
+
+    private static void appendLatency(StringBuilder report, String name,
+                                      Histogram.Snapshot snapshot) {
+        report.append(String.format(Locale.ROOT,
+                "%-10s %8d %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f%n", name, snapshot.getCount(),
+                snapshot.getMean() / 1000.0, snapshot.getPercentile(0.5) / 1000.0,
+                snapshot.getPercentile(0.9) / 1000.0, snapshot.getPercentile(0.99) / 1000.0,
+                snapshot.getPercentile(0.999) / 1000.0, snapshot.getMax() / 1000.0));
+    }
+}
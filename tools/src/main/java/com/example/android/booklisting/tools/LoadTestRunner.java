@@ -0,0 +1,173 @@
+package com.example.android.booklisting.tools;
+
+import com.example.android.booklisting.BookQuery;
+import com.example.android.booklisting.HttpTransport;
+import com.example.android.booklisting.ResilientTransport;
+import com.example.android.booklisting.UrlConnectionTransport;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LoadTestRunner} runs a {@link LoadDriver} from the command line and prints its latency
+ * percentiles and errors. With --stub the searches go to an in-process {@link StubBooksServer}
+ * with the given network conditions instead of Google Books, and with --bare they skip the
+ * retries and hedging of the {@link ResilientTransport}, to see what those are worth.
+ *
+ * <p>Usage: {@code LoadTestRunner --queries file [--base-url url | --stub [--recorded directory]
+ * [--latency median-ms] [--latency-sigma sigma] [--bandwidth KB/s] [--stall-rate fraction]
+ * [--stall ms] [--error-rate fraction]] [--concurrency count] [--duration seconds]
+ * [--warm-up seconds] [--page-size count] [--pages count] [--bare]}
+ */
+
+public final class LoadTestRunner {
+
+    /** Timeouts of the transport, as in the app */
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    /** Seconds between two progress reports */
+    private static final int REPORT_INTERVAL_SECONDS = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String queriesPath = null;
+        String baseUrl = BookQuery.DEFAULT_BASE_URL;
+        boolean stub = false;
+        File recordedDirectory = null;
+        NetworkConditions.Builder conditions = new NetworkConditions.Builder();
+        int concurrency = 32;
+        int durationSeconds = 30;
+        int warmUpSeconds = 5;
+        int pageSize = 40;
+        int pagesPerSearch = 3;
+        boolean bare = false;
+        for (int i = 0; i < args.length; i++) {
+            int valueIndex = StubBooksServer.parseConditionsOption(args, i, conditions);
+            if (valueIndex >= 0) {
+                i = valueIndex;
+            } else if (args[i].equals("--queries") && i + 1 < args.length) {
+                queriesPath = args[++i];
+            } else if (args[i].equals("--base-url") && i + 1 < args.length) {
+                baseUrl = args[++i];
+            } else if (args[i].equals("--stub")) {
+                stub = true;
+            } else if (args[i].equals("--recorded") && i + 1 < args.length) {
+                recordedDirectory = new File(args[++i]);
+            } else if (args[i].equals("--concurrency") && i + 1 < args.length) {
+                concurrency = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--duration") && i + 1 < args.length) {
+                durationSeconds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--warm-up") && i + 1 < args.length) {
+                warmUpSeconds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--page-size") && i + 1 < args.length) {
+                pageSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--pages") && i + 1 < args.length) {
+                pagesPerSearch = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--bare")) {
+                bare = true;
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (queriesPath == null) {
+            throw new IllegalArgumentException("Missing --queries");
+        }
+        List<String[]> queries = readQueries(queriesPath);
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("No queries in " + queriesPath);
+        }
+        // Keep a connection alive for every search in flight
+        UrlConnectionTransport.configureKeepAlive(concurrency);
+
+        StubBooksServer server = null;
+        if (stub) {
+            RecordedVolumes recordedVolumes = recordedDirectory != null
+                    ? RecordedVolumes.load(recordedDirectory) : null;
+            // Slow responses hold on to their thread, and hedged requests double up on them
+            server = new StubBooksServer(0, concurrency * 3, conditions.build(),
+                    recordedVolumes);
+            server.start();
+            baseUrl = server.getBaseUrl();
+        }
+
+        UrlConnectionTransport connectionTransport =
+                new UrlConnectionTransport(CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+        HttpTransport transport = bare ? connectionTransport
+                : new ResilientTransport(connectionTransport, concurrency * 2);
+
+        final LoadDriver driver = new LoadDriver(transport, baseUrl, concurrency, pageSize,
+                pagesPerSearch);
+        System.err.println("Running " + concurrency + " concurrent searches against " + baseUrl
+                + " for " + warmUpSeconds + " + " + durationSeconds + " s");
+
+        // Report every interval, so that a slowdown during the run shows up
+        final long startTime = System.nanoTime() + warmUpSeconds * 1000000000L;
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                if (seconds > 0) {
+                    System.err.println(String.format(Locale.ROOT, "%.0f s: ", seconds)
+                            + driver.formatStats(seconds));
+                }
+            }
+        }, warmUpSeconds + REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            driver.run(queries, warmUpSeconds * 1000L, durationSeconds * 1000L);
+        } finally {
+            reporter.shutdownNow();
+            if (server != null) {
+                server.stop();
+            }
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(driver.formatReport(seconds));
+        if (transport instanceof ResilientTransport) {
+            System.out.println(((ResilientTransport) transport).getStats());
+        }
+        if (server != null) {
+            System.out.println("Server: " + server.getStats());
+        }
+    }
+
+    /**
+     * Returns the title and author of every line of the file, in the format of the
+     * {@link CatalogIngester}'s input.
+     */
+    private static List<String[]> readQueries(String path) throws IOException {
+        List<String[]> queries = new ArrayList<String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(path), UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                queries.add(new String[] {tab >= 0 ? line.substring(0, tab) : line,
+                        tab >= 0 ? line.substring(tab + 1) : ""});
+            }
+        } finally {
+            reader.close();
+        }
+        return queries;
+    }
+}
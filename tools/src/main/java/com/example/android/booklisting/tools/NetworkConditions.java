@@ -0,0 +1,164 @@
+package com.example.android.booklisting.tools;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * {@link NetworkConditions} describes how badly the {@link StubBooksServer} behaves: how long it
+ * takes to answer, drawn from a log-normal distribution like real response times, how fast it
+ * sends the body, how often it stalls halfway through a body and how often it fails with a 503.
+ * The defaults answer at once, at full speed and without faults.
+ */
+
+public final class NetworkConditions {
+
+    /** Conditions of a perfect server */
+    public static final NetworkConditions NONE = new Builder().build();
+
+    /** Median time before the response headers are sent, and the spread around it */
+    private final int mLatencyMedianMillis;
+    private final double mLatencySigma;
+
+    /** Rate the body is sent at, 0 for unlimited */
+    private final int mBandwidthBytesPerSecond;
+
+    /** Share of the responses that stop halfway through the body, and for how long */
+    private final double mStallRate;
+    private final int mStallMillis;
+
+    /** Share of the responses that fail with a 503 */
+    private final double mErrorRate;
+
+    private NetworkConditions(Builder builder) {
+        mLatencyMedianMillis = builder.mLatencyMedianMillis;
+        mLatencySigma = builder.mLatencySigma;
+        mBandwidthBytesPerSecond = builder.mBandwidthBytesPerSecond;
+        mStallRate = builder.mStallRate;
+        mStallMillis = builder.mStallMillis;
+        mErrorRate = builder.mErrorRate;
+    }
+
+    /**
+     * Returns the time to wait before sending the response headers.
+     */
+    public long sampleLatencyMillis(Random random) {
+        if (mLatencyMedianMillis == 0) {
+            return 0;
+        }
+        return Math.round(mLatencyMedianMillis * Math.exp(mLatencySigma * random.nextGaussian()));
+    }
+
+    public boolean sampleStall(Random random) {
+        return random.nextDouble() < mStallRate;
+    }
+
+    public boolean sampleError(Random random) {
+        return random.nextDouble() < mErrorRate;
+    }
+
+    public int getmBandwidthBytesPerSecond() {
+        return mBandwidthBytesPerSecond;
+    }
+
+    public int getmStallMillis() {
+        return mStallMillis;
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "latency median %d ms (sigma %.2f), bandwidth %s,"
+                        + " stalls %.1f%% of %d ms, errors %.1f%%",
+                mLatencyMedianMillis, mLatencySigma, mBandwidthBytesPerSecond == 0 ? "unlimited"
+                        : (mBandwidthBytesPerSecond / 1024) + " KB/s",
+                mStallRate * 100, mStallMillis, mErrorRate * 100);
+    }
+
+    /**
+     * Builder for {@link NetworkConditions} objects.
+     */
+    public static final class Builder {
+        private int mLatencyMedianMillis;
+        private double mLatencySigma = 0.5;
+        private int mBandwidthBytesPerSecond;
+        private double mStallRate;
+        private int mStallMillis = 5000;
+        private double mErrorRate;
+
+        public Builder() {
+        }
+
+        private Builder(NetworkConditions conditions) {
+            mLatencyMedianMillis = conditions.mLatencyMedianMillis;
+            mLatencySigma = conditions.mLatencySigma;
+            mBandwidthBytesPerSecond = conditions.mBandwidthBytesPerSecond;
+            mStallRate = conditions.mStallRate;
+            mStallMillis = conditions.mStallMillis;
+            mErrorRate = conditions.mErrorRate;
+        }
+
+        /**
+         * Set the median time before the response headers are sent.
+         */
+        public Builder setLatencyMedian(int millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("Latency must not be negative: " + millis);
+            }
+            mLatencyMedianMillis = millis;
+            return this;
+        }
+
+        /**
+         * Set the standard deviation of the logarithm of the latency, e.g. 0.5 puts a tenth of
+         * the responses above about twice the median.
+         */
+        public Builder setLatencySigma(double sigma) {
+            if (sigma < 0) {
+                throw new IllegalArgumentException("Sigma must not be negative: " + sigma);
+            }
+            mLatencySigma = sigma;
+            return this;
+        }
+
+        /**
+         * Set the rate the body is sent at, 0 for unlimited.
+         */
+        public Builder setBandwidth(int bytesPerSecond) {
+            if (bytesPerSecond < 0) {
+                throw new IllegalArgumentException("Bandwidth must not be negative: "
+                        + bytesPerSecond);
+            }
+            mBandwidthBytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        public Builder setStallRate(double rate) {
+            mStallRate = checkRate(rate);
+            return this;
+        }
+
+        public Builder setStallDuration(int millis) {
+            mStallMillis = millis;
+            return this;
+        }
+
+        public Builder setErrorRate(double rate) {
+            mErrorRate = checkRate(rate);
+            return this;
+        }
+
+        public NetworkConditions build() {
+            return new NetworkConditions(this);
+        }
+
+        private static double checkRate(double rate) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Rate must be between 0 and 1: " + rate);
+            }
+            return rate;
+        }
+    }
+}
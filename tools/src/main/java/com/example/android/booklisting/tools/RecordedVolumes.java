@@ -0,0 +1,174 @@
+package com.example.android.booklisting.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link RecordedVolumes} answers searches from volume search responses recorded from the Google
+ * Books API, so that the {@link StubBooksServer} can serve real data. The volumes of all the
+ * recordings are pooled and searched like the API does: intitle: terms must all be in the title,
+ * inauthor: terms in one of the authors and other terms anywhere. startIndex and maxResults page
+ * through the matches and a fields parameter projects the response the same way as the API.
+ */
+
+public final class RecordedVolumes {
+
+    private static final String KEY_ITEMS = "items";
+    private static final String KEY_ID = "id";
+    private static final String KEY_VOLUMEINFO = "volumeInfo";
+    private static final String KEY_TITLE = "title";
+    private static final String KEY_AUTHORS = "authors";
+    private static final String KEY_DESCRIPTION = "description";
+
+    private static final String PREFIX_TITLE = "intitle:";
+    private static final String PREFIX_AUTHOR = "inauthor:";
+
+    /** Recorded volumes by id, each a tree of maps, lists, strings, numbers and booleans */
+    private final LinkedHashMap<Object, Map<String, Object>> mVolumes;
+
+    private RecordedVolumes(LinkedHashMap<Object, Map<String, Object>> volumes) {
+        mVolumes = volumes;
+    }
+
+    /**
+     * Load every .json file of the directory. A volume recorded more than once is only kept
+     * the first time.
+     */
+    public static RecordedVolumes load(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        LinkedHashMap<Object, Map<String, Object>> volumes =
+                new LinkedHashMap<Object, Map<String, Object>>();
+        for (File file : files) {
+            if (!file.getName().endsWith(".json")) {
+                continue;
+            }
+            Object response = JsonTree.read(new InputStreamReader(new FileInputStream(file),
+                    "UTF-8"));
+            Object items = response instanceof Map ? ((Map<?, ?>) response).get(KEY_ITEMS) : null;
+            if (!(items instanceof List)) {
+                continue;
+            }
+            for (Object item : (List<?>) items) {
+                Object id = item instanceof Map ? ((Map<?, ?>) item).get(KEY_ID) : null;
+                if (id != null && !volumes.containsKey(id)) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> volume = (Map<String, Object>) item;
+                    volumes.put(id, volume);
+                }
+            }
+        }
+        return new RecordedVolumes(volumes);
+    }
+
+    public int size() {
+        return mVolumes.size();
+    }
+
+    /**
+     * Returns the response to a search, as the API would send it.
+     *
+     * @param q the decoded q parameter, e.g. "intitle:lord rings inauthor:tolkien"
+     * @param fields the fields parameter, or null for the full response
+     */
+    public String search(String q, int startIndex, int maxResults, String fields)
+            throws IOException {
+        List<String> titleTerms = new ArrayList<String>();
+        List<String> authorTerms = new ArrayList<String>();
+        List<String> anyTerms = new ArrayList<String>();
+        List<String> terms = anyTerms;
+        for (String term : q.toLowerCase(Locale.ROOT).split("\\s+")) {
+            if (term.startsWith(PREFIX_TITLE)) {
+                terms = titleTerms;
+                term = term.substring(PREFIX_TITLE.length());
+            } else if (term.startsWith(PREFIX_AUTHOR)) {
+                terms = authorTerms;
+                term = term.substring(PREFIX_AUTHOR.length());
+            }
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+
+        List<Map<String, Object>> matches = new ArrayList<Map<String, Object>>();
+        for (Map<String, Object> volume : mVolumes.values()) {
+            if (matches(volume, titleTerms, authorTerms, anyTerms)) {
+                matches.add(volume);
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("kind", "books#volumes");
+        response.put("totalItems", (long) matches.size());
+        int end = Math.min(matches.size(), startIndex + maxResults);
+        if (startIndex < end) {
+            // Like the API, an empty page has no items at all
+            response.put(KEY_ITEMS, new ArrayList<Object>(matches.subList(startIndex, end)));
+        }
+
+        return JsonTree.toJson(response, fields != null ? JsonTree.parseFields(fields) : null);
+    }
+
+    /**
+     * Returns the volume resource with the given id, as the volumes/{id} endpoint would send
+     * it, or null if it wasn't recorded.
+     *
+     * @param fields the fields parameter, or null for the full resource
+     */
+    public String volume(String id, String fields) throws IOException {
+        Map<String, Object> volume = mVolumes.get(id);
+        if (volume == null) {
+            return null;
+        }
+        return JsonTree.toJson(volume, fields != null ? JsonTree.parseFields(fields) : null);
+    }
+
+    private static boolean matches(Map<String, Object> volume, List<String> titleTerms,
+                                   List<String> authorTerms, List<String> anyTerms) {
+        Object volumeInfo = volume.get(KEY_VOLUMEINFO);
+        if (!(volumeInfo instanceof Map)) {
+            return false;
+        }
+        String title = lowerCase(((Map<?, ?>) volumeInfo).get(KEY_TITLE));
+        String description = lowerCase(((Map<?, ?>) volumeInfo).get(KEY_DESCRIPTION));
+        StringBuilder authors = new StringBuilder();
+        Object authorList = ((Map<?, ?>) volumeInfo).get(KEY_AUTHORS);
+        if (authorList instanceof List) {
+            for (Object author : (List<?>) authorList) {
+                authors.append(lowerCase(author)).append('\n');
+            }
+        }
+        for (String term : titleTerms) {
+            if (!title.contains(term)) {
+                return false;
+            }
+        }
+        for (String term : authorTerms) {
+            if (authors.indexOf(term) < 0) {
+                return false;
+            }
+        }
+        for (String term : anyTerms) {
+            if (!title.contains(term) && authors.indexOf(term) < 0
+                    && !description.contains(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String lowerCase(Object value) {
+        return value instanceof String ? ((String) value).toLowerCase(Locale.ROOT) : "";
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.android.booklisting.tools;
+
+import com.example.android.booklisting.benchmark.Fixtures;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link StubBooksServer} stands in for the Google Books volumes endpoint on localhost, so that
+ * the fetch pipeline can be run end to end without the network. Every query gets its own
+ * generated volumes, the same ones every time, or the matching ones of the {@link RecordedVolumes}
+ * if it has any; maxResults and startIndex page through them and a fields parameter returns the
+ * projected response. Each of those volumes is also served on its own at volumes/{id}, as the
+ * detail screen fetches it. The {@link NetworkConditions} make it slow, throttled, stalling or
+ * failing.
+ */
+
+public final class StubBooksServer {
+
+    /** Path of the volumes endpoint, as on the real server */
+    public static final String VOLUMES_PATH = "/books/v1/volumes";
+
+    /** Number of volumes every query matches */
+    private static final int TOTAL_ITEMS = 400;
+
+    /** Largest maxResults the API accepts */
+    private static final int MAX_RESULTS = 40;
+
+    /** A throttled body is sent in this many slices per second */
+    private static final int SLICES_PER_SECOND = 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final NetworkConditions mConditions;
+    private final RecordedVolumes mRecordedVolumes;
+
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mErrorCount = new AtomicInteger();
+    private final AtomicInteger mStallCount = new AtomicInteger();
+
+    /**
+     * Create a server on the given port of the loopback interface, 0 for any free port, handling
+     * up to threadCount requests at the same time.
+     */
+    public StubBooksServer(int port, int threadCount) throws IOException {
+        this(port, threadCount, NetworkConditions.NONE, null);
+    }
+
+    /**
+     * Create a server behaving according to the given conditions and serving the recorded
+     * volumes, or generated ones if recordedVolumes is null. Slow responses hold on to their
+     * thread, so threadCount should be well above the number of concurrent requests.
+     */
+    public StubBooksServer(int port, int threadCount, NetworkConditions conditions,
+                           RecordedVolumes recordedVolumes) throws IOException {
+        mConditions = conditions;
+        mRecordedVolumes = recordedVolumes;
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                threadCount * 4);
+        mExecutor = Executors.newFixedThreadPool(threadCount);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext(VOLUMES_PATH, new VolumesHandler());
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /** Returns the URL to use instead of the Google Books volumes endpoint. */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + VOLUMES_PATH;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the counters of the server.
+     */
+    public String getStats() {
+        return "Requests: " + mRequestCount.get() + ", injected errors: " + mErrorCount.get()
+                + ", stalls: " + mStallCount.get() + " (" + mConditions + ")";
+    }
+
+    /**
+     * Serves the volumes of a query, or a single volume by id under the same path.
+     */
+    private final class VolumesHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            mRequestCount.incrementAndGet();
+            Random random = ThreadLocalRandom.current();
+            try {
+                Map<String, String> parameters = parseQuery(exchange.getRequestURI()
+                        .getRawQuery());
+                String path = exchange.getRequestURI().getPath();
+                String volumeId = path.startsWith(VOLUMES_PATH + "/")
+                        ? path.substring(VOLUMES_PATH.length() + 1) : null;
+                String q = parameters.get("q");
+                int maxResults = parseInt(parameters.get("maxResults"), 10);
+                int startIndex = parseInt(parameters.get("startIndex"), 0);
+                String fields = parameters.get("fields");
+                if (volumeId == null && (q == null || q.isEmpty() || maxResults < 0
+                        || maxResults > MAX_RESULTS || startIndex < 0)) {
+                    send(exchange, 400, "{\"error\": {\"code\": 400, \"message\": "
+                            + "\"Invalid value\"}}", false);
+                    return;
+                }
+                if (fields != null && !isValidFields(fields)) {
+                    send(exchange, 400, "{\"error\": {\"code\": 400, \"message\": "
+                            + "\"Invalid field selection\"}}", false);
+                    return;
+                }
+
+                Thread.sleep(mConditions.sampleLatencyMillis(random));
+                if (mConditions.sampleError(random)) {
+                    mErrorCount.incrementAndGet();
+                    send(exchange, 503, "{\"error\": {\"code\": 503, \"message\": "
+                            + "\"Backend Error\"}}", false);
+                    return;
+                }
+                String json;
+                if (volumeId != null) {
+                    json = volume(volumeId, fields);
+                    if (json == null) {
+                        send(exchange, 404, "{\"error\": {\"code\": 404, \"message\": "
+                                + "\"The volume ID could not be found.\"}}", false);
+                        return;
+                    }
+                } else if (mRecordedVolumes != null) {
+                    json = mRecordedVolumes.search(q, startIndex, maxResults, fields);
+                } else {
+                    int itemCount = Math.max(0, Math.min(maxResults, TOTAL_ITEMS - startIndex));
+                    // Kept to 32 bits, so that Fixtures.generateVolume finds the volumes again
+                    long seed = (q.hashCode() * 31L + startIndex) & 0xffffffffL;
+                    json = project(Fixtures.generate(seed, itemCount, false), fields);
+                }
+                send(exchange, 200, json, mConditions.sampleStall(random));
+            } catch (InterruptedException e) {
+                // The server is stopping
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the volume with the given id, projected by the fields if they aren't null, or null
+     * if no response holds it.
+     */
+    private String volume(String volumeId, String fields) throws IOException {
+        if (mRecordedVolumes != null) {
+            return mRecordedVolumes.volume(volumeId, fields);
+        }
+        String json = Fixtures.generateVolume(volumeId);
+        return json != null ? project(json, fields) : null;
+    }
+
+    private static boolean isValidFields(String fields) {
+        try {
+            JsonTree.parseFields(fields);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String project(String json, String fields) throws IOException {
+        if (fields == null) {
+            return json;
+        }
+        return JsonTree.toJson(JsonTree.parse(json), JsonTree.parseFields(fields));
+    }
+
+    /**
+     * Send the body, gzipped if the client accepts it like the real server does, at the
+     * bandwidth of the conditions. A stalled body stops halfway for the stall duration.
+     */
+    private void send(HttpExchange exchange, int responseCode, String json, boolean stall)
+            throws IOException, InterruptedException {
+        byte[] bytes = json.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            OutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(bytes);
+            gzip.close();
+            bytes = compressed.toByteArray();
+        }
+        exchange.sendResponseHeaders(responseCode, bytes.length);
+
+        OutputStream body = exchange.getResponseBody();
+        int bandwidth = mConditions.getmBandwidthBytesPerSecond();
+        int sliceLength = bandwidth > 0 ? Math.max(1, bandwidth / SLICES_PER_SECOND)
+                : bytes.length;
+        int stallOffset = stall ? bytes.length / 2 : -1;
+        long startTime = System.nanoTime();
+        int offset = 0;
+        while (offset < bytes.length) {
+            int length = Math.min(sliceLength, bytes.length - offset);
+            if (offset < stallOffset && offset + length > stallOffset) {
+                length = stallOffset - offset;
+            }
+            body.write(bytes, offset, length);
+            offset += length;
+            if (offset == stallOffset) {
+                mStallCount.incrementAndGet();
+                body.flush();
+                Thread.sleep(mConditions.getmStallMillis());
+                startTime += mConditions.getmStallMillis() * 1000000L;
+            }
+            if (bandwidth > 0 && offset < bytes.length) {
+                // Wait until the bytes sent so far are due at the bandwidth
+                long dueNanos = offset * 1000000000L / bandwidth;
+                long aheadMillis = (dueNanos - (System.nanoTime() - startTime)) / 1000000;
+                if (aheadMillis > 0) {
+                    body.flush();
+                    Thread.sleep(aheadMillis);
+                }
+            }
+        }
+        body.close();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery)
+            throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Apply the option at args[index] to the conditions. Returns the index of the option's
+     * value, or -1 if it isn't one of the conditions.
+     */
+    static int parseConditionsOption(String[] args, int index,
+                                     NetworkConditions.Builder conditions) {
+        if (index + 1 >= args.length) {
+            return -1;
+        }
+        String option = args[index];
+        String value = args[index + 1];
+        if (option.equals("--latency")) {
+            conditions.setLatencyMedian(Integer.parseInt(value));
+        } else if (option.equals("--latency-sigma")) {
+            conditions.setLatencySigma(Double.parseDouble(value));
+        } else if (option.equals("--bandwidth")) {
+            conditions.setBandwidth(Integer.parseInt(value) * 1024);
+        } else if (option.equals("--stall-rate")) {
+            conditions.setStallRate(Double.parseDouble(value));
+        } else if (option.equals("--stall")) {
+            conditions.setStallDuration(Integer.parseInt(value));
+        } else if (option.equals("--error-rate")) {
+            conditions.setErrorRate(Double.parseDouble(value));
+        } else {
+            return -1;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Run the server until the process is killed.
+     *
+     * <p>Usage: {@code StubBooksServer [--port port] [--threads count] [--recorded directory]
+     * [--latency median-ms] [--latency-sigma sigma] [--bandwidth KB/s]
+     * [--stall-rate fraction] [--stall ms] [--error-rate fraction]}
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threadCount = 64;
+        NetworkConditions.Builder conditions = new NetworkConditions.Builder();
+        RecordedVolumes recordedVolumes = null;
+        for (int i = 0; i < args.length; i++) {
+            int valueIndex = parseConditionsOption(args, i, conditions);
+            if (valueIndex >= 0) {
+                i = valueIndex;
+            } else if (args[i].equals("--recorded") && i + 1 < args.length) {
+                recordedVolumes = RecordedVolumes.load(new File(args[++i]));
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        StubBooksServer server = new StubBooksServer(port, threadCount, conditions.build(),
+                recordedVolumes);
+        server.start();
+        System.out.println("Serving " + (recordedVolumes != null ? recordedVolumes.size()
+                + " recorded volumes" : "generated volumes") + " at " + server.getBaseUrl());
+        System.out.println("Conditions: " + conditions.build());
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import com.example.android.booklisting.tools.NetworkConditions;
+import com.example.android.booklisting.tools.StubBooksServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests how fast a cancelled fetch returns while a slow {@link StubBooksServer} holds it up,
+ * either before the response headers or while the body trickles in. The worker fetches the way
+ * QueryUtils does: the transport aborts the request until the headers arrived, after that the
+ * worker aborts the response and the parser stops at the next item.
+ *
+ * <p>The body trickles rather than stalls: the JDK's HttpURLConnection, unlike Android's, only
+ * disconnects once a pending read of the body returned, so a read parked on a stalled socket
+ * would hold the cancellation up for as long as the stall whatever the app does.
+ */
+public class CancellationLatencyTest {
+
+    /** A cancelled worker has to return within this long */
+    private static final long MAX_CANCELLATION_MILLIS = 1000;
+
+    /** How long the server holds a response up, far beyond the bound */
+    private static final int SLOW_MILLIS = 30000;
+
+    /** Rate of a trickling body, which takes several seconds for a page */
+    private static final int TRICKLE_BYTES_PER_SECOND = 256;
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private StubBooksServer mServer;
+    private ExecutorService mWorkers;
+
+    @Before
+    public void setUp() {
+        mWorkers = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        if (mServer != null) {
+            mServer.stop();
+        }
+        mWorkers.shutdownNow();
+    }
+
+    @Test
+    public void cancelMidConnect() throws Exception {
+        assertCancelledMidConnect(newTransport());
+    }
+
+    @Test
+    public void cancelMidConnectOfResilientTransport() throws Exception {
+        assertCancelledMidConnect(new ResilientTransport(newTransport()));
+    }
+
+    @Test
+    public void cancelMidBody() throws Exception {
+        assertCancelledMidBody(newTransport());
+    }
+
+    @Test
+    public void cancelMidBodyOfResilientTransport() throws Exception {
+        assertCancelledMidBody(new ResilientTransport(newTransport()));
+    }
+
+    /**
+     * The server holds the response headers back, so the worker is blocked in the transport.
+     */
+    private void assertCancelledMidConnect(HttpTransport transport) throws Exception {
+        startServer(new NetworkConditions.Builder()
+                .setLatencyMedian(SLOW_MILLIS)
+                .setLatencySigma(0)
+                .build());
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        Future<ArrayList<BookItem>> worker = fetch(transport, cancellationSignal, null);
+        awaitRequest();
+
+        assertCancelledWithinBound(worker, cancellationSignal);
+    }
+
+    /**
+     * The server sends the body a few bytes at a time, so the worker is still reading it after
+     * it has parsed the first item.
+     */
+    private void assertCancelledMidBody(HttpTransport transport) throws Exception {
+        startServer(new NetworkConditions.Builder()
+                .setBandwidth(TRICKLE_BYTES_PER_SECOND)
+                .build());
+        final CountDownLatch firstItemParsed = new CountDownLatch(1);
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        Future<ArrayList<BookItem>> worker = fetch(transport, cancellationSignal,
+                new BookJsonParser.OnBookItemParsedListener() {
+                    @Override
+                    public void onBookItemParsed(BookItem bookItem) {
+                        firstItemParsed.countDown();
+                    }
+                });
+        assertTrue(firstItemParsed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertCancelledWithinBound(worker, cancellationSignal);
+    }
+
+    private static HttpTransport newTransport() {
+        // Timeouts beyond the slow server's delay, so that only the cancellation ends the wait
+        return new UrlConnectionTransport(SLOW_MILLIS * 2, SLOW_MILLIS * 2);
+    }
+
+    private void startServer(NetworkConditions conditions) throws IOException {
+        mServer = new StubBooksServer(0, 4, conditions, null);
+        mServer.start();
+    }
+
+    private Future<ArrayList<BookItem>> fetch(final HttpTransport transport,
+                                              final CancellationSignal cancellationSignal,
+                                              final BookJsonParser.OnBookItemParsedListener
+                                                      listener) {
+        final String url = new BookQuery.Builder()
+                .setBaseUrl(mServer.getBaseUrl())
+                .setTitle("android")
+                .setPageSize(40)
+                .setFields(BookJsonParser.FIELDS_PROJECTION)
+                .build()
+                .getUrl();
+        return mWorkers.submit(new Callable<ArrayList<BookItem>>() {
+            @Override
+            public ArrayList<BookItem> call() throws IOException {
+                return fetch(transport, url, listener, cancellationSignal);
+            }
+        });
+    }
+
+    /**
+     * Fetch and parse a page the way QueryUtils.makeHTTPRequest does, without its caches.
+     */
+    private static ArrayList<BookItem> fetch(HttpTransport transport, String url,
+                                             BookJsonParser.OnBookItemParsedListener listener,
+                                             CancellationSignal cancellationSignal)
+            throws IOException {
+        final HttpResponse response = transport.get(url, null, cancellationSignal);
+        try {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    response.abort();
+                }
+            });
+            EditionDeduplicator editions = new EditionDeduplicator();
+            BookJsonParser.parse(response.getBody(), editions, listener, cancellationSignal);
+            return editions.getRows();
+        } catch (IOException e) {
+            // An aborted read fails with an IOException
+            cancellationSignal.throwIfCanceled();
+            throw e;
+        } finally {
+            cancellationSignal.setOnCancelListener(null);
+            try {
+                response.close();
+            } catch (IOException e) {
+                // The response was aborted, there is nothing left to close
+            }
+        }
+    }
+
+    private void awaitRequest() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (mServer.getRequestCount() == 0) {
+            if (System.nanoTime() > deadline) {
+                fail("The request didn't reach the server");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static void assertCancelledWithinBound(Future<ArrayList<BookItem>> worker,
+                                                   CancellationSignal cancellationSignal)
+            throws InterruptedException {
+        long startTime = System.nanoTime();
+        cancellationSignal.cancel();
+        try {
+            worker.get(MAX_CANCELLATION_MILLIS, TimeUnit.MILLISECONDS);
+            fail("The worker wasn't cancelled");
+        } catch (ExecutionException e) {
+            assertTrue("Failed with " + e.getCause(),
+                    e.getCause() instanceof OperationCanceledException);
+        } catch (TimeoutException e) {
+            fail("The worker was still running " + MAX_CANCELLATION_MILLIS
+                    + " ms after the cancellation");
+        }
+        long cancellationMillis = (System.nanoTime() - startTime) / 1000000;
+        assertTrue("Returned after " + cancellationMillis + " ms",
+                cancellationMillis < MAX_CANCELLATION_MILLIS);
+    }
+}
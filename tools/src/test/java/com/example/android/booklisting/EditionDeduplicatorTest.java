@@ -0,0 +1,88 @@
+package com.example.android.booklisting;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the titles the {@link EditionDeduplicator} groups: the editions of a work share a row,
+ * the books of a series or the volumes of a work keep rows of their own. The savings it reports
+ * are the books collapsed into its rows, however many passes it took.
+ */
+public class EditionDeduplicatorTest {
+
+    @Test
+    public void editionNotesAreIgnored() {
+        String fingerprint = fingerprint("Dune", "Frank Herbert");
+        assertEquals(fingerprint, fingerprint("Dune (Revised)", "Frank Herbert"));
+        assertEquals(fingerprint, fingerprint("Dune: A Novel", "Frank Herbert"));
+        assertEquals(fingerprint, fingerprint("Dune (40th Anniversary Edition)", "Frank Herbert"));
+        assertEquals(fingerprint, fingerprint("Dune [2nd ed., 1999]", "Frank Herbert"));
+        assertEquals(fingerprint, fingerprint("Dune: Revised and Expanded Edition",
+                "Frank P. Herbert"));
+    }
+
+    @Test
+    public void seriesAndVolumeNumbersAreKept() {
+        assertNotEquals(fingerprint("Dune (Book 1)", "Frank Herbert"),
+                fingerprint("Dune (Book 2)", "Frank Herbert"));
+        assertNotEquals(fingerprint("Foo: Volume 1", "Jane Doe"),
+                fingerprint("Foo: Volume 2", "Jane Doe"));
+        assertNotEquals(fingerprint("The Expanse [Book 3]", "James Corey"),
+                fingerprint("The Expanse [Book 4]", "James Corey"));
+        assertNotEquals(fingerprint("Foo: The Sequel", "Jane Doe"), fingerprint("Foo", "Jane Doe"));
+        // An edition note next to the volume number doesn't hide it
+        assertEquals(fingerprint("Foo: Volume 1", "Jane Doe"),
+                fingerprint("Foo (Revised): Volume 1", "Jane Doe"));
+    }
+
+    @Test
+    public void seriesKeepsOneRowPerBook() {
+        EditionDeduplicator editions = new EditionDeduplicator();
+        assertTrue(editions.add(book("1", "Dune (Book 1)")));
+        assertTrue(editions.add(book("2", "Dune (Book 2)")));
+        assertFalse(editions.add(book("3", "Dune (Book 1) (Revised)")));
+        assertTrue(editions.add(book("4", "Dune: Volume 3")));
+
+        ArrayList<BookItem> rows = editions.getRows();
+        assertEquals(3, rows.size());
+        assertEquals(1, rows.get(0).getmAlternates().size());
+        assertEquals("3", rows.get(0).getmAlternates().get(0).getmId());
+        assertTrue(rows.get(1).getmAlternates().isEmpty());
+        assertEquals(1, editions.getRowsSaved());
+        assertEquals(1, editions.getThumbnailRequestsSaved());
+    }
+
+    @Test
+    public void collapsedBooksAreCountedOnceAcrossPasses() {
+        // A page deduplicated on its own, then merged into the rows shown, twice as after a
+        // rebuild of the rows
+        EditionDeduplicator page = new EditionDeduplicator();
+        page.add(book("1", "Dune"));
+        page.add(book("2", "Dune (Revised)"));
+        EditionDeduplicator shown = new EditionDeduplicator();
+        shown.addAll(page.getRows());
+        shown.add(book("3", "Dune: A Novel"));
+        shown.clear();
+        shown.addAll(page.getRows());
+        shown.add(book("3", "Dune: A Novel"));
+
+        assertEquals(2, shown.getRowsSaved());
+        assertEquals(2, shown.getThumbnailRequestsSaved());
+    }
+
+    private static String fingerprint(String title, String author) {
+        return EditionDeduplicator.fingerprint(new BookItem(null, null, null, title, author, 0,
+                "en", null));
+    }
+
+    private static BookItem book(String id, String title) {
+        return new BookItem(id, "https://example.com/" + id + ".jpg", null, title,
+                "Frank Herbert", 0, "en", null);
+    }
+}
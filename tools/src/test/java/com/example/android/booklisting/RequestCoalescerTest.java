@@ -0,0 +1,196 @@
+package com.example.android.booklisting;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the join and cancellation semantics of the {@link RequestCoalescer}: callers of the
+ * same query share a fetch, a cancelled caller stops waiting at once and the fetch is only
+ * cancelled once its last caller has gone.
+ */
+public class RequestCoalescerTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private ExecutorService mCallers;
+    private BlockingFetcher mFetcher;
+
+    @Before
+    public void setUp() {
+        mCallers = Executors.newCachedThreadPool();
+        mFetcher = new BlockingFetcher();
+    }
+
+    @After
+    public void tearDown() {
+        mFetcher.mRelease.countDown();
+        mCallers.shutdownNow();
+    }
+
+    @Test
+    public void callersOfTheSameQueryShareOneFetch() throws Exception {
+        String url = "https://example.com/books/v1/volumes?q=join&maxResults=10";
+        Future<ArrayList<BookItem>> first = call(url, null);
+        assertTrue(mFetcher.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // The same query with its parameters in another order
+        Future<ArrayList<BookItem>> second = call(
+                "https://example.com/books/v1/volumes?maxResults=10&q=join", null);
+        awaitWaiting(2);
+
+        mFetcher.mRelease.countDown();
+        ArrayList<BookItem> result = first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertSame(result, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, mFetcher.mFetchCount.get());
+    }
+
+    @Test
+    public void cancelledCallerLeavesTheFetchToTheOthers() throws Exception {
+        String url = "https://example.com/books/v1/volumes?q=leave";
+        CancellationSignal firstSignal = new CancellationSignal();
+        Future<ArrayList<BookItem>> first = call(url, firstSignal);
+        assertTrue(mFetcher.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Future<ArrayList<BookItem>> second = call(url, new CancellationSignal());
+        awaitWaiting(2);
+
+        // The cancelled caller returns while the fetch is still running
+        firstSignal.cancel();
+        assertCanceled(first);
+        assertFalse(mFetcher.mCancellationSignal.isCanceled());
+
+        mFetcher.mRelease.countDown();
+        assertSame(mFetcher.mResult, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, mFetcher.mFetchCount.get());
+    }
+
+    @Test
+    public void lastCallerCancelsTheFetch() throws Exception {
+        String url = "https://example.com/books/v1/volumes?q=last";
+        CancellationSignal firstSignal = new CancellationSignal();
+        CancellationSignal secondSignal = new CancellationSignal();
+        Future<ArrayList<BookItem>> first = call(url, firstSignal);
+        assertTrue(mFetcher.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Future<ArrayList<BookItem>> second = call(url, secondSignal);
+        awaitWaiting(2);
+
+        firstSignal.cancel();
+        assertCanceled(first);
+        assertFalse(mFetcher.mCancellationSignal.isCanceled());
+        secondSignal.cancel();
+        assertCanceled(second);
+        assertTrue(mFetcher.mCanceled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // A caller arriving after that starts a fresh fetch instead of joining the cancelled one
+        BlockingFetcher nextFetcher = new BlockingFetcher();
+        nextFetcher.mRelease.countDown();
+        assertSame(nextFetcher.mResult, RequestCoalescer.fetch(url, null, nextFetcher));
+        assertEquals(1, nextFetcher.mFetchCount.get());
+    }
+
+    private Future<ArrayList<BookItem>> call(final String url,
+                                             final CancellationSignal cancellationSignal) {
+        return mCallers.submit(new Callable<ArrayList<BookItem>>() {
+            @Override
+            public ArrayList<BookItem> call() {
+                return RequestCoalescer.fetch(url, cancellationSignal, mFetcher);
+            }
+        });
+    }
+
+    /**
+     * Wait until count caller threads are parked, i.e. have joined the flight and wait for it.
+     */
+    private void awaitWaiting(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            int waiting = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("pool-") && isWaitingInCoalescer(thread)) {
+                    waiting++;
+                }
+            }
+            if (waiting >= count) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("The callers didn't join the flight");
+    }
+
+    private static boolean isWaitingInCoalescer(Thread thread) {
+        if (thread.getState() != Thread.State.WAITING) {
+            return false;
+        }
+        for (StackTraceElement element : thread.getStackTrace()) {
+            if (element.getClassName().equals(RequestCoalescer.class.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertCanceled(Future<ArrayList<BookItem>> caller)
+            throws InterruptedException {
+        try {
+            caller.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("The caller wasn't cancelled");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OperationCanceledException);
+        } catch (TimeoutException e) {
+            fail("The cancelled caller kept waiting");
+        }
+    }
+
+    /**
+     * A fetch which runs until it is released or cancelled.
+     */
+    private static final class BlockingFetcher implements RequestCoalescer.Fetcher {
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+        private final CountDownLatch mCanceled = new CountDownLatch(1);
+        private final AtomicInteger mFetchCount = new AtomicInteger();
+        private final ArrayList<BookItem> mResult = new ArrayList<BookItem>();
+        private volatile CancellationSignal mCancellationSignal;
+
+        @Override
+        public ArrayList<BookItem> fetch(String url, CancellationSignal cancellationSignal) {
+            mFetchCount.incrementAndGet();
+            mCancellationSignal = cancellationSignal;
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    mCanceled.countDown();
+                    mRelease.countDown();
+                }
+            });
+            mStarted.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cancellationSignal.throwIfCanceled();
+            return mResult;
+        }
+    }
+}
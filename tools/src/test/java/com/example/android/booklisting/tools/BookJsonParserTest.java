@@ -0,0 +1,88 @@
+package com.example.android.booklisting.tools;
+
+import com.example.android.booklisting.BookItem;
+import com.example.android.booklisting.BookJsonParser;
+import com.example.android.booklisting.EditionDeduplicator;
+import com.example.android.booklisting.benchmark.Fixtures;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Parses the same response in full and projected the way the API would project it for the
+ * {@link BookJsonParser}'s fields parameters, and checks that the projections keep every field
+ * the parser reads: the full projection parses to the same books, the list's one only lacks the
+ * descriptions.
+ */
+public class BookJsonParserTest {
+
+    private static final int ITEM_COUNT = 200;
+
+    @Test
+    public void fullProjectionKeepsEveryParsedField() throws IOException {
+        String response = Fixtures.generate(ITEM_COUNT, false);
+        List<BookItem> expected = parse(response);
+        List<BookItem> actual = parse(project(response, BookJsonParser.FULL_FIELDS_PROJECTION));
+        assertFalse(expected.isEmpty());
+        assertSameBooks(expected, actual, true);
+    }
+
+    @Test
+    public void listProjectionOnlyDropsTheDescription() throws IOException {
+        String response = Fixtures.generate(ITEM_COUNT, false);
+        List<BookItem> expected = parse(response);
+        List<BookItem> actual = parse(project(response, BookJsonParser.FIELDS_PROJECTION));
+        assertSameBooks(expected, actual, false);
+        for (BookItem bookItem : actual) {
+            assertNull(bookItem.getmDescription());
+        }
+    }
+
+    private static String project(String response, String fields) throws IOException {
+        return JsonTree.toJson(JsonTree.parse(response), JsonTree.parseFields(fields));
+    }
+
+    private static List<BookItem> parse(String response) throws IOException {
+        EditionDeduplicator editions = new EditionDeduplicator();
+        BookJsonParser.parse(new ByteArrayInputStream(response.getBytes("UTF-8")), editions,
+                null, null);
+        return editions.getRows();
+    }
+
+    private static void assertSameBooks(List<BookItem> expected, List<BookItem> actual,
+                                        boolean withDescription) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameBook(expected.get(i), actual.get(i), withDescription);
+            List<BookItem> expectedAlternates = expected.get(i).getmAlternates();
+            List<BookItem> actualAlternates = actual.get(i).getmAlternates();
+            assertEquals(expectedAlternates.size(), actualAlternates.size());
+            for (int j = 0; j < expectedAlternates.size(); j++) {
+                assertSameBook(expectedAlternates.get(j), actualAlternates.get(j),
+                        withDescription);
+            }
+        }
+    }
+
+    private static void assertSameBook(BookItem expected, BookItem actual,
+                                       boolean withDescription) {
+        String id = expected.getmId();
+        assertEquals(id, actual.getmId());
+        assertEquals(id, expected.getmTitle(), actual.getmTitle());
+        assertEquals(id, expected.getmAuthor(), actual.getmAuthor());
+        assertEquals(id, expected.getPageCountValue(), actual.getPageCountValue());
+        assertEquals(id, expected.getmSmallThumbnailURL(), actual.getmSmallThumbnailURL());
+        assertEquals(id, expected.getmLanguage(), actual.getmLanguage());
+        assertEquals(id, expected.getmPreviewURL(), actual.getmPreviewURL());
+        if (withDescription) {
+            assertEquals(id, expected.getmDescription(), actual.getmDescription());
+        }
+    }
+}